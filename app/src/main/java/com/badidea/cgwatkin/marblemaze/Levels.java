@@ -0,0 +1,187 @@
+package com.badidea.cgwatkin.marblemaze;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.util.SparseArray;
+
+import com.badidea.cgwatkin.marblemaze.engine.Level;
+import com.badidea.cgwatkin.marblemaze.engine.LevelPack;
+import com.badidea.cgwatkin.marblemaze.engine.LevelParser;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Levels class
+ *
+ * Reads levels from the binary pack generated from assets/levels at build time, memory-mapping it so only the
+ * header is read up front and each level is decoded when first requested.
+ * Falls back to listing and parsing the level text files if the pack is missing.
+ * Each level is cached once decoded, so restarting or revisiting a world does not read it again.
+ * Levels are numbered from 0 in file name order.
+ */
+class Levels {
+
+    /**
+     * Asset directory holding the level files.
+     */
+    private static final String LEVEL_DIRECTORY = "levels";
+
+    /**
+     * Asset holding the level pack. Must be stored uncompressed so it can be memory-mapped.
+     */
+    private static final String LEVEL_PACK = "levels.pack";
+
+    /**
+     * The shared instance.
+     */
+    private static Levels sInstance;
+
+    /**
+     * Asset manager to read levels from.
+     */
+    private final AssetManager mAssets;
+
+    /**
+     * The level pack, or null if levels are read from text files.
+     */
+    private final LevelPack mPack;
+
+    /**
+     * Level file names, sorted, or null if levels are read from the pack.
+     */
+    private final String[] mFiles;
+
+    /**
+     * Levels parsed so far, by number.
+     */
+    private final SparseArray<Level> mCache = new SparseArray<>();
+
+    /**
+     * Constructor
+     *
+     * @param assets Asset manager to read levels from.
+     * @throws IOException If the level pack is malformed or the level directory cannot be listed.
+     */
+    private Levels(AssetManager assets) throws IOException {
+        mAssets = assets;
+        mPack = openPack(assets);
+        if (mPack == null) {
+            mFiles = listLevelFiles(assets);
+        }
+        else {
+            mFiles = null;
+        }
+    }
+
+    /**
+     * Lists the level text files, skipping anything else in the level directory, as the pack writer does, so levels
+     * are numbered the same either way.
+     *
+     * @param assets Asset manager to list the files from.
+     * @return Level file names, sorted.
+     * @throws IOException If the level directory cannot be listed.
+     */
+    private static String[] listLevelFiles(AssetManager assets) throws IOException {
+        ArrayList<String> files = new ArrayList<>();
+        for (String file: assets.list(LEVEL_DIRECTORY)) {
+            if (file.endsWith(".txt")) {
+                files.add(file);
+            }
+        }
+        String[] sorted = files.toArray(new String[files.size()]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Memory-maps the level pack asset.
+     *
+     * @param assets Asset manager to read the pack from.
+     * @return The pack, or null if there is no pack asset.
+     * @throws IOException If the pack cannot be mapped or is malformed.
+     */
+    private static LevelPack openPack(AssetManager assets) throws IOException {
+        AssetFileDescriptor fd;
+        try {
+            fd = assets.openFd(LEVEL_PACK);
+        }
+        catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            FileInputStream in = new FileInputStream(fd.getFileDescriptor());
+            try {
+                // The mapping stays valid after the descriptor is closed
+                return new LevelPack(in.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(),
+                        fd.getLength()));
+            }
+            finally {
+                in.close();
+            }
+        }
+        finally {
+            fd.close();
+        }
+    }
+
+    /**
+     * Returns the shared instance, creating it on first use.
+     *
+     * @param context Any context; the application's assets are used.
+     * @return The levels.
+     * @throws IOException If the level pack is malformed or the level directory cannot be listed.
+     */
+    static synchronized Levels get(Context context) throws IOException {
+        if (sInstance == null) {
+            sInstance = new Levels(context.getApplicationContext().getAssets());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the number of levels.
+     *
+     * @return Level count.
+     */
+    int getCount() {
+        return mPack != null ? mPack.getCount() : mFiles.length;
+    }
+
+    /**
+     * Returns a level, decoding it on first use.
+     *
+     * @param number Level number, from 0.
+     * @return The level.
+     * @throws IOException If the level cannot be read or is malformed.
+     */
+    synchronized Level getLevel(int number) throws IOException {
+        Level level = mCache.get(number);
+        if (level == null && mPack != null) {
+            level = mPack.getLevel(number);
+            mCache.put(number, level);
+        }
+        else if (level == null) {
+            String file = mFiles[number];
+            Reader reader = new InputStreamReader(mAssets.open(LEVEL_DIRECTORY + "/" + file), "UTF-8");
+            try {
+                level = LevelParser.parse(reader);
+            }
+            catch (IOException e) {
+                throw new IOException(file + ": " + e.getMessage(), e);
+            }
+            finally {
+                reader.close();
+            }
+            mCache.put(number, level);
+        }
+        return level;
+    }
+}
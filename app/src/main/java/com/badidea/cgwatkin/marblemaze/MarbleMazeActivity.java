@@ -2,26 +2,31 @@ package com.badidea.cgwatkin.marblemaze;
 
 import android.app.Activity;
 import android.content.pm.ActivityInfo;
-import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Bundle;
-import android.os.Handler;
+import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.SurfaceView;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
-import java.util.ArrayList;
+import com.badidea.cgwatkin.marblemaze.engine.TiltFilter;
+
+import java.io.IOException;
 
 /**
  * Marble Maze Activity class
  *
- * Handles the Marble View creation and updating, including world creation.
+ * Handles the Marble View creation and updating, and loads the level for the chosen world.
  */
-public class MarbleMazeActivity extends Activity implements SensorEventListener {
+public class MarbleMazeActivity extends Activity {
+
+    /**
+     * Log tag.
+     */
+    private static final String TAG = "MarbleMazeActivity";
 
     /**
      * ActionType type.
@@ -37,24 +42,14 @@ public class MarbleMazeActivity extends Activity implements SensorEventListener
     private int worldNumber;
 
     /**
-     * Thread handler allow screen refresh after set delay.
-     */
-    private Handler mHandler = new Handler();
-
-    /**
-     * The refresh runnable. Updates the view every refresh delay and forces view refresh.
+     * The refresh callback. Updates the view every display frame and forces view refresh.
      */
     private RefreshWorld mRefresh;
 
     /**
-     * Sensor manager.
+     * Accelerometer listener, setting the marble view's gravity from its own thread.
      */
-    private SensorManager mSensorManager;
-
-    /**
-     * Accelerometer sensor.
-     */
-    private Sensor mAccelerometer;
+    private TiltSensor mTiltSensor;
 
     /**
      * Linear Layout for success_failure/failure message.
@@ -90,10 +85,18 @@ public class MarbleMazeActivity extends Activity implements SensorEventListener
 
         setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_PORTRAIT);
         setContentView(R.layout.activity_marble_maze);
-        mSensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
-        mAccelerometer = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
         mSuccessFailureDisplay = (LinearLayout) findViewById(R.id.success_failure_display);
         mMarbleView = (MarbleView) findViewById(R.id.marble_view);
+        if (getResources().getBoolean(R.bool.surface_renderer)) {
+            SurfaceView surface = (SurfaceView) findViewById(R.id.marble_surface);
+            surface.setVisibility(View.VISIBLE);
+            mMarbleView.setRenderSurface(surface);
+        }
+        mMarbleView.setDirtyRectangles(getResources().getBoolean(R.bool.dirty_rectangles));
+        mMarbleView.setMarbles(getResources().getInteger(R.integer.marble_count),
+                getResources().getInteger(R.integer.marbles_to_win));
+        mMarbleView.setDistanceField(getResources().getInteger(R.integer.distance_field_spacing),
+                getResources().getBoolean(R.bool.distance_field_quantised));
         mMarbleView.setSuccessObserver(new Observer() {
             @Override
             public void success() {
@@ -104,16 +107,36 @@ public class MarbleMazeActivity extends Activity implements SensorEventListener
             public void failure() {
                 successFailureAction(ActionType.FAILURE);
             }
+        });
+        try {
+            mMarbleView.setLevel(Levels.get(this).getLevel(worldNumber - 1));
+        }
+        catch (IOException e) {
+            Log.e(TAG, "Cannot load world " + worldNumber, e);
+            // Finishing in onCreate skips straight to onDestroy, so nothing below is needed
+            finish();
+            return;
+        }
+        mRefresh = new RefreshWorld(mMarbleView)
+                .setPhysicsThread(getResources().getBoolean(R.bool.physics_thread));
+        TiltFilter filter = new TiltFilter(getResources().getInteger(R.integer.tilt_filter_min_cutoff_millihertz) / 1e3,
+                getResources().getInteger(R.integer.tilt_filter_beta_thousandths) / 1e3);
+        mTiltSensor = new TiltSensor((SensorManager) getSystemService(SENSOR_SERVICE), mMarbleView, filter,
+                getResources().getInteger(R.integer.sensor_max_report_latency_us),
+                getResources().getInteger(R.integer.sensor_resting_report_latency_us));
+        mMarbleView.setRestTicks(getResources().getInteger(R.integer.rest_ticks));
+        mMarbleView.setRestObserver(new RestObserver() {
+            @Override
+            public void asleep() {
+                mTiltSensor.setResting(true);
+            }
 
             @Override
-            public ArrayList<WorldObject> createWorldObjects(int canvasWidth, int canvasHeight, int wallWidth,
-                                                             int radius, int distanceBetweenWalls, int xPadding,
-                                                             int yPadding) {
-                return MarbleMazeActivity.this.createWorldObjects(canvasWidth, canvasHeight, wallWidth, radius, distanceBetweenWalls,
-                        xPadding, yPadding);
+            public void awake() {
+                mRefresh.wake();
+                mTiltSensor.setResting(false);
             }
         });
-        mRefresh = new RefreshWorld(mMarbleView, mHandler);
     }
 
     /**
@@ -130,10 +153,8 @@ public class MarbleMazeActivity extends Activity implements SensorEventListener
                 | View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION
                 | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION);
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
-        mSensorManager.registerListener(this, mAccelerometer, SensorManager.SENSOR_DELAY_GAME);
+        mTiltSensor.start();
         restartWorld();
-        mRefresh.unPause();
-        mHandler.post(mRefresh.setStartTime(System.currentTimeMillis()));
     }
 
     /**
@@ -142,8 +163,7 @@ public class MarbleMazeActivity extends Activity implements SensorEventListener
     @Override
     public void onPause() {
         super.onPause();
-        mSensorManager.unregisterListener(this);
-        mHandler.removeCallbacks(mRefresh);
+        mTiltSensor.stop();
         mRefresh.pause();
     }
 
@@ -159,25 +179,6 @@ public class MarbleMazeActivity extends Activity implements SensorEventListener
         savedInstanceState.putInt("WORLD_NUMBER", worldNumber);
     }
 
-    /**
-     * Sets the gravity values of the marble view when sensor values change.
-     *
-     * @param event The sensor event.
-     */
-    @Override
-    public void onSensorChanged(SensorEvent event) {
-        mMarbleView.setGravity(-event.values[0], event.values[1]);
-    }
-
-    /**
-     * Do nothing.
-     *
-     * @param sensor The sensor.
-     * @param accuracy The new accuracy value.
-     */
-    @Override
-    public void onAccuracyChanged(Sensor sensor, int accuracy) { }
-
     /**
      * Deal with success or failure.
      *
@@ -185,7 +186,6 @@ public class MarbleMazeActivity extends Activity implements SensorEventListener
      */
     private void successFailureAction(ActionType action) {
         mRefresh.pause();
-        mHandler.removeCallbacks(mRefresh);
         View successFailureLayout = LayoutInflater.from(this).inflate(R.layout.success_failure, mSuccessFailureDisplay,
                 false);
         int messageResource;
@@ -197,7 +197,7 @@ public class MarbleMazeActivity extends Activity implements SensorEventListener
                     finish();
                 }
             });
-            mSensorManager.unregisterListener(this);
+            mTiltSensor.stop();
         }
         else {
             messageResource = R.string.failure;
@@ -220,284 +220,5 @@ public class MarbleMazeActivity extends Activity implements SensorEventListener
         mSuccessFailureDisplay.removeAllViews();
         mMarbleView.setOnClickListener(null);
         mRefresh.unPause();
-        mHandler.post(mRefresh.setStartTime(System.currentTimeMillis()));
-    }
-
-    /**
-     * Returns world objects based on world number.
-     *
-     * @param canvasWidth Width of canvas.
-     * @param canvasHeight Height of canvas.
-     * @param wallWidth Width of walls.
-     * @param radius Radius of marble.
-     * @param distanceBetweenWalls Minimum distance between walls.
-     * @param xPadding Padding around board in x plane.
-     * @param yPadding Padding around board in y plane.
-     * @return An array list of world objects.
-     */
-    private ArrayList<WorldObject> createWorldObjects(int canvasWidth, int canvasHeight, int wallWidth, int radius,
-                                                      int distanceBetweenWalls, int xPadding, int yPadding) {
-        switch (worldNumber) {
-            case 1:
-                return createWorld1(canvasWidth, canvasHeight, wallWidth, radius, distanceBetweenWalls,
-                        xPadding, yPadding);
-            case 2:
-                return createWorld2(canvasWidth, canvasHeight, wallWidth, radius, distanceBetweenWalls,
-                        xPadding, yPadding);
-            case 3:
-                return createWorld3(canvasWidth, canvasHeight, wallWidth, radius, distanceBetweenWalls,
-                        xPadding, yPadding);
-            case 4:
-                return createWorld4(canvasWidth, canvasHeight, wallWidth, radius, distanceBetweenWalls,
-                        xPadding, yPadding);
-            case 5:
-                return createWorld5(canvasWidth, canvasHeight, wallWidth, radius, distanceBetweenWalls,
-                        xPadding, yPadding);
-            default:
-                return createWorld1(canvasWidth, canvasHeight, wallWidth, radius, distanceBetweenWalls,
-                        xPadding, yPadding);
-        }
-    }
-
-    /**
-     * Creates world objects for world 1.
-     *
-     * Introduce user to goal.
-     *
-     * @param canvasWidth Width of canvas.
-     * @param canvasHeight Height of canvas.
-     * @param wallWidth Width of walls.
-     * @param radius Radius of marble.
-     * @param distanceBetweenWalls Minimum distance between walls.
-     * @param xPadding Padding around board in x plane.
-     * @param yPadding Padding around board in y plane.
-     * @return An array list of world objects.
-     */
-    private ArrayList<WorldObject> createWorld1(int canvasWidth, int canvasHeight, int wallWidth, int radius,
-                                                int distanceBetweenWalls, int xPadding, int yPadding) {
-        return new ArrayList<>();
-    }
-
-    /**
-     * Creates world objects for world 2.
-     *
-     * Introduce user to walls.
-     *
-     * @param canvasWidth Width of canvas.
-     * @param canvasHeight Height of canvas.
-     * @param wallWidth Width of walls.
-     * @param radius Radius of marble.
-     * @param distanceBetweenWalls Minimum distance between walls.
-     * @param xPadding Padding around board in x plane.
-     * @param yPadding Padding around board in y plane.
-     * @return An array list of world objects.
-     */
-    private ArrayList<WorldObject> createWorld2(int canvasWidth, int canvasHeight, int wallWidth, int radius,
-                                                int distanceBetweenWalls, int xPadding, int yPadding) {
-        ArrayList<WorldObject> worldObjects = new ArrayList<>();
-
-
-        // Walls for square in centre (l, t, r, b)
-        worldObjects.add(new WallObject(
-                xPadding + distanceBetweenWalls, canvasHeight / 2 - yPadding / 2,
-                xPadding + distanceBetweenWalls, canvasHeight / 2 + yPadding / 2, wallWidth
-        ));
-        worldObjects.add(new WallObject(
-                xPadding + distanceBetweenWalls, canvasHeight / 2 - yPadding / 2,
-                canvasWidth - xPadding - distanceBetweenWalls, canvasHeight / 2 - yPadding / 2, wallWidth
-        ));
-        worldObjects.add(new WallObject(
-                canvasWidth - xPadding - distanceBetweenWalls, canvasHeight / 2 - yPadding / 2,
-                canvasWidth - xPadding - distanceBetweenWalls, canvasHeight / 2 + yPadding / 2, wallWidth
-        ));
-        worldObjects.add(new WallObject(
-                xPadding + distanceBetweenWalls, canvasHeight / 2 + yPadding / 2,
-                canvasWidth - xPadding - distanceBetweenWalls, canvasHeight / 2 + yPadding / 2, wallWidth
-        ));
-
-
-        return worldObjects;
-    }
-
-    /**
-     * Creates world objects for world 3.
-     *
-     * Introduce user to holes.
-     *
-     * @param canvasWidth Width of canvas.
-     * @param canvasHeight Height of canvas.
-     * @param wallWidth Width of walls.
-     * @param radius Radius of marble.
-     * @param distanceBetweenWalls Minimum distance between walls.
-     * @param xPadding Padding around board in x plane.
-     * @param yPadding Padding around board in y plane.
-     * @return An array list of world objects.
-     */
-    private ArrayList<WorldObject> createWorld3(int canvasWidth, int canvasHeight, int wallWidth, int radius,
-                                                int distanceBetweenWalls, int xPadding, int yPadding) {
-        ArrayList<WorldObject> worldObjects = new ArrayList<>();
-
-
-        // Add 4 holes, diagonally across middle of area
-        worldObjects.add(new HoleObject(
-                xPadding + distanceBetweenWalls / 2 + distanceBetweenWalls,
-                yPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 7, radius
-        ));
-        worldObjects.add(new HoleObject(
-                xPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 2,
-                yPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 6, radius
-        ));
-        worldObjects.add(new HoleObject(
-                xPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 3,
-                yPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 5, radius
-        ));
-        worldObjects.add(new HoleObject(
-                xPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 4,
-                yPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 4, radius
-        ));
-
-
-
-        return worldObjects;
-    }
-
-    /**
-     * Creates world objects for world 4.
-     *
-     * Combination of world 2 and 3.
-     *
-     * @param canvasWidth Width of canvas.
-     * @param canvasHeight Height of canvas.
-     * @param wallWidth Width of walls.
-     * @param radius Radius of marble.
-     * @param distanceBetweenWalls Minimum distance between walls.
-     * @param xPadding Padding around board in x plane.
-     * @param yPadding Padding around board in y plane.
-     * @return An array list of world objects.
-     */
-    private ArrayList<WorldObject> createWorld4(int canvasWidth, int canvasHeight, int wallWidth, int radius,
-                                                int distanceBetweenWalls, int xPadding, int yPadding) {
-        ArrayList<WorldObject> worldObjects = new ArrayList<>();
-
-
-        // Add 4 holes, diagonally across middle of area
-        worldObjects.add(new HoleObject(
-                xPadding + distanceBetweenWalls / 2 + distanceBetweenWalls,
-                yPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 4, radius
-        ));
-        worldObjects.add(new HoleObject(
-                xPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 2,
-                yPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 3, radius
-        ));
-        worldObjects.add(new HoleObject(
-                xPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 3,
-                yPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 2, radius
-        ));
-        worldObjects.add(new HoleObject(
-                xPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 4,
-                yPadding + distanceBetweenWalls / 2 + distanceBetweenWalls, radius
-        ));
-
-
-        // Walls for square in centre (l, t, r, b)
-        worldObjects.add(new WallObject(
-                xPadding + distanceBetweenWalls, yPadding + distanceBetweenWalls * 10,
-                xPadding + distanceBetweenWalls, yPadding + distanceBetweenWalls * 11, wallWidth
-        ));
-        worldObjects.add(new WallObject(
-                xPadding + distanceBetweenWalls, yPadding + distanceBetweenWalls * 10,
-                canvasWidth - xPadding - distanceBetweenWalls, yPadding + distanceBetweenWalls * 10, wallWidth
-        ));
-        worldObjects.add(new WallObject(
-                canvasWidth - xPadding - distanceBetweenWalls, yPadding + distanceBetweenWalls * 10,
-                canvasWidth - xPadding - distanceBetweenWalls, yPadding + distanceBetweenWalls * 11, wallWidth
-        ));
-        worldObjects.add(new WallObject(
-                xPadding + distanceBetweenWalls, yPadding + distanceBetweenWalls * 11,
-                canvasWidth - xPadding - distanceBetweenWalls, yPadding + distanceBetweenWalls * 11, wallWidth
-        ));
-
-
-
-        return worldObjects;
-    }
-
-    /**
-     * Creates world objects for world 5.
-     *
-     * @param canvasWidth Width of canvas.
-     * @param canvasHeight Height of canvas.
-     * @param wallWidth Width of walls.
-     * @param radius Radius of marble.
-     * @param distanceBetweenWalls Minimum distance between walls.
-     * @param xPadding Padding around board in x plane.
-     * @param yPadding Padding around board in y plane.
-     * @return An array list of world objects.
-     */
-    private ArrayList<WorldObject> createWorld5(int canvasWidth, int canvasHeight, int wallWidth, int radius,
-                                                int distanceBetweenWalls, int xPadding, int yPadding) {
-        ArrayList<WorldObject> worldObjects = new ArrayList<>();
-
-
-        // Walls for square down from top just left of centre (l, r, b)
-        worldObjects.add(new WallObject(
-                xPadding + distanceBetweenWalls * 2, yPadding,
-                xPadding + distanceBetweenWalls * 2, yPadding + distanceBetweenWalls * 5,
-                wallWidth
-        ));
-        worldObjects.add(new WallObject(
-                xPadding + distanceBetweenWalls * 3, yPadding,
-                xPadding + distanceBetweenWalls * 3, yPadding + distanceBetweenWalls * 5,
-                wallWidth
-        ));
-        worldObjects.add(new WallObject(
-                xPadding + distanceBetweenWalls * 2, yPadding + distanceBetweenWalls * 5,
-                xPadding + distanceBetweenWalls * 3, yPadding + distanceBetweenWalls * 5,
-                wallWidth
-        ));
-
-
-        // Walls for square up from bottom just right of centre (l, t, r)
-        worldObjects.add(new WallObject(
-                xPadding + distanceBetweenWalls * 3, yPadding + distanceBetweenWalls * 7,
-                xPadding + distanceBetweenWalls * 3, canvasHeight - yPadding,
-                wallWidth
-        ));
-        worldObjects.add(new WallObject(
-                xPadding + distanceBetweenWalls * 3, yPadding + distanceBetweenWalls * 7,
-                xPadding + distanceBetweenWalls * 4, yPadding + distanceBetweenWalls * 7,
-                wallWidth
-        ));
-        worldObjects.add(new WallObject(
-                xPadding + distanceBetweenWalls * 4, yPadding + distanceBetweenWalls * 7,
-                xPadding + distanceBetweenWalls * 4, canvasHeight - yPadding,
-                wallWidth
-        ));
-
-
-        // Add 4 holes, around gap in center wall
-        worldObjects.add(new HoleObject(
-                xPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 2,
-                yPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 5,
-                radius
-        ));
-        worldObjects.add(new HoleObject(
-                xPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 2,
-                yPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 7,
-                radius
-        ));
-        worldObjects.add(new HoleObject(
-                xPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 4,
-                yPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 6,
-                radius
-        ));
-        worldObjects.add(new HoleObject(
-                xPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 4,
-                yPadding + distanceBetweenWalls / 2 + distanceBetweenWalls * 7,
-                radius
-        ));
-
-
-        return worldObjects;
     }
 }
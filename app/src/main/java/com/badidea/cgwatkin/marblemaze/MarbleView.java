@@ -2,12 +2,30 @@ package com.badidea.cgwatkin.marblemaze;
 
 import android.app.Activity;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Paint;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.os.Looper;
 import android.support.v4.content.res.ResourcesCompat;
 import android.util.AttributeSet;
+import android.util.Log;
+import android.view.SurfaceView;
 import android.view.View;
 
+import com.badidea.cgwatkin.marblemaze.engine.ContactCache;
+import com.badidea.cgwatkin.marblemaze.engine.Gravity;
+import com.badidea.cgwatkin.marblemaze.engine.HitType;
+import com.badidea.cgwatkin.marblemaze.engine.Level;
+import com.badidea.cgwatkin.marblemaze.engine.Marble;
+import com.badidea.cgwatkin.marblemaze.engine.MarbleSet;
+import com.badidea.cgwatkin.marblemaze.engine.RestDetector;
+import com.badidea.cgwatkin.marblemaze.engine.Snapshot;
+import com.badidea.cgwatkin.marblemaze.engine.SnapshotBuffer;
+import com.badidea.cgwatkin.marblemaze.engine.WallOptimiser;
+import com.badidea.cgwatkin.marblemaze.engine.World;
+import com.badidea.cgwatkin.marblemaze.engine.WorldObject;
+
 import java.util.ArrayList;
 
 /**
@@ -15,10 +33,27 @@ import java.util.ArrayList;
  *
  * Contains canvas in which game is rendered.
  * Creates and manages world objects.
- * Updates marble position.
+ * Updates marble positions.
  */
 public class MarbleView extends View {
 
+    /**
+     * Log tag.
+     */
+    private static final String TAG = "MarbleView";
+
+    /**
+     * Most a marble may drift from where it came to rest, in pixels, and still count as at rest: under a pixel, so
+     * sleeping never visibly stops a marble that would have moved.
+     */
+    private static final double REST_DRIFT = 0.5;
+
+    /**
+     * Change in gravity, in either plane, that counts as a tilt: it stops the marbles counting as at rest, and wakes
+     * the simulation. Above the jitter of the filtered sensor when the device is still.
+     */
+    private static final double REST_TILT = 0.3;
+
     /**
      * Canvas dimensions
      */
@@ -40,24 +75,166 @@ public class MarbleView extends View {
     private Observer mObserver;
 
     /**
-     * The paint objects to colour etc. the marble.
+     * Gravity, set from the sensor thread and read by the physics thread as one packed word.
+     */
+    private final Gravity mGravity = new Gravity(0, 9.8);
+
+    /**
+     * Decides when the simulation can sleep, and when a tilt wakes it.
+     */
+    private RestDetector mRest = new RestDetector(REST_DRIFT, REST_TILT, 0);
+
+    /**
+     * Observer told when the simulation falls asleep or wakes, or null.
+     */
+    private RestObserver mRestObserver;
+
+    /**
+     * Tells the rest observer, on the main thread, that the simulation fell asleep.
+     * Made once, like the notice below, so sleeping and waking allocate nothing.
+     * A tilt on the sensor thread can wake the simulation, and post its notice, before this one runs, so it is
+     * dropped if the simulation is no longer asleep.
+     */
+    private final Runnable mAsleepNotice = new Runnable() {
+        @Override
+        public void run() {
+            if (mRestObserver != null && isAsleep()) {
+                mRestObserver.asleep();
+            }
+        }
+    };
+
+    /**
+     * Tells the rest observer, on the main thread, that the simulation woke.
+     */
+    private final Runnable mAwakeNotice = new Runnable() {
+        @Override
+        public void run() {
+            if (mRestObserver != null) {
+                mRestObserver.awake();
+            }
+        }
+    };
+
+    /**
+     * The level the world is created from.
      */
-    private Paint mPaintMarble, mPaintWall, mPaintGoal, mPaintHole;
+    private Level mLevel;
 
     /**
-     * Gravity values.
+     * The marbles being displayed.
      */
-    private double mGX = 0, mGY = 9.8;
+    private MarbleSet mMarbles;
 
     /**
-     * The marble being displayed.
+     * Number of marbles to create, and number that must reach a goal to win, or 0 for all of them.
      */
-    private Marble mMarble;
+    private int mMarbleCount = 1, mMarblesToWin;
+
+    /**
+     * Distance field sample spacing for wall collisions, or 0 to test each wall in turn.
+     */
+    private int mFieldSpacing;
+
+    /**
+     * Whether the distance field is stored as shorts.
+     */
+    private boolean mFieldQuantised;
 
     /**
      * The objects in the world.
      */
-    private ArrayList<WorldObject> mWorldObjects;
+    private World mWorld;
+
+    /**
+     * How far the marble is drawn between its previous and current positions.
+     */
+    private volatile double mInterpolation = 1;
+
+    /**
+     * Guards the world and marble state shared between the update thread and the rest of the view.
+     * Never held by drawing, which only reads snapshots.
+     */
+    private final Object mLock = new Object();
+
+    /**
+     * Guards the renderer and static layer, which are only replaced when the world is rebuilt or resized.
+     * Never held by physics, so drawing from snapshots never waits for a tick.
+     */
+    private final Object mRenderLock = new Object();
+
+    /**
+     * Snapshots of the moving parts of the world, handed from the physics thread to the renderer.
+     */
+    private final SnapshotBuffer mSnapshots = new SnapshotBuffer();
+
+    /**
+     * Length of a physics tick in nanoseconds when physics runs on its own thread and snapshots are drawn by how long
+     * ago their tick finished, or 0 when they are drawn at the interpolation set by the game loop.
+     */
+    private volatile long mSnapshotTickNanos;
+
+    /**
+     * Renderer drawing to a separate surface, or null if this view draws the world itself.
+     */
+    private SurfaceRenderer mSurfaceRenderer;
+
+    /**
+     * Offscreen layer holding the static world objects, drawn once per world instead of every frame.
+     */
+    private Bitmap mStaticLayer;
+
+    /**
+     * Draws the marble and world objects.
+     */
+    private WorldRenderer mRenderer;
+
+    /**
+     * Pre-rendered marble, goal and hole, kept across worlds and only rebuilt when the radius changes.
+     */
+    private SpriteAtlas mSprites;
+
+    /**
+     * Number of canvas draw calls made by the last frame.
+     */
+    private volatile int mDrawCalls;
+
+    /**
+     * Whether only the area the moving parts covered last frame and cover this frame is redrawn, rather than the
+     * whole world.
+     */
+    private boolean mDirtyRectangles = true;
+
+    /**
+     * Whether the next frame must redraw the whole world, as it has been rebuilt or the surface is new.
+     * Guarded by the render lock, like the rest of the frame state below.
+     */
+    private boolean mFullRedraw = true;
+
+    /**
+     * The snapshot the next frame is drawn from, chosen when its dirty area is worked out.
+     */
+    private Snapshot mFrame;
+
+    /**
+     * Area the moving parts of the last prepared frame may be drawn in, and of the frame being prepared.
+     */
+    private final Rect mDrawn = new Rect(), mBounds = new Rect();
+
+    /**
+     * Area this view invalidates for the next frame, when drawing the world itself.
+     */
+    private final Rect mDirty = new Rect();
+
+    /**
+     * Clip bounds of the frame being drawn.
+     */
+    private final Rect mClip = new Rect();
+
+    /**
+     * Frames drawn, and pixels they were clipped to, since the world was created.
+     */
+    private long mFramesDrawn, mPixelsDrawn;
 
     /**
      * Marble View constructor.
@@ -86,131 +263,453 @@ public class MarbleView extends View {
     }
 
     /**
-     * Defines paints to be used for objects.
+     * Set the observer told when the simulation falls asleep or wakes.
+     *
+     * @param observer The observer.
+     */
+    void setRestObserver(RestObserver observer) {
+        mRestObserver = observer;
+    }
+
+    /**
+     * Sets how long the marbles must be at rest before the simulation sleeps.
+     * Must be called before the world is created.
+     *
+     * @param ticks Ticks at rest needed to sleep, or 0 to never sleep.
+     */
+    void setRestTicks(int ticks) {
+        mRest = new RestDetector(REST_DRIFT, REST_TILT, ticks);
+    }
+
+    /**
+     * Set the level to create the world from.
+     *
+     * @param level The level.
      */
-    private void setPaint() {
-        mPaintMarble = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mPaintMarble.setColor(ResourcesCompat.getColor(mContext.getResources(), R.color.marble, null));
-        mPaintMarble.setStyle(Paint.Style.FILL);
-        mPaintMarble.setAntiAlias(true);
+    public void setLevel(Level level) {
+        mLevel = level;
+    }
 
-        mPaintWall = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mPaintWall.setColor(ResourcesCompat.getColor(mContext.getResources(), R.color.wall, null));
-        mPaintWall.setStrokeWidth(wallWidth);
-        mPaintWall.setStyle(Paint.Style.STROKE);
-        mPaintWall.setAntiAlias(true);
+    /**
+     * Sets how many marbles the world is created with.
+     *
+     * @param count Number of marbles.
+     * @param toWin Number of marbles that must reach a goal to win, or 0 for all of them.
+     */
+    public void setMarbles(int count, int toWin) {
+        mMarbleCount = Math.max(1, count);
+        mMarblesToWin = toWin;
+    }
 
-        mPaintGoal = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mPaintGoal.setColor(ResourcesCompat.getColor(mContext.getResources(), R.color.target, null));
-        mPaintGoal.setStyle(Paint.Style.FILL);
-        mPaintGoal.setAntiAlias(true);
+    /**
+     * Sets how the marbles collide with walls.
+     *
+     * @param spacing Pixels between samples of a signed distance field, or 0 to test each wall in turn.
+     * @param quantised True to store the field as shorts rather than floats.
+     */
+    public void setDistanceField(int spacing, boolean quantised) {
+        mFieldSpacing = spacing;
+        mFieldQuantised = quantised;
+    }
 
-        mPaintHole = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mPaintHole.setColor(ResourcesCompat.getColor(mContext.getResources(), R.color.hole, null));
-        mPaintHole.setStyle(Paint.Style.FILL);
-        mPaintHole.setAntiAlias(true);
+    /**
+     * Draws the world onto a surface from a dedicated render thread, instead of in this view's onDraw.
+     *
+     * This view's background is cleared so the surface behind it shows through.
+     *
+     * @param surface The surface view to draw into.
+     */
+    public void setRenderSurface(SurfaceView surface) {
+        int background = ResourcesCompat.getColor(mContext.getResources(), R.color.background, null);
+        mSurfaceRenderer = new SurfaceRenderer(surface.getHolder(), this, background);
+        setBackgroundColor(Color.TRANSPARENT);
+    }
+
+    /**
+     * Requests the world be redrawn by whichever renderer is in use.
+     */
+    public void requestRender() {
+        if (mSurfaceRenderer != null) {
+            mSurfaceRenderer.requestRender();
+        }
+        else if (prepareFrame(mDirty)) {
+            invalidate(mDirty);
+        }
+    }
+
+    /**
+     * Sets whether only the area around the moving parts is redrawn each frame.
+     *
+     * @param dirtyRectangles True to redraw only the moving parts' old and new areas, false to redraw everything.
+     */
+    void setDirtyRectangles(boolean dirtyRectangles) {
+        synchronized (mRenderLock) {
+            mDirtyRectangles = dirtyRectangles;
+            mFullRedraw = true;
+        }
+    }
+
+    /**
+     * Makes the next frame redraw the whole world, such as when the surface drawn into is new.
+     */
+    void redrawAll() {
+        synchronized (mRenderLock) {
+            mFullRedraw = true;
+        }
+    }
+
+    /**
+     * Chooses the snapshot the next frame is drawn from, and works out the area that frame must redraw: where the
+     * moving parts were last frame, to erase them, and where they may be this frame, at any interpolation.
+     * Everything else on screen is unchanged static layer.
+     * Safe to call from the render thread.
+     *
+     * @param dirty Set to the area to redraw.
+     * @return False if there is nothing to redraw.
+     */
+    boolean prepareFrame(Rect dirty) {
+        synchronized (mRenderLock) {
+            mFrame = mSnapshots.acquire();
+            if (mRenderer == null) {
+                mFullRedraw = true;
+                dirty.set(0, 0, getWidth(), getHeight());
+                return !dirty.isEmpty();
+            }
+            mRenderer.getMovingBounds(mFrame, mBounds);
+            if (mFullRedraw || !mDirtyRectangles) {
+                dirty.set(0, 0, getWidth(), getHeight());
+            }
+            else {
+                dirty.set(mDrawn);
+                dirty.union(mBounds);
+            }
+            mDrawn.set(mBounds);
+            mFullRedraw = false;
+            return !dirty.isEmpty();
+        }
     }
 
     /**
      * Creates world with marble, objects, target and hole.
      */
     public void createWorld() {
-        canvasWidth = getWidth();
-        canvasHeight = getHeight();
-        wallWidth = 8;
-        int radius = canvasWidth / 30;
-        int maxVelocity = radius * 2;
-        int distanceBetweenWalls = maxVelocity * 2;
-        int width = 6 * distanceBetweenWalls;
-        int height = 12 * distanceBetweenWalls;
-        int xPadding = (canvasWidth - width) / 2;
-        int yPadding = (canvasHeight - height) / 2;
-        mWorldObjects = new ArrayList<>();
+        if (mLevel == null) {
+            return;
+        }
+        synchronized (mLock) {
+            canvasWidth = getWidth();
+            canvasHeight = getHeight();
+            wallWidth = 8;
+            // Marble fills a fifth of a cell's width, and the grid must fit the canvas
+            int radius = Math.max(1, Math.min(canvasWidth / (5 * mLevel.getColumns()),
+                    canvasHeight / (4 * mLevel.getRows())));
+            int maxVelocity = radius * 2;
+            int distanceBetweenWalls = maxVelocity * 2;
+            int width = mLevel.getColumns() * distanceBetweenWalls;
+            int height = mLevel.getRows() * distanceBetweenWalls;
+            int xPadding = (canvasWidth - width) / 2;
+            int yPadding = (canvasHeight - height) / 2;
 
-        // Marble
-        mMarble = new Marble(canvasWidth - xPadding - distanceBetweenWalls / 2,
-                canvasHeight - yPadding - distanceBetweenWalls / 2, mGX, mGY, radius, maxVelocity);
+            // Goal, edges, walls and holes, with overlapping walls merged, and moving obstacles
+            WallOptimiser optimiser = new WallOptimiser();
+            ArrayList<WorldObject> worldObjects = optimiser.optimise(
+                    mLevel.createWorldObjects(xPadding, yPadding, distanceBetweenWalls, radius, wallWidth));
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "Optimised " + optimiser.getObjectsBefore() + " objects to "
+                        + optimiser.getObjectsAfter() + ", " + optimiser.getCapsBefore() + " wall caps to "
+                        + optimiser.getCapsAfter());
+            }
+            mWorld = new World(worldObjects,
+                    mLevel.createObstacles(xPadding, yPadding, distanceBetweenWalls, radius, wallWidth),
+                    canvasWidth, canvasHeight, distanceBetweenWalls);
+            if (mFieldSpacing > 0) {
+                mWorld.useDistanceField(mFieldSpacing, mFieldQuantised);
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "Distance field uses " + mWorld.getDistanceFieldBytes() + " bytes");
+                }
+            }
 
-        // Goal
-        mWorldObjects.add(new GoalObject(xPadding + distanceBetweenWalls / 2,
-                yPadding + distanceBetweenWalls / 2, radius));
+            // Marbles, spreading out from the level's start position
+            long gravity = mGravity.get();
+            Marble[] marbles = MarbleSet.spawn(mWorld,
+                    Level.toPixels(mLevel.getMarbleX(), xPadding, distanceBetweenWalls),
+                    Level.toPixels(mLevel.getMarbleY(), yPadding, distanceBetweenWalls), Gravity.getX(gravity),
+                    Gravity.getY(gravity), mMarbleCount, radius, maxVelocity, xPadding, yPadding, xPadding + width,
+                    yPadding + height);
+            mMarbles = new MarbleSet(marbles, mMarblesToWin);
+            if (mRest.reset()) {
+                post(mAwakeNotice);
+            }
+            mSnapshots.publish(mMarbles, mWorld, System.nanoTime());
+            synchronized (mRenderLock) {
+                if (mSprites == null || mSprites.getRadius() != radius) {
+                    if (mSprites != null) {
+                        mSprites.recycle();
+                    }
+                    mSprites = new SpriteAtlas(mContext.getResources(), radius);
+                    if (BuildConfig.DEBUG) {
+                        Log.d(TAG, "Sprite atlas for radius " + radius + " uses " + mSprites.getByteCount()
+                                + " bytes");
+                    }
+                }
+                mRenderer = new WorldRenderer(mContext.getResources(), mWorld, wallWidth, mSprites);
+                buildStaticLayer();
+                mFullRedraw = true;
+                mFramesDrawn = 0;
+                mPixelsDrawn = 0;
+            }
+        }
+    }
 
-        // Edges (left, top, right, bottom)
-        mWorldObjects.add(new WallObject(xPadding, yPadding, xPadding, canvasHeight - yPadding, wallWidth));
-        mWorldObjects.add(new WallObject(xPadding, yPadding, canvasWidth - xPadding, yPadding, wallWidth));
-        mWorldObjects.add(new WallObject(canvasWidth - xPadding, yPadding, canvasWidth - xPadding,
-                canvasHeight - yPadding, wallWidth));
-        mWorldObjects.add(new WallObject(xPadding, canvasHeight - yPadding, canvasWidth - xPadding,
-                canvasHeight - yPadding, wallWidth));
+    /**
+     * Sets whether physics runs on its own thread, with snapshots drawn by how long ago their tick finished.
+     *
+     * @param tickNanos Length of a physics tick in nanoseconds, or 0 to draw at the game loop's interpolation.
+     */
+    void useSnapshots(long tickNanos) {
+        mSnapshotTickNanos = tickNanos;
+    }
 
-        // Get world specific objects
-        mWorldObjects.addAll(mObserver.createWorldObjects(canvasWidth, canvasHeight, wallWidth, radius, distanceBetweenWalls,
-                xPadding, yPadding));
+    /**
+     * Rebuilds the static layer for the new size.
+     *
+     * @param w New width.
+     * @param h New height.
+     * @param oldW Old width.
+     * @param oldH Old height.
+     */
+    @Override
+    protected void onSizeChanged(int w, int h, int oldW, int oldH) {
+        super.onSizeChanged(w, h, oldW, oldH);
+        synchronized (mRenderLock) {
+            if (mRenderer != null) {
+                buildStaticLayer();
+            }
+            mFullRedraw = true;
+        }
+    }
 
-        setPaint();
+    /**
+     * Renders all static world objects into the static layer.
+     * Walls, holes and goals never move, so each frame only has to copy this layer and draw the marbles and moving
+     * obstacles.
+     */
+    private void buildStaticLayer() {
+        if (mStaticLayer != null) {
+            mStaticLayer.recycle();
+            mStaticLayer = null;
+        }
+        if (getWidth() <= 0 || getHeight() <= 0) {
+            return;
+        }
+        mStaticLayer = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
+        mRenderer.drawWorldObjects(new Canvas(mStaticLayer));
     }
 
     /**
-     * Draws the marble.
+     * Draws the world, unless a surface renderer is drawing it.
      *
      * @param c The canvas.
      */
     @Override
     protected void onDraw(Canvas c) {
         super.onDraw(c);
-        if (mMarble != null) {
-            mMarble.draw(c, mPaintMarble);
-        }
-        if (!mWorldObjects.isEmpty()) {
-            for (WorldObject wo: mWorldObjects) {
-                Paint p = mPaintWall;
-                if (!wo.isWall()) {
-                    if (wo.isGoal()) {
-                        p = mPaintGoal;
-                    }
-                    else if (wo.isHole()) {
-                        p = mPaintHole;
-                    }
-                }
-                wo.draw(c, p);
+        if (mSurfaceRenderer == null) {
+            drawWorld(c);
+        }
+    }
+
+    /**
+     * Draws the marble and world objects from the snapshot chosen by the last prepared frame, between its previous
+     * and current positions. Drawing is limited to the canvas clip, which covers the frame's dirty area.
+     * Takes no lock the physics thread holds, and allocates nothing. Safe to call from the render thread.
+     *
+     * @param c The canvas.
+     */
+    void drawWorld(Canvas c) {
+        synchronized (mRenderLock) {
+            if (mRenderer == null) {
+                return;
+            }
+            if (mFrame == null) {
+                mFrame = mSnapshots.acquire();
             }
+            long tickNanos = mSnapshotTickNanos;
+            float alpha = tickNanos > 0
+                    ? Math.max(0, Math.min(1, (float) (System.nanoTime() - mFrame.getTime()) / tickNanos))
+                    : (float) mInterpolation;
+            if (c.getClipBounds(mClip)) {
+                mPixelsDrawn += (long) mClip.width() * mClip.height();
+            }
+            mFramesDrawn++;
+            int drawCalls = mRenderer.drawMarbles(c, mFrame, alpha);
+            drawCalls += drawStaticLayer(c);
+            drawCalls += mRenderer.drawObstacles(c, mFrame, alpha);
+            mDrawCalls = drawCalls;
         }
     }
 
     /**
-     * Sets the gravity values.
+     * Draws the static world objects, from the static layer if there is one.
+     *
+     * @param c The canvas.
+     * @return Number of draw calls made.
+     */
+    private int drawStaticLayer(Canvas c) {
+        if (mStaticLayer != null) {
+            c.drawBitmap(mStaticLayer, 0, 0, null);
+            return 1;
+        }
+        return mRenderer.drawWorldObjects(c);
+    }
+
+    /**
+     * Returns the number of canvas draw calls made by the last frame.
+     *
+     * @return Draw call count.
+     */
+    int getDrawCalls() {
+        return mDrawCalls;
+    }
+
+    /**
+     * Describes how much of the view the frames drawn since the world was created redrew, on average.
+     *
+     * @return Average pixels redrawn per frame, and as a percentage of the whole view.
+     */
+    String getPixelStats() {
+        synchronized (mRenderLock) {
+            if (mFramesDrawn == 0) {
+                return "no frames";
+            }
+            long perFrame = mPixelsDrawn / mFramesDrawn;
+            return perFrame + " pixels a frame, " + percent(perFrame, (long) getWidth() * getHeight()) + "% of view";
+        }
+    }
+
+    /**
+     * Describes how often the marbles' contact caches were used, summed over the marbles.
+     *
+     * @return Cell and contact hit rates, as percentages.
+     */
+    String getCacheHitRates() {
+        long cellLookups = 0, cellHits = 0, contactLookups = 0, contactHits = 0;
+        synchronized (mLock) {
+            if (mMarbles == null) {
+                return "no marbles";
+            }
+            for (int i = 0; i < mMarbles.getCount(); i++) {
+                ContactCache cache = mMarbles.getMarble(i).getContactCache();
+                cellLookups += cache.getCellLookups();
+                cellHits += cache.getCellHits();
+                contactLookups += cache.getContactLookups();
+                contactHits += cache.getContactHits();
+            }
+        }
+        return "cells " + percent(cellHits, cellLookups) + "% of " + cellLookups + ", contacts "
+                + percent(contactHits, contactLookups) + "% of " + contactLookups;
+    }
+
+    /**
+     * Returns a count as a whole percentage of a total.
+     *
+     * @param count The count.
+     * @param total The total.
+     * @return Percentage, 0 if the total is 0.
+     */
+    private static long percent(long count, long total) {
+        return total > 0 ? count * 100 / total : 0;
+    }
+
+    /**
+     * Sets the gravity values, clamped to Gravity.MAX either way. Safe to call from any thread.
      *
      * @param gX Gravity in x plane.
      * @param gY Gravity in y plane.
      */
     public void setGravity(double gX, double gY) {
-        mGX = Math.min(gX, 9.8);
-        mGY = Math.min(gY, 9.8);
+        mGravity.set(gX, gY);
+        long gravity = mGravity.get();
+        if (mRest.wakeIfTilted(Gravity.getX(gravity), Gravity.getY(gravity))) {
+            post(mAwakeNotice);
+        }
+    }
+
+    /**
+     * Returns true if the simulation is asleep, with the marbles at rest, and should not be ticked or redrawn until
+     * a tilt wakes it.
+     *
+     * @return True if asleep.
+     */
+    boolean isAsleep() {
+        return mRest.isAsleep();
+    }
+
+    /**
+     * Sets how far the marble is drawn between its previous and current positions, when not drawing by tick age.
+     *
+     * @param alpha Interpolation factor, 0 for previous position through 1 for current position.
+     */
+    public void setInterpolation(double alpha) {
+        mInterpolation = alpha;
     }
 
     /**
-     * Updates the location and velocity of the marble.
+     * Moves the obstacles, then updates the location and velocity of the marbles, and publishes the new state for
+     * the renderer.
+     * Safe to call from the physics thread; a win or loss is reported on the main thread.
      *
      * @param dT Difference in time.
+     * @return Type of hit.
      */
-    public void update(double dT) {
-        if (mMarble != null) {
-            HitType hit = mMarble.move(dT, mGX, mGY, canvasWidth, canvasHeight, mWorldObjects);
-            switch (hit) {
-                case GOAL:
-                    success();
-                    break;
-                case HOLE:
-                    failure();
-                    break;
-                default:
-                    break;
+    public HitType update(double dT) {
+        final HitType hit;
+        synchronized (mLock) {
+            if (mMarbles == null) {
+                return HitType.NONE;
+            }
+            mWorld.advance(dT);
+            long gravity = mGravity.get();
+            hit = mMarbles.move(dT, Gravity.getX(gravity), Gravity.getY(gravity), canvasWidth, canvasHeight, mWorld);
+            mSnapshots.publish(mMarbles, mWorld, System.nanoTime());
+            if (mRest.update(mMarbles, mWorld, Gravity.getX(gravity), Gravity.getY(gravity))) {
+                post(mAsleepNotice);
             }
         }
+        if ((hit == HitType.GOAL || hit == HitType.HOLE) && Looper.myLooper() != Looper.getMainLooper()) {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    report(hit);
+                }
+            });
+        }
+        else {
+            report(hit);
+        }
+        return hit;
+    }
+
+    /**
+     * Reports a win or loss to the observer.
+     *
+     * @param hit Type of hit.
+     */
+    private void report(HitType hit) {
+        switch (hit) {
+            case GOAL:
+                success();
+                break;
+            case HOLE:
+                failure();
+                break;
+            default:
+                break;
+        }
     }
 
     /**
-     * Goal has been collided with.
+     * Enough marbles have reached a goal.
      */
     private void success() {
         if (mObserver != null) {
@@ -222,7 +721,7 @@ public class MarbleView extends View {
     }
 
     /**
-     * Hole has been collided with.
+     * Too many marbles have fallen in holes.
      */
     private void failure() {
         if (mObserver != null) {
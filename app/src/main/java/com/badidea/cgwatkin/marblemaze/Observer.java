@@ -1,7 +1,5 @@
 package com.badidea.cgwatkin.marblemaze;
 
-import java.util.ArrayList;
-
 /**
  * Observer interface
  *
@@ -10,6 +8,4 @@ import java.util.ArrayList;
 interface Observer {
     void success();
     void failure();
-    ArrayList<WorldObject> createWorldObjects(int canvasWidth, int canvasHeight, int wallWidth, int radius,
-                                              int distanceBetweenWalls, int xPadding, int yPadding);
 }
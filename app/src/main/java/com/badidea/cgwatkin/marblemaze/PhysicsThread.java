@@ -0,0 +1,155 @@
+package com.badidea.cgwatkin.marblemaze;
+
+import android.util.Log;
+
+import com.badidea.cgwatkin.marblemaze.engine.HitType;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Physics Thread class
+ *
+ * Runs a Marble View's physics on a dedicated thread at a fixed tick rate, independent of display frames.
+ * Each tick publishes a snapshot the renderer draws from, so a slow frame never delays a tick and a slow tick never
+ * leaves a frame half updated. The thread stops by itself once the game is won or lost, and parks while the
+ * simulation sleeps.
+ */
+class PhysicsThread implements Runnable {
+
+    /**
+     * Log tag.
+     */
+    private static final String TAG = "PhysicsThread";
+
+    /**
+     * Maximum ticks run back to back to catch up; time beyond this is dropped rather than caught up.
+     */
+    private static final int MAX_CATCH_UP_TICKS = 5;
+
+    /**
+     * The view whose world is updated.
+     */
+    private final MarbleView mMarbleView;
+
+    /**
+     * Length of a tick in nanoseconds.
+     */
+    private final long mTickNanos;
+
+    /**
+     * The physics thread, while running.
+     */
+    private Thread mThread;
+
+    /**
+     * Whether the physics thread should keep running.
+     */
+    private volatile boolean mRunning;
+
+    /**
+     * Ticks run, and ticks dropped because the thread fell too far behind, since last started.
+     */
+    private int mTickCount, mDroppedTicks;
+
+    /**
+     * Constructor
+     *
+     * @param marbleView The view whose world is updated.
+     * @param tickNanos Length of a tick in nanoseconds.
+     */
+    PhysicsThread(MarbleView marbleView, long tickNanos) {
+        mMarbleView = marbleView;
+        mTickNanos = tickNanos;
+    }
+
+    /**
+     * Starts the physics thread, if not already running.
+     */
+    void start() {
+        if (mThread != null) {
+            return;
+        }
+        mRunning = true;
+        mThread = new Thread(this, TAG);
+        mThread.start();
+    }
+
+    /**
+     * Stops the physics thread, waiting for it to finish its tick.
+     */
+    void stop() {
+        if (mThread == null) {
+            return;
+        }
+        mRunning = false;
+        LockSupport.unpark(mThread);
+        boolean interrupted = false;
+        while (mThread.isAlive()) {
+            try {
+                mThread.join();
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        mThread = null;
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Ran " + mTickCount + " ticks, dropped " + mDroppedTicks);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wakes the physics thread if it is parked while the simulation sleeps.
+     */
+    void wake() {
+        if (mThread != null) {
+            LockSupport.unpark(mThread);
+        }
+    }
+
+    /**
+     * Tick loop. Runs every tick that is due, then sleeps until the next one.
+     */
+    @Override
+    public void run() {
+        mTickCount = 0;
+        mDroppedTicks = 0;
+        double dT = mTickNanos / 1e9;
+        long next = System.nanoTime();
+        while (mRunning) {
+            if (mMarbleView.isAsleep()) {
+                // Nothing moves until a tilt wakes the simulation, then tick from now
+                LockSupport.park(this);
+                next = System.nanoTime();
+                continue;
+            }
+            long now = System.nanoTime();
+            int ticks = 0;
+            while (mRunning && next <= now && ticks < MAX_CATCH_UP_TICKS && !mMarbleView.isAsleep()) {
+                HitType hit = mMarbleView.update(dT);
+                mTickCount++;
+                ticks++;
+                next += mTickNanos;
+                if (hit == HitType.GOAL || hit == HitType.HOLE) {
+                    mRunning = false;
+                }
+            }
+            if (mMarbleView.isAsleep()) {
+                continue;
+            }
+            if (next <= now) {
+                // Too far behind, drop the backlog instead of spiralling
+                long behind = (now - next) / mTickNanos + 1;
+                mDroppedTicks += behind;
+                next += behind * mTickNanos;
+            }
+            long wait = next - System.nanoTime();
+            if (mRunning && wait > 0) {
+                LockSupport.parkNanos(this, wait);
+            }
+        }
+    }
+}
@@ -1,19 +1,41 @@
 package com.badidea.cgwatkin.marblemaze;
 
-import android.os.Handler;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Display;
 
 /**
  * Refresh World class
  *
- * Refreshes game world until paused.
+ * Refreshes game world on every display frame until paused.
+ *
+ * Frames are driven by Choreographer, so update and redraw are tied to vsync at whatever rate the display runs.
+ * By default physics runs at a fixed tick rate: frame time is added to an accumulator and consumed in whole ticks,
+ * and the marble is drawn interpolated between its last two states. A tick rate of 0 passes raw frame time instead.
+ * Alternatively physics runs on its own thread at the tick rate, and frames only redraw the newest snapshot.
+ * While the simulation sleeps, with the marbles at rest, no frames are requested until it is woken.
  */
-class RefreshWorld implements Runnable {
+class RefreshWorld implements Choreographer.FrameCallback {
+
+    /**
+     * Log tag.
+     */
+    private static final String TAG = "RefreshWorld";
+
+    /**
+     * Default physics ticks per second.
+     */
+    static final int DEFAULT_TICK_RATE = 60;
+
+    /**
+     * Display refresh rate assumed when the view is not attached to a display.
+     */
+    private static final float DEFAULT_FRAME_RATE = 60;
 
     /**
-     * The refresh rate/delay values.
+     * Maximum ticks run in one refresh; time beyond this is dropped rather than caught up.
      */
-    private static long REFRESH_RATE = 60;
-    private static long REFRESH_DELAY = 1000 / REFRESH_RATE;
+    private static final int MAX_CATCH_UP_TICKS = 5;
 
     /**
      * Marble world view to be refreshed.
@@ -21,67 +43,273 @@ class RefreshWorld implements Runnable {
     private MarbleView mMarbleView;
 
     /**
-     * Thread handler allow screen refresh after set delay.
+     * Frame scheduler for the main thread.
      */
-    private Handler mHandler;
+    private Choreographer mChoreographer;
 
     /**
-     * Whether the runnable should pause or not.
+     * Whether the callback should pause or not.
      */
     private boolean paused;
 
     /**
-     * The start time of the refresh runnable.
+     * The vsync time of the previous frame, in nanoseconds, or 0 if no frame since un-pausing.
      */
     private long mStartTime;
 
+    /**
+     * Length of a display frame in nanoseconds.
+     */
+    private long mFrameNanos;
+
+    /**
+     * Length of a physics tick in nanoseconds, or 0 for variable time steps.
+     */
+    private long mTickNanos;
+
+    /**
+     * Frame time not yet consumed by physics ticks, in nanoseconds.
+     */
+    private long mAccumulator;
+
+    /**
+     * Whether physics should run on its own thread.
+     */
+    private boolean mUsePhysicsThread;
+
+    /**
+     * Runs physics on its own thread, or null if physics runs in the frame callback.
+     */
+    private PhysicsThread mPhysics;
+
+    /**
+     * Frames run and frames missed since un-pausing.
+     */
+    private int mFrameCount, mDroppedFrames;
+
+    /**
+     * Whether frames have stopped because the simulation is asleep.
+     */
+    private boolean mAsleep;
+
+    /**
+     * When the simulation last fell asleep, in nanoseconds.
+     */
+    private long mSleepStart;
+
+    /**
+     * Times the simulation slept since un-pausing.
+     */
+    private int mSleepCount;
+
+    /**
+     * Nanoseconds spent asleep since un-pausing, not counting a sleep still going on.
+     */
+    private long mSleepNanos;
+
     /**
      * Constructor.
      *
+     * Must be called on the main thread.
+     *
      * @param marbleView The world to refresh.
-     * @param handler The thread handler to post to.
      */
-    RefreshWorld(MarbleView marbleView, Handler handler) {
+    RefreshWorld(MarbleView marbleView) {
         mMarbleView = marbleView;
-        mHandler = handler;
+        mChoreographer = Choreographer.getInstance();
         paused = true;
+        setTickRate(DEFAULT_TICK_RATE);
     }
 
     /**
-     * Update Marble View, redraw.
-     * Recursive.
+     * Update Marble View, redraw, and request the next frame.
+     *
+     * @param frameTimeNanos Vsync time of this frame.
      */
     @Override
-    public void run() {
+    public void doFrame(long frameTimeNanos) {
+        if (paused) {
+            return;
+        }
+        if (mStartTime != 0) {
+            long dT = frameTimeNanos - mStartTime;
+            countFrame(dT);
+            // With a physics thread, frames just show its newest state
+            if (mPhysics == null && mTickNanos > 0) {
+                step(dT);
+            }
+            else if (mPhysics == null) {
+                mMarbleView.update(dT / 1e9);
+            }
+            mMarbleView.requestRender();
+        }
+        mStartTime = frameTimeNanos;
+        if (mMarbleView.isAsleep()) {
+            // This frame shows the marbles at rest, nothing more to draw until woken
+            mAsleep = true;
+            mSleepStart = frameTimeNanos;
+            mSleepCount++;
+            mStartTime = 0;
+            return;
+        }
         if (!paused) {
-            long dT = System.currentTimeMillis() - mStartTime;
-            mStartTime = System.currentTimeMillis();
-            mMarbleView.update(dT / 1000f);
-            mMarbleView.postInvalidate();
-            long timeTaken = System.currentTimeMillis() - mStartTime;
-            mHandler.postDelayed(this, REFRESH_DELAY - timeTaken);
+            mChoreographer.postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Restarts frames and physics after the simulation has slept.
+     * Must be called on the main thread.
+     */
+    void wake() {
+        if (mPhysics != null) {
+            mPhysics.wake();
+        }
+        if (paused || !mAsleep) {
+            return;
+        }
+        mAsleep = false;
+        mSleepNanos += System.nanoTime() - mSleepStart;
+        mAccumulator = 0;
+        mChoreographer.postFrameCallback(this);
+    }
+
+    /**
+     * Counts a frame, and any frames skipped since the previous one.
+     *
+     * @param dT Time since the previous frame in nanoseconds.
+     */
+    private void countFrame(long dT) {
+        mFrameCount++;
+        long missed = (dT + mFrameNanos / 2) / mFrameNanos - 1;
+        if (missed > 0) {
+            mDroppedFrames += missed;
+        }
+    }
+
+    /**
+     * Runs as many whole physics ticks as the accumulated time allows, up to the catch-up limit.
+     *
+     * @param dT Frame time in nanoseconds.
+     */
+    private void step(long dT) {
+        mAccumulator += dT;
+        int ticks = 0;
+        while (!paused && mAccumulator >= mTickNanos && ticks < MAX_CATCH_UP_TICKS && !mMarbleView.isAsleep()) {
+            mMarbleView.update(mTickNanos / 1e9);
+            mAccumulator -= mTickNanos;
+            ticks++;
+        }
+        if (mAccumulator >= mTickNanos) {
+            // Too far behind, drop the backlog instead of spiralling
+            mAccumulator %= mTickNanos;
         }
+        mMarbleView.setInterpolation((double) mAccumulator / mTickNanos);
     }
 
     /**
-     * @param startTime Start time.
+     * Sets the physics tick rate.
+     *
+     * @param tickRate Ticks per second, or 0 to step by raw frame time.
      */
-    RefreshWorld setStartTime(long startTime) {
-        mStartTime = startTime;
+    RefreshWorld setTickRate(int tickRate) {
+        mTickNanos = tickRate > 0 ? 1000000000L / tickRate : 0;
+        mAccumulator = 0;
+        if (mTickNanos == 0) {
+            mMarbleView.setInterpolation(1);
+        }
+        setUpPhysics();
         return this;
     }
 
+    /**
+     * Sets whether physics runs on its own thread at the tick rate, publishing snapshots for the renderer, instead
+     * of in the frame callback. Needs a fixed tick rate; with a tick rate of 0 physics stays in the frame callback.
+     * Must be called while paused.
+     *
+     * @param enabled True to run physics on its own thread.
+     */
+    RefreshWorld setPhysicsThread(boolean enabled) {
+        mUsePhysicsThread = enabled;
+        setUpPhysics();
+        return this;
+    }
+
+    /**
+     * Creates or drops the physics thread to match the tick rate and setting.
+     */
+    private void setUpPhysics() {
+        if (mUsePhysicsThread && mTickNanos > 0) {
+            mPhysics = new PhysicsThread(mMarbleView, mTickNanos);
+            mMarbleView.useSnapshots(mTickNanos);
+        }
+        else {
+            mPhysics = null;
+            mMarbleView.useSnapshots(0);
+        }
+    }
+
+    /**
+     * Returns the number of frames run since last un-paused.
+     *
+     * @return Frame count.
+     */
+    int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Returns the number of display frames missed since last un-paused.
+     *
+     * @return Dropped frame count.
+     */
+    int getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
     /**
      * Pauses refresh.
      */
     void pause() {
+        if (!paused && mAsleep) {
+            mSleepNanos += System.nanoTime() - mSleepStart;
+        }
+        if (BuildConfig.DEBUG && !paused && mFrameCount > 0) {
+            Log.d(TAG, "Dropped " + mDroppedFrames + " frames in " + mFrameCount + ", last frame made "
+                    + mMarbleView.getDrawCalls() + " draw calls, redrawing " + mMarbleView.getPixelStats()
+                    + "; contact cache hits: "
+                    + mMarbleView.getCacheHitRates() + "; slept " + mSleepCount + " times for "
+                    + mSleepNanos / 1000000 + " ms");
+        }
+        mAsleep = false;
         paused = true;
+        mChoreographer.removeFrameCallback(this);
+        if (mPhysics != null) {
+            mPhysics.stop();
+        }
     }
 
     /**
-     * Un-pauses refresh.
+     * Un-pauses refresh, starting from the next frame.
      */
     void unPause() {
+        if (!paused) {
+            return;
+        }
         paused = false;
+        Display display = mMarbleView.getDisplay();
+        float frameRate = display != null ? display.getRefreshRate() : DEFAULT_FRAME_RATE;
+        mFrameNanos = (long) (1e9 / (frameRate > 0 ? frameRate : DEFAULT_FRAME_RATE));
+        mStartTime = 0;
+        mAccumulator = 0;
+        mFrameCount = 0;
+        mDroppedFrames = 0;
+        mAsleep = false;
+        mSleepCount = 0;
+        mSleepNanos = 0;
+        if (mPhysics != null) {
+            mPhysics.start();
+        }
+        mChoreographer.postFrameCallback(this);
     }
 }
@@ -0,0 +1,11 @@
+package com.badidea.cgwatkin.marblemaze;
+
+/**
+ * Rest Observer interface
+ *
+ * Used in Marble View to tell the activity, on the main thread, when the simulation falls asleep or wakes.
+ */
+interface RestObserver {
+    void asleep();
+    void awake();
+}
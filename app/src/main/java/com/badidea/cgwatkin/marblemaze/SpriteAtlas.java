@@ -0,0 +1,189 @@
+package com.badidea.cgwatkin.marblemaze;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RadialGradient;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.support.v4.content.res.ResourcesCompat;
+
+/**
+ * Sprite Atlas class
+ *
+ * Pre-renders the marble, goal and hole once each into one bitmap, at the radius the world was built with, so every
+ * circle drawn afterwards is a single filtered bitmap copy instead of an anti-aliased circle.
+ * Shading costs nothing per frame, so the marble is drawn with a highlight.
+ * Circles of any other radius fall back to being drawn with the sprite's paint.
+ */
+class SpriteAtlas {
+
+    /**
+     * Sprite index of the marble.
+     */
+    static final int MARBLE = 0;
+
+    /**
+     * Sprite index of a goal.
+     */
+    static final int GOAL = 1;
+
+    /**
+     * Sprite index of a hole.
+     */
+    static final int HOLE = 2;
+
+    /**
+     * Number of sprites.
+     */
+    private static final int SPRITE_COUNT = 3;
+
+    /**
+     * Transparent pixels around each sprite, holding its anti-aliased edge and keeping filtering from bleeding in
+     * from its neighbours.
+     */
+    private static final int PAD = 1;
+
+    /**
+     * Radius the sprites are rendered at.
+     */
+    private final int mRadius;
+
+    /**
+     * Paints the sprites are rendered with, by sprite index.
+     */
+    private final Paint[] mPaints = new Paint[SPRITE_COUNT];
+
+    /**
+     * Paint the sprites are copied with, filtering so they can sit between pixels.
+     */
+    private final Paint mPaintBlit = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * The sprites, side by side, or null once recycled.
+     */
+    private Bitmap mAtlas;
+
+    /**
+     * Area of the atlas a sprite is copied from.
+     */
+    private final Rect mSource = new Rect();
+
+    /**
+     * Area of the canvas a sprite is copied to.
+     */
+    private final RectF mDest = new RectF();
+
+    /**
+     * Constructor
+     *
+     * Defines the paints and renders the sprites.
+     *
+     * @param resources Resources to read colours from.
+     * @param radius Radius of the marble, goals and holes.
+     */
+    SpriteAtlas(Resources resources, int radius) {
+        mRadius = radius;
+
+        // Light falls from the top left, a third of the way out from the centre
+        int marble = ResourcesCompat.getColor(resources, R.color.marble, null);
+        mPaints[MARBLE] = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mPaints[MARBLE].setColor(marble);
+        mPaints[MARBLE].setStyle(Paint.Style.FILL);
+        mPaints[MARBLE].setShader(new RadialGradient(-radius / 3f, -radius / 3f, radius * 4 / 3f,
+                lighten(marble), marble, Shader.TileMode.CLAMP));
+
+        mPaints[GOAL] = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mPaints[GOAL].setColor(ResourcesCompat.getColor(resources, R.color.target, null));
+        mPaints[GOAL].setStyle(Paint.Style.FILL);
+
+        mPaints[HOLE] = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mPaints[HOLE].setColor(ResourcesCompat.getColor(resources, R.color.hole, null));
+        mPaints[HOLE].setStyle(Paint.Style.FILL);
+
+        int size = getSpriteSize();
+        mAtlas = Bitmap.createBitmap(size * SPRITE_COUNT, size, Bitmap.Config.ARGB_8888);
+        Canvas c = new Canvas(mAtlas);
+        for (int i = 0; i < SPRITE_COUNT; i++) {
+            c.save();
+            c.translate(i * size + size / 2f, size / 2f);
+            c.drawCircle(0, 0, radius, mPaints[i]);
+            c.restore();
+        }
+    }
+
+    /**
+     * Returns a colour halfway to white, for the marble's highlight.
+     *
+     * @param colour The colour.
+     * @return The lighter colour.
+     */
+    private static int lighten(int colour) {
+        return Color.argb(Color.alpha(colour), (Color.red(colour) + 255) / 2, (Color.green(colour) + 255) / 2,
+                (Color.blue(colour) + 255) / 2);
+    }
+
+    /**
+     * Returns the width and height of each sprite, including padding.
+     *
+     * @return Sprite size in pixels.
+     */
+    private int getSpriteSize() {
+        return 2 * (mRadius + PAD);
+    }
+
+    /**
+     * Returns the radius the sprites are rendered at.
+     *
+     * @return Radius in pixels.
+     */
+    int getRadius() {
+        return mRadius;
+    }
+
+    /**
+     * Returns the size of the atlas bitmap.
+     *
+     * @return Size in bytes, 0 once recycled.
+     */
+    int getByteCount() {
+        return mAtlas != null ? mAtlas.getByteCount() : 0;
+    }
+
+    /**
+     * Draws a sprite centred on a point, copied from the atlas if the radius matches the atlas.
+     *
+     * @param c The canvas.
+     * @param sprite Sprite index.
+     * @param x Centre x coordinate.
+     * @param y Centre y coordinate.
+     * @param r Radius.
+     */
+    void draw(Canvas c, int sprite, float x, float y, float r) {
+        if (r != mRadius || mAtlas == null) {
+            c.save();
+            c.translate(x, y);
+            c.drawCircle(0, 0, r, mPaints[sprite]);
+            c.restore();
+            return;
+        }
+        int size = getSpriteSize();
+        mSource.set(sprite * size, 0, (sprite + 1) * size, size);
+        float half = size / 2f;
+        mDest.set(x - half, y - half, x + half, y + half);
+        c.drawBitmap(mAtlas, mSource, mDest, mPaintBlit);
+    }
+
+    /**
+     * Frees the atlas bitmap. Sprites are drawn as circles afterwards.
+     */
+    void recycle() {
+        if (mAtlas != null) {
+            mAtlas.recycle();
+            mAtlas = null;
+        }
+    }
+}
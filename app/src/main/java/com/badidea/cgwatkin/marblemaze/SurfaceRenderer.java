@@ -0,0 +1,171 @@
+package com.badidea.cgwatkin.marblemaze;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.view.SurfaceHolder;
+
+/**
+ * Surface Renderer class
+ *
+ * Draws a Marble View's world onto a SurfaceView from a dedicated render thread, so drawing does not compete with
+ * layout, input and other work on the UI thread.
+ * A frame is drawn each time one is requested, while the surface exists, locking only the area the frame changes.
+ */
+class SurfaceRenderer implements SurfaceHolder.Callback, Runnable {
+
+    /**
+     * The surface holder to draw into.
+     */
+    private final SurfaceHolder mHolder;
+
+    /**
+     * The view whose world is drawn.
+     */
+    private final MarbleView mMarbleView;
+
+    /**
+     * Colour the surface is cleared to before each frame.
+     */
+    private final int mBackground;
+
+    /**
+     * The render thread, while the surface exists.
+     */
+    private Thread mThread;
+
+    /**
+     * Whether the render thread should keep running.
+     */
+    private boolean mRunning;
+
+    /**
+     * Whether a frame has been requested since the last one was drawn.
+     */
+    private boolean mRenderRequested;
+
+    /**
+     * Area of the surface the next frame redraws. Only used on the render thread.
+     */
+    private final Rect mDirty = new Rect();
+
+    /**
+     * Constructor
+     *
+     * Registers for the holder's surface callbacks.
+     *
+     * @param holder The surface holder to draw into.
+     * @param marbleView The view whose world is drawn.
+     * @param background Colour the surface is cleared to before each frame.
+     */
+    SurfaceRenderer(SurfaceHolder holder, MarbleView marbleView, int background) {
+        mHolder = holder;
+        mMarbleView = marbleView;
+        mBackground = background;
+        holder.addCallback(this);
+    }
+
+    /**
+     * Requests a frame be drawn. Does nothing if the surface does not exist.
+     */
+    synchronized void requestRender() {
+        mRenderRequested = true;
+        notifyAll();
+    }
+
+    /**
+     * Starts the render thread, with a full first frame as the new surface holds nothing.
+     *
+     * @param holder The surface holder.
+     */
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        mMarbleView.redrawAll();
+        synchronized (this) {
+            mRunning = true;
+            mRenderRequested = true;
+        }
+        mThread = new Thread(this, "SurfaceRenderer");
+        mThread.start();
+    }
+
+    /**
+     * Redraws at the new size.
+     *
+     * @param holder The surface holder.
+     * @param format The new pixel format.
+     * @param width The new width.
+     * @param height The new height.
+     */
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        mMarbleView.redrawAll();
+        requestRender();
+    }
+
+    /**
+     * Stops the render thread, waiting for it to finish with the surface.
+     *
+     * @param holder The surface holder.
+     */
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        synchronized (this) {
+            mRunning = false;
+            notifyAll();
+        }
+        boolean interrupted = false;
+        while (mThread.isAlive()) {
+            try {
+                mThread.join();
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        mThread = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Render loop. Waits for a frame request, then redraws the world within the frame's dirty area.
+     * The surface may widen the locked area to cover what its back buffer lacks, which drawing within the clip
+     * handles.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            synchronized (this) {
+                while (mRunning && !mRenderRequested) {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!mRunning) {
+                    return;
+                }
+                mRenderRequested = false;
+            }
+            if (!mMarbleView.prepareFrame(mDirty)) {
+                continue;
+            }
+            Canvas c = mHolder.lockCanvas(mDirty);
+            if (c == null) {
+                // Nothing was drawn, so the screen still shows the frame before; only a full redraw erases it
+                mMarbleView.redrawAll();
+                continue;
+            }
+            try {
+                c.drawColor(mBackground);
+                mMarbleView.drawWorld(c);
+            }
+            finally {
+                mHolder.unlockCanvasAndPost(c);
+            }
+        }
+    }
+}
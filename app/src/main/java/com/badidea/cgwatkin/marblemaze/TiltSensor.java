@@ -0,0 +1,180 @@
+package com.badidea.cgwatkin.marblemaze;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import com.badidea.cgwatkin.marblemaze.engine.TiltFilter;
+
+/**
+ * Tilt Sensor class
+ *
+ * Listens to the accelerometer on a dedicated thread, filters the samples, and sets a Marble View's gravity, so
+ * sensor work stays off the UI thread.
+ * Samples may be batched by the sensor hardware up to a maximum report latency, which lets the application processor
+ * sleep between deliveries; the filter uses each sample's own timestamp, so batched samples are filtered as taken.
+ * While the simulation sleeps the latency is raised further, as samples are only needed to notice a tilt.
+ */
+class TiltSensor implements SensorEventListener {
+
+    /**
+     * Log tag.
+     */
+    private static final String TAG = "TiltSensor";
+
+    /**
+     * Sensor manager.
+     */
+    private final SensorManager mSensorManager;
+
+    /**
+     * Accelerometer sensor.
+     */
+    private final Sensor mAccelerometer;
+
+    /**
+     * The view whose gravity is set.
+     */
+    private final MarbleView mMarbleView;
+
+    /**
+     * Filter smoothing the samples. Only used on the sensor thread.
+     */
+    private final TiltFilter mFilter;
+
+    /**
+     * Longest the sensor may hold samples back before delivering them, in microseconds, while playing and while the
+     * simulation sleeps.
+     */
+    private final int mMaxReportLatencyUs, mRestingReportLatencyUs;
+
+    /**
+     * The thread samples are delivered on, while listening.
+     */
+    private HandlerThread mThread;
+
+    /**
+     * Handler for the sensor thread, while listening.
+     */
+    private Handler mHandler;
+
+    /**
+     * Whether listening with the resting report latency.
+     */
+    private boolean mResting;
+
+    /**
+     * Samples received since last started.
+     */
+    private int mSampleCount;
+
+    /**
+     * Constructor
+     *
+     * @param sensorManager Sensor manager.
+     * @param marbleView The view whose gravity is set.
+     * @param filter Filter smoothing the samples.
+     * @param maxReportLatencyUs Longest the sensor may hold samples back, in microseconds, or 0 for no batching.
+     * @param restingReportLatencyUs Longest the sensor may hold samples back while the simulation sleeps.
+     */
+    TiltSensor(SensorManager sensorManager, MarbleView marbleView, TiltFilter filter, int maxReportLatencyUs,
+               int restingReportLatencyUs) {
+        mSensorManager = sensorManager;
+        mAccelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        mMarbleView = marbleView;
+        mFilter = filter;
+        mMaxReportLatencyUs = maxReportLatencyUs;
+        mRestingReportLatencyUs = restingReportLatencyUs;
+    }
+
+    /**
+     * Starts listening, on a new sensor thread, if not already listening.
+     */
+    void start() {
+        if (mThread != null) {
+            return;
+        }
+        mFilter.reset();
+        mSampleCount = 0;
+        mThread = new HandlerThread(TAG);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mResting = false;
+        register();
+    }
+
+    /**
+     * Switches between the playing and resting report latencies, if listening.
+     *
+     * @param resting True while the simulation sleeps.
+     */
+    void setResting(boolean resting) {
+        if (mThread == null || resting == mResting) {
+            return;
+        }
+        mResting = resting;
+        mSensorManager.unregisterListener(this);
+        register();
+    }
+
+    /**
+     * Registers for samples on the sensor thread, at the report latency for the current state.
+     */
+    private void register() {
+        mSensorManager.registerListener(this, mAccelerometer, SensorManager.SENSOR_DELAY_GAME,
+                mResting ? mRestingReportLatencyUs : mMaxReportLatencyUs, mHandler);
+    }
+
+    /**
+     * Stops listening and ends the sensor thread, waiting for it to finish any samples already delivered.
+     */
+    void stop() {
+        if (mThread == null) {
+            return;
+        }
+        mSensorManager.unregisterListener(this);
+        mThread.quitSafely();
+        boolean interrupted = false;
+        while (mThread.isAlive()) {
+            try {
+                mThread.join();
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        mThread = null;
+        mHandler = null;
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Filtered " + mSampleCount + " samples");
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Filters a sample and sets the view's gravity from it. Runs on the sensor thread.
+     *
+     * @param event The sensor event.
+     */
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        mSampleCount++;
+        mFilter.filter(-event.values[0], event.values[1], event.timestamp);
+        mMarbleView.setGravity(mFilter.getX(), mFilter.getY());
+    }
+
+    /**
+     * Do nothing.
+     *
+     * @param sensor The sensor.
+     * @param accuracy The new accuracy value.
+     */
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) { }
+}
@@ -0,0 +1,45 @@
+package com.badidea.cgwatkin.marblemaze;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import com.badidea.cgwatkin.marblemaze.engine.World;
+
+/**
+ * Wall Batch class
+ *
+ * Packs the line end points of every wall in the world into one array when the world is built, so all walls are
+ * drawn with a single drawLines call.
+ */
+class WallBatch {
+
+    /**
+     * Line end points, four floats (x1, y1, x2, y2) per wall.
+     */
+    private final float[] mLines;
+
+    /**
+     * Constructor
+     *
+     * @param world The world whose walls are packed.
+     */
+    WallBatch(World world) {
+        mLines = new float[world.getWallCount() * 4];
+        world.packWallLines(mLines);
+    }
+
+    /**
+     * Draws all walls.
+     *
+     * @param c The canvas.
+     * @param p The paint.
+     * @return Number of draw calls made.
+     */
+    int draw(Canvas c, Paint p) {
+        if (mLines.length == 0) {
+            return 0;
+        }
+        c.drawLines(mLines, p);
+        return 1;
+    }
+}
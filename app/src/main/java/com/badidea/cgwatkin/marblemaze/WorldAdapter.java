@@ -22,9 +22,9 @@ class WorldAdapter extends BaseAdapter {
     private LayoutInflater layoutInflater;
 
     /**
-     * List of world name string resources.
+     * List of world names.
      */
-    private ArrayList<Integer> worldList;
+    private ArrayList<String> worldList;
 
     /**
      * Constructs object using context and world list.
@@ -32,7 +32,7 @@ class WorldAdapter extends BaseAdapter {
      * @param context The current context of the world adapter.
      * @param worldList An array list of world names.
      */
-    WorldAdapter(Context context, ArrayList<Integer> worldList) {
+    WorldAdapter(Context context, ArrayList<String> worldList) {
 
         this.layoutInflater = LayoutInflater.from(context);
         this.worldList = worldList;
@@ -3,10 +3,12 @@ package com.badidea.cgwatkin.marblemaze;
 import android.content.Context;
 import android.content.Intent;
 import android.util.AttributeSet;
+import android.util.Log;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.GridView;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -15,10 +17,16 @@ import java.util.ArrayList;
  * Displays a grid view of images sourced from device folders.
  */
 public class WorldPickerGridView extends GridView {
+
+    /**
+     * Log tag.
+     */
+    private static final String TAG = "WorldPickerGridView";
+
     /**
-     * Stores thumbnail bitmaps for display;
+     * Stores world labels for display;
      */
-    private final ArrayList<Integer> mWorldList = new ArrayList<>();
+    private final ArrayList<String> mWorldList = new ArrayList<>();
 
     /**
      * Constructor from context and attributes.
@@ -61,13 +69,19 @@ public class WorldPickerGridView extends GridView {
     }
 
     /**
-     * Gets a all worlds.
+     * Gets a all worlds, one per level file.
      */
     private void getWorlds() {
-        mWorldList.add(R.string.world1);
-        mWorldList.add(R.string.world2);
-        mWorldList.add(R.string.world3);
-        mWorldList.add(R.string.world4);
-        mWorldList.add(R.string.world5);
+        int count;
+        try {
+            count = Levels.get(getContext()).getCount();
+        }
+        catch (IOException e) {
+            Log.e(TAG, "Cannot list worlds", e);
+            count = 0;
+        }
+        for (int i = 1; i <= count; i++) {
+            mWorldList.add(getResources().getString(R.string.world, i));
+        }
     }
 }
@@ -0,0 +1,176 @@
+package com.badidea.cgwatkin.marblemaze;
+
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.support.v4.content.res.ResourcesCompat;
+
+import com.badidea.cgwatkin.marblemaze.engine.Snapshot;
+import com.badidea.cgwatkin.marblemaze.engine.World;
+
+/**
+ * World Renderer class
+ *
+ * Draws the engine's marble and world onto a canvas.
+ * Keeps all android.graphics code out of the engine module.
+ */
+class WorldRenderer {
+
+    /**
+     * Pixels added around moving parts' bounds, for anti-aliased edges.
+     */
+    private static final int EDGE = 2;
+
+    /**
+     * The paint objects to colour etc. the walls and moving bars.
+     */
+    private final Paint mPaintWall, mPaintBar;
+
+    /**
+     * Pre-rendered marble, goal and hole.
+     */
+    private final SpriteAtlas mSprites;
+
+    /**
+     * The world being drawn.
+     */
+    private final World mWorld;
+
+    /**
+     * All walls packed for drawing in one call.
+     */
+    private final WallBatch mWallBatch;
+
+    /**
+     * Constructor
+     *
+     * Defines paints to be used for walls and bars.
+     *
+     * @param resources Resources to read colours from.
+     * @param world The world to draw.
+     * @param wallWidth The width of walls.
+     * @param sprites Pre-rendered marble, goal and hole.
+     */
+    WorldRenderer(Resources resources, World world, int wallWidth, SpriteAtlas sprites) {
+        mWorld = world;
+        mWallBatch = new WallBatch(world);
+        mSprites = sprites;
+
+        mPaintWall = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mPaintWall.setColor(ResourcesCompat.getColor(resources, R.color.wall, null));
+        mPaintWall.setStrokeWidth(wallWidth);
+        mPaintWall.setStyle(Paint.Style.STROKE);
+        mPaintWall.setAntiAlias(true);
+
+        // Moving bars collide as capsules, so are drawn with round ends
+        mPaintBar = new Paint(mPaintWall);
+        mPaintBar.setStrokeCap(Paint.Cap.ROUND);
+    }
+
+    /**
+     * Draws the marbles in play in a snapshot, between their previous and current positions.
+     *
+     * @param c The canvas.
+     * @param snapshot The snapshot.
+     * @param alpha Interpolation factor, 0 for previous position through 1 for current position.
+     * @return Number of draw calls made.
+     */
+    int drawMarbles(Canvas c, Snapshot snapshot, float alpha) {
+        int drawCalls = 0;
+        for (int i = 0; i < snapshot.getMarbleCount(); i++) {
+            if (snapshot.isActive(i)) {
+                mSprites.draw(c, SpriteAtlas.MARBLE, snapshot.getMarbleX(i, alpha), snapshot.getMarbleY(i, alpha),
+                        snapshot.getMarbleR(i));
+                drawCalls++;
+            }
+        }
+        return drawCalls;
+    }
+
+    /**
+     * Draws the world objects, with all walls in one batch.
+     *
+     * @param c The canvas.
+     * @return Number of draw calls made.
+     */
+    int drawWorldObjects(Canvas c) {
+        int drawCalls = mWallBatch.draw(c, mPaintWall);
+        for (int i = 0; i < mWorld.getGoalCount(); i++) {
+            mSprites.draw(c, SpriteAtlas.GOAL, mWorld.getGoalX(i), mWorld.getGoalY(i), mWorld.getGoalR(i));
+            drawCalls++;
+        }
+        for (int i = 0; i < mWorld.getHoleCount(); i++) {
+            mSprites.draw(c, SpriteAtlas.HOLE, mWorld.getHoleX(i), mWorld.getHoleY(i), mWorld.getHoleR(i));
+            drawCalls++;
+        }
+        return drawCalls;
+    }
+
+    /**
+     * Draws the moving obstacles in a snapshot, between their previous and current positions.
+     *
+     * @param c The canvas.
+     * @param snapshot The snapshot.
+     * @param alpha Interpolation factor, 0 for previous position through 1 for current position.
+     * @return Number of draw calls made.
+     */
+    int drawObstacles(Canvas c, Snapshot snapshot, float alpha) {
+        for (int i = 0; i < snapshot.getObstacleCount(); i++) {
+            float x1 = snapshot.getX1(i, alpha), y1 = snapshot.getY1(i, alpha);
+            if (snapshot.isHole(i)) {
+                mSprites.draw(c, SpriteAtlas.HOLE, x1, y1, snapshot.getSize(i));
+            }
+            else {
+                c.drawLine(x1, y1, snapshot.getX2(i, alpha), snapshot.getY2(i, alpha), mPaintBar);
+            }
+        }
+        return snapshot.getObstacleCount();
+    }
+
+    /**
+     * Finds the bounds of everything that moves in a snapshot, at any point between its previous and current
+     * positions: the marbles in play and the moving obstacles.
+     *
+     * @param snapshot The snapshot.
+     * @param bounds Set to the bounds, or emptied if nothing is drawn.
+     */
+    void getMovingBounds(Snapshot snapshot, Rect bounds) {
+        bounds.setEmpty();
+        for (int i = 0; i < snapshot.getMarbleCount(); i++) {
+            if (snapshot.isActive(i)) {
+                addBounds(bounds, snapshot.getMarbleX(i, 0), snapshot.getMarbleY(i, 0), snapshot.getMarbleX(i, 1),
+                        snapshot.getMarbleY(i, 1), snapshot.getMarbleR(i));
+            }
+        }
+        for (int i = 0; i < snapshot.getObstacleCount(); i++) {
+            if (snapshot.isHole(i)) {
+                addBounds(bounds, snapshot.getX1(i, 0), snapshot.getY1(i, 0), snapshot.getX1(i, 1),
+                        snapshot.getY1(i, 1), snapshot.getSize(i));
+            }
+            else {
+                // Bars are drawn with round caps half their width out from each end
+                float halfW = mPaintBar.getStrokeWidth() / 2;
+                addBounds(bounds, snapshot.getX1(i, 0), snapshot.getY1(i, 0), snapshot.getX1(i, 1),
+                        snapshot.getY1(i, 1), halfW);
+                addBounds(bounds, snapshot.getX2(i, 0), snapshot.getY2(i, 0), snapshot.getX2(i, 1),
+                        snapshot.getY2(i, 1), halfW);
+            }
+        }
+    }
+
+    /**
+     * Adds to bounds the box a circle covers moving in a straight line between two positions.
+     *
+     * @param bounds The bounds.
+     * @param x1 First centre x coordinate.
+     * @param y1 First centre y coordinate.
+     * @param x2 Second centre x coordinate.
+     * @param y2 Second centre y coordinate.
+     * @param r Radius.
+     */
+    private static void addBounds(Rect bounds, float x1, float y1, float x2, float y2, float r) {
+        bounds.union((int) Math.floor(Math.min(x1, x2) - r) - EDGE, (int) Math.floor(Math.min(y1, y2) - r) - EDGE,
+                (int) Math.ceil(Math.max(x1, x2) + r) + EDGE, (int) Math.ceil(Math.max(y1, y2) + r) + EDGE);
+    }
+}
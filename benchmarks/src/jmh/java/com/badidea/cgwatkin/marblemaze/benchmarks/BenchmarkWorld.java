@@ -0,0 +1,269 @@
+package com.badidea.cgwatkin.marblemaze.benchmarks;
+
+import com.badidea.cgwatkin.marblemaze.engine.HoleObject;
+import com.badidea.cgwatkin.marblemaze.engine.Level;
+import com.badidea.cgwatkin.marblemaze.engine.LevelParser;
+import com.badidea.cgwatkin.marblemaze.engine.Marble;
+import com.badidea.cgwatkin.marblemaze.engine.MarbleSet;
+import com.badidea.cgwatkin.marblemaze.engine.MazeGenerator;
+import com.badidea.cgwatkin.marblemaze.engine.Obstacles;
+import com.badidea.cgwatkin.marblemaze.engine.WallObject;
+import com.badidea.cgwatkin.marblemaze.engine.WallOptimiser;
+import com.badidea.cgwatkin.marblemaze.engine.World;
+import com.badidea.cgwatkin.marblemaze.engine.WorldObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Benchmark World class
+ *
+ * Builds the worlds benchmarks run against: the built-in worlds, read from the app's level files and laid out and
+ * optimised as MarbleView does on a 1080x1920 canvas, seeded generated mazes, optimised the same way, and seeded
+ * synthetic worlds of any size, optionally with moving obstacles.
+ */
+class BenchmarkWorld {
+
+    /**
+     * Canvas size the built-in worlds are laid out for.
+     */
+    private static final int CANVAS_WIDTH = 1080, CANVAS_HEIGHT = 1920;
+
+    /**
+     * Wall width, as used by MarbleView.
+     */
+    private static final int WALL_WIDTH = 8;
+
+    /**
+     * Marble radius, maximum velocity and distance between walls, as MarbleView derives them for a 6 column level.
+     */
+    private static final int RADIUS = CANVAS_WIDTH / 30, MAX_VELOCITY = RADIUS * 2,
+            DISTANCE_BETWEEN_WALLS = MAX_VELOCITY * 2;
+
+    /**
+     * World dimensions.
+     */
+    final int width, height;
+
+    /**
+     * The world.
+     */
+    final World world;
+
+    /**
+     * Marble start position.
+     */
+    private final int mMarbleX, mMarbleY;
+
+    /**
+     * Constructor
+     *
+     * @param worldObjects The objects in the world.
+     * @param width World width.
+     * @param height World height.
+     * @param marbleX Marble start x coordinate.
+     * @param marbleY Marble start y coordinate.
+     */
+    private BenchmarkWorld(ArrayList<WorldObject> worldObjects, int width, int height, int marbleX, int marbleY) {
+        this(worldObjects, new Obstacles(0), width, height, marbleX, marbleY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param worldObjects The static objects in the world.
+     * @param obstacles The moving obstacles.
+     * @param width World width.
+     * @param height World height.
+     * @param marbleX Marble start x coordinate.
+     * @param marbleY Marble start y coordinate.
+     */
+    private BenchmarkWorld(ArrayList<WorldObject> worldObjects, Obstacles obstacles, int width, int height,
+                           int marbleX, int marbleY) {
+        this.width = width;
+        this.height = height;
+        world = new World(worldObjects, obstacles, width, height, DISTANCE_BETWEEN_WALLS);
+        mMarbleX = marbleX;
+        mMarbleY = marbleY;
+    }
+
+    /**
+     * Creates a new marble at rest at the start position.
+     *
+     * @return The marble.
+     */
+    Marble newMarble() {
+        return new Marble(mMarbleX, mMarbleY, 0, 0, RADIUS, MAX_VELOCITY);
+    }
+
+    /**
+     * Creates marbles at rest, spreading out from the start position.
+     *
+     * @param count Number of marbles.
+     * @return The marbles, fewer if the world has no room for them all.
+     */
+    Marble[] newMarbles(int count) {
+        return MarbleSet.spawn(world, mMarbleX, mMarbleY, 0, 0, count, RADIUS, MAX_VELOCITY, 0, 0, width, height);
+    }
+
+    /**
+     * Creates a world by name: "world1" to "world5" for the built-in worlds, "maze" followed by a square grid size,
+     * with a hole in one cell in eight, "synthetic" followed by an object count, or "moving" followed by an object
+     * count for a synthetic world with as many moving obstacles again.
+     *
+     * @param name World name.
+     * @return The world.
+     */
+    static BenchmarkWorld create(String name) {
+        if (name.startsWith("world")) {
+            return builtIn(Integer.parseInt(name.substring("world".length())));
+        }
+        if (name.startsWith("maze")) {
+            int size = Integer.parseInt(name.substring("maze".length()));
+            return maze(size, size * size / 8, 42);
+        }
+        if (name.startsWith("synthetic")) {
+            return synthetic(Integer.parseInt(name.substring("synthetic".length())), 42);
+        }
+        if (name.startsWith("moving")) {
+            return moving(Integer.parseInt(name.substring("moving".length())), 42);
+        }
+        throw new IllegalArgumentException("Unknown world " + name);
+    }
+
+    /**
+     * Creates a built-in world from its level file, laid out as MarbleView lays it out.
+     *
+     * @param number World number, from 1.
+     * @return The world.
+     */
+    static BenchmarkWorld builtIn(int number) {
+        String file = String.format("/levels/level%03d.txt", number);
+        InputStream in = BenchmarkWorld.class.getResourceAsStream(file);
+        if (in == null) {
+            throw new IllegalArgumentException("Unknown built-in world " + number);
+        }
+        Level level;
+        try (Reader reader = new InputStreamReader(in, "UTF-8")) {
+            level = LevelParser.parse(reader);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(file + ": " + e.getMessage(), e);
+        }
+        int w = CANVAS_WIDTH, h = CANVAS_HEIGHT;
+        int radius = Math.min(w / (5 * level.getColumns()), h / (4 * level.getRows()));
+        int d = radius * 4;
+        int xPadding = (w - level.getColumns() * d) / 2;
+        int yPadding = (h - level.getRows() * d) / 2;
+        return new BenchmarkWorld(new WallOptimiser().optimise(
+                level.createWorldObjects(xPadding, yPadding, d, radius, WALL_WIDTH)), w, h,
+                Level.toPixels(level.getMarbleX(), xPadding, d), Level.toPixels(level.getMarbleY(), yPadding, d));
+    }
+
+    /**
+     * Creates a square generated maze, laid out at full cell size however large the grid.
+     *
+     * @param size Grid width and height in cells.
+     * @param holes Number of holes.
+     * @param seed Random seed.
+     * @return The world.
+     */
+    static BenchmarkWorld maze(int size, int holes, long seed) {
+        Level level = new MazeGenerator(seed).setHoles(holes).generate(size, size);
+        int d = DISTANCE_BETWEEN_WALLS;
+        int w = size * d;
+        return new BenchmarkWorld(new WallOptimiser().optimise(level.createWorldObjects(0, 0, d, RADIUS, WALL_WIDTH)),
+                w, w,
+                Level.toPixels(level.getMarbleX(), 0, d), Level.toPixels(level.getMarbleY(), 0, d));
+    }
+
+    /**
+     * Creates a square synthetic world of random walls on cell edges, with a hole in one cell in eight.
+     * The world grows with the object count, so object density stays close to that of the built-in worlds.
+     *
+     * @param count Number of objects.
+     * @param seed Random seed.
+     * @return The world.
+     */
+    static BenchmarkWorld synthetic(int count, long seed) {
+        return synthetic(count, new Obstacles(0), seed);
+    }
+
+    /**
+     * Creates a square synthetic world, as above, with moving obstacles.
+     *
+     * @param count Number of objects.
+     * @param obstacles The moving obstacles.
+     * @param seed Random seed.
+     * @return The world.
+     */
+    private static BenchmarkWorld synthetic(int count, Obstacles obstacles, long seed) {
+        Random random = new Random(seed);
+        int d = DISTANCE_BETWEEN_WALLS;
+        int cells = syntheticCells(count);
+        int size = cells * d;
+        ArrayList<WorldObject> o = new ArrayList<>(count);
+        while (o.size() < count) {
+            int x = random.nextInt(cells) * d, y = random.nextInt(cells) * d;
+            switch (random.nextInt(8)) {
+                case 0:
+                    o.add(new HoleObject(x + d / 2, y + d / 2, RADIUS));
+                    break;
+                case 1:
+                case 2:
+                case 3:
+                    o.add(new WallObject(x, y, x + d, y, WALL_WIDTH));
+                    break;
+                default:
+                    o.add(new WallObject(x, y, x, y + d, WALL_WIDTH));
+                    break;
+            }
+        }
+        return new BenchmarkWorld(o, obstacles, size, size, size / 2 + d / 2, size / 2 + d / 2);
+    }
+
+    /**
+     * Returns the width and height of a synthetic world in cells.
+     *
+     * @param count Number of objects.
+     * @return Cells along each side.
+     */
+    private static int syntheticCells(int count) {
+        return Math.max(2, (int) Math.ceil(Math.sqrt(count)));
+    }
+
+    /**
+     * Creates a synthetic world with as many moving obstacles as static objects: sliding and rotating bars a cell
+     * long, and sliding holes, each moving within about a cell of where it starts.
+     *
+     * @param count Number of static objects, and of moving obstacles.
+     * @param seed Random seed.
+     * @return The world.
+     */
+    static BenchmarkWorld moving(int count, long seed) {
+        Random random = new Random(seed + 1);
+        int d = DISTANCE_BETWEEN_WALLS;
+        int cells = syntheticCells(count);
+        Obstacles obstacles = new Obstacles(d / 4.0);
+        for (int i = 0; i < count; i++) {
+            int x = random.nextInt(cells) * d + d / 2, y = random.nextInt(cells) * d + d / 2;
+            double period = 2 + random.nextDouble() * 4;
+            switch (random.nextInt(3)) {
+                case 0:
+                    obstacles.addSlidingBar(x - d / 2, y, x + d / 2, y, WALL_WIDTH, 0, d, period);
+                    break;
+                case 1:
+                    obstacles.addRotatingBar(x - d / 2, y, x + d / 2, y, WALL_WIDTH, period);
+                    break;
+                default:
+                    obstacles.addSlidingHole(x, y, RADIUS, d, 0, period);
+                    break;
+            }
+        }
+        return synthetic(count, obstacles, seed);
+    }
+}
@@ -0,0 +1,142 @@
+package com.badidea.cgwatkin.marblemaze.benchmarks;
+
+import com.badidea.cgwatkin.marblemaze.engine.CircleObject;
+import com.badidea.cgwatkin.marblemaze.engine.Contacts;
+import com.badidea.cgwatkin.marblemaze.engine.HoleObject;
+import com.badidea.cgwatkin.marblemaze.engine.WallObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Collision Benchmark class
+ *
+ * Measures the narrowphase tests on their own: WallObject.collision and CircleObject.collision for a marble that
+ * is touching, near or far from the object, and the contact tests that also write the normal and depth.
+ */
+@State(Scope.Thread)
+public class CollisionBenchmark {
+
+    /**
+     * Marble distance from the object, in marble radii.
+     */
+    @Param({"0.5", "1.5", "10"})
+    public double distance;
+
+    /**
+     * Walls tested against.
+     */
+    private WallObject mHorizontalWall, mVerticalWall, mDiagonalWall;
+
+    /**
+     * Circle tested against.
+     */
+    private CircleObject mHole;
+
+    /**
+     * Marble positions to test, cycled through so the branch predictor cannot learn one answer.
+     */
+    private final double[] mX = new double[64], mY = new double[64];
+
+    /**
+     * Marble radius.
+     */
+    private final double mR = 36;
+
+    /**
+     * Next position to test.
+     */
+    private int mI;
+
+    /**
+     * Contact buffer, reused by every test.
+     */
+    private final Contacts mContacts = new Contacts(1);
+
+    /**
+     * Builds the objects and marble positions.
+     */
+    @Setup
+    public void setUp() {
+        mHorizontalWall = new WallObject(0, 0, 288, 0, 8);
+        mVerticalWall = new WallObject(0, 0, 0, 288, 8);
+        mDiagonalWall = new WallObject(0, 0, 204, 204, 8);
+        mHole = new HoleObject(0, 0, 36);
+        for (int i = 0; i < mX.length; i++) {
+            double angle = Math.PI * 2 * i / mX.length;
+            mX[i] = 144 * (i & 1) + Math.cos(angle) * distance * mR;
+            mY[i] = 144 * ((i >> 1) & 1) + Math.sin(angle) * distance * mR;
+        }
+    }
+
+    /**
+     * Tests a horizontal wall.
+     *
+     * @return True if collision occurred.
+     */
+    @Benchmark
+    public boolean horizontalWall() {
+        int i = mI++ & (mX.length - 1);
+        return mHorizontalWall.collision(mX[i], mY[i], mR, 1, 1);
+    }
+
+    /**
+     * Tests a vertical wall.
+     *
+     * @return True if collision occurred.
+     */
+    @Benchmark
+    public boolean verticalWall() {
+        int i = mI++ & (mX.length - 1);
+        return mVerticalWall.collision(mX[i], mY[i], mR, 1, 1);
+    }
+
+    /**
+     * Tests a diagonal wall.
+     *
+     * @return True if collision occurred.
+     */
+    @Benchmark
+    public boolean diagonalWall() {
+        int i = mI++ & (mX.length - 1);
+        return mDiagonalWall.collision(mX[i], mY[i], mR, 1, 1);
+    }
+
+    /**
+     * Tests a circle.
+     *
+     * @return True if collision occurred.
+     */
+    @Benchmark
+    public boolean circle() {
+        int i = mI++ & (mX.length - 1);
+        return mHole.collision(mX[i], mY[i], mR, 1, 1);
+    }
+
+    /**
+     * Finds the contact with a horizontal wall.
+     *
+     * @return True if the marble overlaps the wall.
+     */
+    @Benchmark
+    public boolean horizontalWallContact() {
+        int i = mI++ & (mX.length - 1);
+        mContacts.clear();
+        return mHorizontalWall.contact(mX[i], mY[i], mR, 0, mContacts);
+    }
+
+    /**
+     * Finds the contact with a circle.
+     *
+     * @return True if the marble overlaps the circle.
+     */
+    @Benchmark
+    public boolean circleContact() {
+        int i = mI++ & (mX.length - 1);
+        mContacts.clear();
+        return mHole.contact(mX[i], mY[i], mR, 0, mContacts);
+    }
+}
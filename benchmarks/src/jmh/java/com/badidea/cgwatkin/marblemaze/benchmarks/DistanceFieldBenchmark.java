@@ -0,0 +1,92 @@
+package com.badidea.cgwatkin.marblemaze.benchmarks;
+
+import com.badidea.cgwatkin.marblemaze.engine.HitType;
+import com.badidea.cgwatkin.marblemaze.engine.Marble;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Distance Field Benchmark class
+ *
+ * Measures one physics tick, as MarbleMoveBenchmark does, with walls collided one by one or through a float or
+ * quantised short distance field. The field's memory footprint is printed when each world is built.
+ */
+@State(Scope.Thread)
+public class DistanceFieldBenchmark {
+
+    /**
+     * Length of a tick in seconds.
+     */
+    private static final double TICK = 1.0 / 60;
+
+    /**
+     * Distance between field samples, half the benchmark wall width.
+     */
+    private static final int SPACING = 4;
+
+    /**
+     * World to move through.
+     */
+    @Param({"world1", "world5", "maze50", "synthetic1000", "synthetic10000"})
+    public String world;
+
+    /**
+     * Wall collision backend: "objects", "float" or "short".
+     */
+    @Param({"objects", "float", "short"})
+    public String backend;
+
+    /**
+     * The world being benchmarked.
+     */
+    private BenchmarkWorld mWorld;
+
+    /**
+     * The marble being moved.
+     */
+    private Marble mMarble;
+
+    /**
+     * Ticks run since the marble was created.
+     */
+    private int mTick;
+
+    /**
+     * Builds the world and its distance field.
+     */
+    @Setup(Level.Trial)
+    public void createWorld() {
+        mWorld = BenchmarkWorld.create(world);
+        if (!backend.equals("objects")) {
+            mWorld.world.useDistanceField(SPACING, backend.equals("short"));
+        }
+        System.out.println(world + " " + backend + ": " + mWorld.world.getDistanceFieldBytes() + " bytes");
+    }
+
+    /**
+     * Puts a fresh marble at the start, so every iteration replays the same path.
+     */
+    @Setup(Level.Iteration)
+    public void createMarble() {
+        mMarble = mWorld.newMarble();
+        mTick = 0;
+    }
+
+    /**
+     * Runs one tick.
+     *
+     * @return Type of hit.
+     */
+    @Benchmark
+    public HitType move() {
+        double t = mTick++ * TICK;
+        double gX = 9.8 * Math.sin(t * 0.7);
+        double gY = 9.8 * Math.cos(t * 0.3);
+        return mMarble.move(TICK, gX, gY, mWorld.width, mWorld.height, mWorld.world);
+    }
+}
@@ -0,0 +1,80 @@
+package com.badidea.cgwatkin.marblemaze.benchmarks;
+
+import com.badidea.cgwatkin.marblemaze.engine.HitType;
+import com.badidea.cgwatkin.marblemaze.engine.Marble;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Marble Move Benchmark class
+ *
+ * Measures one physics tick, moving any obstacles then Marble.move at 60 ticks per second, with gravity swinging
+ * around so the marble keeps travelling and hitting things.
+ */
+@State(Scope.Thread)
+public class MarbleMoveBenchmark {
+
+    /**
+     * Length of a tick in seconds.
+     */
+    private static final double TICK = 1.0 / 60;
+
+    /**
+     * World to move through.
+     */
+    @Param({"world1", "world2", "world3", "world4", "world5", "maze50", "maze500",
+            "synthetic100", "synthetic1000", "synthetic10000", "synthetic100000",
+            "moving100", "moving1000", "moving10000"})
+    public String world;
+
+    /**
+     * The world being benchmarked.
+     */
+    private BenchmarkWorld mWorld;
+
+    /**
+     * The marble being moved.
+     */
+    private Marble mMarble;
+
+    /**
+     * Ticks run since the marble was created.
+     */
+    private int mTick;
+
+    /**
+     * Builds the world.
+     */
+    @Setup(Level.Trial)
+    public void createWorld() {
+        mWorld = BenchmarkWorld.create(world);
+    }
+
+    /**
+     * Puts a fresh marble at the start, so every iteration replays the same path.
+     */
+    @Setup(Level.Iteration)
+    public void createMarble() {
+        mMarble = mWorld.newMarble();
+        mTick = 0;
+    }
+
+    /**
+     * Runs one tick.
+     *
+     * @return Type of hit.
+     */
+    @Benchmark
+    public HitType move() {
+        double t = mTick++ * TICK;
+        double gX = 9.8 * Math.sin(t * 0.7);
+        double gY = 9.8 * Math.cos(t * 0.3);
+        mWorld.world.advance(TICK);
+        return mMarble.move(TICK, gX, gY, mWorld.width, mWorld.height, mWorld.world);
+    }
+}
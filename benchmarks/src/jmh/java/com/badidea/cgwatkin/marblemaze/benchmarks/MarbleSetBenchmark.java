@@ -0,0 +1,78 @@
+package com.badidea.cgwatkin.marblemaze.benchmarks;
+
+import com.badidea.cgwatkin.marblemaze.engine.HitType;
+import com.badidea.cgwatkin.marblemaze.engine.MarbleSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Marble Set Benchmark class
+ *
+ * Measures one physics tick of many marbles in a generated maze, moving through the world and colliding with each
+ * other, with gravity swinging around as in MarbleMoveBenchmark.
+ */
+@State(Scope.Thread)
+public class MarbleSetBenchmark {
+
+    /**
+     * Length of a tick in seconds.
+     */
+    private static final double TICK = 1.0 / 60;
+
+    /**
+     * Number of marbles.
+     */
+    @Param({"10", "100", "1000", "5000"})
+    public int marbles;
+
+    /**
+     * The world being benchmarked.
+     */
+    private BenchmarkWorld mWorld;
+
+    /**
+     * The marbles being moved.
+     */
+    private MarbleSet mMarbles;
+
+    /**
+     * Ticks run since the marbles were created.
+     */
+    private int mTick;
+
+    /**
+     * Builds a maze with room for every marble. It has no holes, and every marble must reach the goal, so the run
+     * never ends early.
+     */
+    @Setup(Level.Trial)
+    public void createWorld() {
+        mWorld = BenchmarkWorld.maze(Math.max(6, (int) Math.ceil(Math.sqrt(marbles))), 0, 42);
+    }
+
+    /**
+     * Puts fresh marbles around the start, so every iteration replays the same paths.
+     */
+    @Setup(Level.Iteration)
+    public void createMarbles() {
+        mMarbles = new MarbleSet(mWorld.newMarbles(marbles), 0);
+        mTick = 0;
+    }
+
+    /**
+     * Runs one tick.
+     *
+     * @return Type of hit.
+     */
+    @Benchmark
+    public HitType move() {
+        double t = mTick++ * TICK;
+        double gX = 9.8 * Math.sin(t * 0.7);
+        double gY = 9.8 * Math.cos(t * 0.3);
+        return mMarbles.move(TICK, gX, gY, mWorld.width, mWorld.height, mWorld.world);
+    }
+}
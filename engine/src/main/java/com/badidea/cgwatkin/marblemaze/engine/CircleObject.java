@@ -0,0 +1,196 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+/**
+ * Circle Object abstract class
+ *
+ * For extending from to create circular world objects.
+ *
+ * Implements World Object interface.
+ */
+public abstract class CircleObject implements WorldObject {
+
+    /**
+     * The object's position.
+     */
+    private int mX, mY, mR;
+
+    /**
+     * CircleObject constructor
+     *
+     * @param x Position of centre in x plane (top left if object.
+     * @param y Position of centre in y plane.
+     * @param r Radius.
+     */
+    CircleObject(int x, int y, int r) {
+        mX = x;
+        mY = y;
+        mR = r;
+    }
+
+    /**
+     * Tests if the marble collides with this object.
+     *
+     * @param x Marble's centre's x coordinate.
+     * @param y Marble's centre's y coordinate.
+     * @param r Marble's radius.
+     * @param vX Marble's velocity in x plane.
+     * @param vY Marble's velocity in y plane.
+     * @return true if collision occurred.
+     */
+    @Override
+    public boolean collision(double x, double y, double r, double vX, double vY) {
+        return collision(mX, mY, mR, x, y, r);
+    }
+
+    /**
+     * Tests if the marble collides with a circle.
+     *
+     * @param cX Circle's centre's x coordinate.
+     * @param cY Circle's centre's y coordinate.
+     * @param cR Circle's radius.
+     * @param x Marble's centre's x coordinate.
+     * @param y Marble's centre's y coordinate.
+     * @param r Marble's radius.
+     * @return true if collision occurred.
+     */
+    static boolean collision(int cX, int cY, int cR, double x, double y, double r) {
+        return ((cX - x) * (cX - x) + (cY - y) * (cY - y)) < ((cR + r) * (cR + r));
+    }
+
+    /**
+     * Tests if the marble overlaps this object, and if so adds the contact to a buffer.
+     *
+     * @param x Marble's centre's x coordinate.
+     * @param y Marble's centre's y coordinate.
+     * @param r Marble's radius.
+     * @param id This object's id, recorded with the contact.
+     * @param contacts The buffer to add the contact to.
+     * @return True if the marble overlaps this object.
+     */
+    @Override
+    public boolean contact(double x, double y, double r, int id, Contacts contacts) {
+        return contact(mX, mY, mR, x, y, r, id, contacts);
+    }
+
+    /**
+     * Tests if the marble overlaps a circle, and if so adds the contact to a buffer.
+     * A marble exactly on the centre is pushed up.
+     *
+     * @param cX Circle's centre's x coordinate.
+     * @param cY Circle's centre's y coordinate.
+     * @param cR Circle's radius.
+     * @param x Marble's centre's x coordinate.
+     * @param y Marble's centre's y coordinate.
+     * @param r Marble's radius.
+     * @param id The circle's id, recorded with the contact.
+     * @param contacts The buffer to add the contact to.
+     * @return True if the marble overlaps the circle.
+     */
+    static boolean contact(int cX, int cY, int cR, double x, double y, double r, int id, Contacts contacts) {
+        double dX = x - cX, dY = y - cY;
+        double reach = cR + r;
+        double distanceSquared = dX * dX + dY * dY;
+        if (distanceSquared >= reach * reach) {
+            return false;
+        }
+        double distance = Math.sqrt(distanceSquared);
+        if (distance > 0) {
+            contacts.add(id, dX / distance, dY / distance, reach - distance);
+        }
+        else {
+            contacts.add(id, 0, -1, reach);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the centre's x coordinate.
+     *
+     * @return Centre x coordinate.
+     */
+    public int getX() {
+        return mX;
+    }
+
+    /**
+     * Returns the centre's y coordinate.
+     *
+     * @return Centre y coordinate.
+     */
+    public int getY() {
+        return mY;
+    }
+
+    /**
+     * Returns the radius.
+     *
+     * @return Radius.
+     */
+    public int getR() {
+        return mR;
+    }
+
+    /**
+     * Returns the left edge of the object's bounding box.
+     *
+     * @return Left edge.
+     */
+    @Override
+    public int getLeft() {
+        return mX - mR;
+    }
+
+    /**
+     * Returns the top edge of the object's bounding box.
+     *
+     * @return Top edge.
+     */
+    @Override
+    public int getTop() {
+        return mY - mR;
+    }
+
+    /**
+     * Returns the right edge of the object's bounding box.
+     *
+     * @return Right edge.
+     */
+    @Override
+    public int getRight() {
+        return mX + mR;
+    }
+
+    /**
+     * Returns the bottom edge of the object's bounding box.
+     *
+     * @return Bottom edge.
+     */
+    @Override
+    public int getBottom() {
+        return mY + mR;
+    }
+
+    /**
+     * Returns true if object is goal.
+     *
+     * @return true if object is goal.
+     */
+    @Override
+    abstract public boolean isGoal();
+
+    /**
+     * Returns true if object is hole.
+     *
+     * @return true if object is hole.
+     */
+    @Override
+    abstract public boolean isHole();
+
+    /**
+     * Returns true if object is wall.
+     *
+     * @return true if object is wall.
+     */
+    @Override
+    abstract public boolean isWall();
+}
@@ -0,0 +1,220 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import java.util.Arrays;
+
+/**
+ * Contact Cache class
+ *
+ * Per-marble memory of what the marble was near and what it touched, which changes little from tick to tick:
+ *
+ * - The broadphase results for the cells the marble's movement last touched. While the movement stays in the same
+ *   cells, as it does resting or rolling slowly, the results are reused instead of gathered and sorted again.
+ * - The last few objects the marble hit. These are tested first, so a close hit bounds the rest of the search, and
+ *   one the marble is already touching leaves only objects with lower ids to test, as they would win the tie.
+ *
+ * Counters record how often each part of the cache is used, to judge it on real play.
+ */
+public class ContactCache {
+
+    /**
+     * Number of recently hit objects remembered.
+     */
+    private static final int RECENT = 4;
+
+    /**
+     * False to gather fresh results for every query and remember no hits.
+     */
+    private boolean mEnabled = true;
+
+    /**
+     * World the cached results belong to.
+     */
+    private World mWorld;
+
+    /**
+     * Key of the cells the cached results were gathered from, or -1 if none.
+     */
+    private long mCells = -1;
+
+    /**
+     * Cached broadphase results, in id order.
+     */
+    private int[] mIds = new int[16];
+
+    /**
+     * Number of cached results.
+     */
+    private int mCount;
+
+    /**
+     * Recently hit object ids, as a ring.
+     */
+    private final int[] mRecent = new int[RECENT];
+
+    /**
+     * Number of recent ids held, and where the next one goes.
+     */
+    private int mRecentCount, mRecentNext;
+
+    /**
+     * Broadphase lookups and how many were served from the cache.
+     */
+    private long mCellLookups, mCellHits;
+
+    /**
+     * Hits found and how many were on a recently hit object.
+     */
+    private long mContactLookups, mContactHits;
+
+    /**
+     * Collects the ids of objects near a box, reusing the last results if the box touches the same cells.
+     *
+     * @param world The world.
+     * @param left Left edge of the box.
+     * @param top Top edge of the box.
+     * @param right Right edge of the box.
+     * @param bottom Bottom edge of the box.
+     * @return Number of objects found.
+     */
+    int query(World world, double left, double top, double right, double bottom) {
+        mCellLookups++;
+        long cells = world.cellRange(left, top, right, bottom);
+        if (mEnabled && world == mWorld && cells == mCells && cells != -1) {
+            mCellHits++;
+            return mCount;
+        }
+        if (world != mWorld) {
+            mWorld = world;
+            mRecentCount = 0;
+            mRecentNext = 0;
+        }
+        mCount = world.query(left, top, right, bottom);
+        if (mCount > mIds.length) {
+            mIds = Arrays.copyOf(mIds, Math.max(mCount, mIds.length * 2));
+        }
+        for (int i = 0; i < mCount; i++) {
+            mIds[i] = world.result(i);
+        }
+        mCells = cells;
+        return mCount;
+    }
+
+    /**
+     * Returns an object id from the last query.
+     *
+     * @param i Position in the query results.
+     * @return Object id.
+     */
+    int result(int i) {
+        return mIds[i];
+    }
+
+    /**
+     * Returns the number of recently hit objects held.
+     *
+     * @return Recent object count.
+     */
+    int getRecentCount() {
+        return mRecentCount;
+    }
+
+    /**
+     * Returns a recently hit object.
+     *
+     * @param i Position in the recent objects.
+     * @return Object id.
+     */
+    int getRecent(int i) {
+        return mRecent[i];
+    }
+
+    /**
+     * Tests if an object is one of the recently hit objects.
+     *
+     * @param id Object id.
+     * @return True if it was hit recently.
+     */
+    boolean isRecent(int id) {
+        for (int i = 0; i < mRecentCount; i++) {
+            if (mRecent[i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remembers that the marble hit an object, replacing the oldest remembered object if full.
+     *
+     * @param id Object id.
+     */
+    void touched(int id) {
+        if (!mEnabled || isRecent(id)) {
+            return;
+        }
+        mRecent[mRecentNext] = id;
+        mRecentNext = (mRecentNext + 1) % RECENT;
+        mRecentCount = Math.min(mRecentCount + 1, RECENT);
+    }
+
+    /**
+     * Turns the cache on or off, forgetting everything held. While off, every query gathers fresh results and no
+     * hits are remembered, so moves sweep just as they would without a cache.
+     *
+     * @param enabled False to turn the cache off.
+     */
+    void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+        mCells = -1;
+        mRecentCount = 0;
+        mRecentNext = 0;
+    }
+
+    /**
+     * Counts a hit found by a move.
+     *
+     * @param recent True if the object hit was one of the recently hit objects.
+     */
+    void countHit(boolean recent) {
+        mContactLookups++;
+        if (recent) {
+            mContactHits++;
+        }
+    }
+
+    /**
+     * Returns the number of broadphase lookups.
+     *
+     * @return Lookup count.
+     */
+    public long getCellLookups() {
+        return mCellLookups;
+    }
+
+    /**
+     * Returns the number of broadphase lookups served from the cache.
+     *
+     * @return Hit count.
+     */
+    public long getCellHits() {
+        return mCellHits;
+    }
+
+    /**
+     * Returns the number of hits found.
+     *
+     * @return Hit count.
+     */
+    public long getContactLookups() {
+        return mContactLookups;
+    }
+
+    /**
+     * Returns the number of hits that were on a recently hit object.
+     *
+     * @return Cached hit count.
+     */
+    public long getContactHits() {
+        return mContactHits;
+    }
+}
@@ -0,0 +1,115 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+/**
+ * Contacts class
+ *
+ * Caller-owned buffer of contacts found by the narrowphase tests: for each object the marble overlaps, its id, the
+ * contact normal pointing from the object to the marble, and how far the marble must move along that normal to
+ * stop overlapping.
+ * The buffer is filled in place, so it can be reused every tick without allocating. Contacts past its capacity are
+ * dropped.
+ */
+public class Contacts {
+
+    /**
+     * Object id of each contact.
+     */
+    private final int[] mId;
+
+    /**
+     * Contact normal and penetration depth of each contact.
+     */
+    private final double[] mNormalX, mNormalY, mDepth;
+
+    /**
+     * Number of contacts held.
+     */
+    private int mCount;
+
+    /**
+     * Constructor
+     *
+     * @param capacity Most contacts held at once.
+     */
+    public Contacts(int capacity) {
+        mId = new int[capacity];
+        mNormalX = new double[capacity];
+        mNormalY = new double[capacity];
+        mDepth = new double[capacity];
+    }
+
+    /**
+     * Empties the buffer.
+     */
+    public void clear() {
+        mCount = 0;
+    }
+
+    /**
+     * Adds a contact, unless the buffer is full.
+     *
+     * @param id Object id.
+     * @param nX Normal x component, pointing towards the marble.
+     * @param nY Normal y component, pointing towards the marble.
+     * @param depth Penetration depth.
+     */
+    public void add(int id, double nX, double nY, double depth) {
+        if (mCount == mId.length) {
+            return;
+        }
+        mId[mCount] = id;
+        mNormalX[mCount] = nX;
+        mNormalY[mCount] = nY;
+        mDepth[mCount] = depth;
+        mCount++;
+    }
+
+    /**
+     * Returns the number of contacts held.
+     *
+     * @return Contact count.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the object id of a contact.
+     *
+     * @param i Contact index.
+     * @return Object id.
+     */
+    public int getId(int i) {
+        return mId[i];
+    }
+
+    /**
+     * Returns the x component of a contact's normal.
+     *
+     * @param i Contact index.
+     * @return Normal x component.
+     */
+    public double getNormalX(int i) {
+        return mNormalX[i];
+    }
+
+    /**
+     * Returns the y component of a contact's normal.
+     *
+     * @param i Contact index.
+     * @return Normal y component.
+     */
+    public double getNormalY(int i) {
+        return mNormalY[i];
+    }
+
+    /**
+     * Returns the penetration depth of a contact.
+     *
+     * @param i Contact index.
+     * @return Depth.
+     */
+    public double getDepth(int i) {
+        return mDepth[i];
+    }
+}
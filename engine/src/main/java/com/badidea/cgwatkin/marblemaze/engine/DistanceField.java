@@ -0,0 +1,245 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import java.util.Arrays;
+
+/**
+ * Distance Field class
+ *
+ * Signed distance from every point in the world to the nearest wall surface, sampled on a fine grid when the world
+ * is built. Distance is negative inside a wall and capped at a band width far from any wall.
+ * A lookup is one bilinear interpolation of four samples, which also gives the surface normal as the gradient, so
+ * collision against walls costs the same however many walls the world has.
+ *
+ * Samples are kept as floats, or quantised to shorts at half the memory.
+ */
+class DistanceField {
+
+    /**
+     * Gap from a wall, in pixels, at which the marble counts as touching it.
+     */
+    private static final double TOUCHING = 0.25;
+
+    /**
+     * Distance, in pixels, stepped past a wall the marble is touching but leaving. Any longer and a step along one
+     * wall could sink into the next at a corner.
+     */
+    private static final double LEAVING_STEP = 1;
+
+    /**
+     * Most lookups one sweep may make; a sweep that runs out stops where it got to, without a contact.
+     */
+    private static final int MAX_STEPS = 64;
+
+    /**
+     * Distance between samples in pixels.
+     */
+    private final int mSpacing;
+
+    /**
+     * Number of samples along each axis.
+     */
+    private final int mColumns, mRows;
+
+    /**
+     * Samples, row by row; one of these is null.
+     */
+    private final float[] mFloats;
+    private final short[] mShorts;
+
+    /**
+     * Pixels per quantisation step, for short samples.
+     */
+    private final float mStep;
+
+    /**
+     * Contact normal of the last lookup, pointing away from the nearest wall.
+     */
+    private double mNormalX, mNormalY;
+
+    /**
+     * Constructor
+     *
+     * Samples the distance around each wall only as far as the band reaches, so building is proportional to the
+     * number of walls rather than to walls times samples.
+     *
+     * @param world The world, whose walls are sampled.
+     * @param width Width of the area covered.
+     * @param height Height of the area covered.
+     * @param spacing Distance between samples.
+     * @param band Largest distance stored.
+     * @param quantised True to store samples as shorts rather than floats.
+     */
+    DistanceField(World world, int width, int height, int spacing, int band, boolean quantised) {
+        mSpacing = Math.max(1, spacing);
+        mColumns = Math.max(2, width / mSpacing + 2);
+        mRows = Math.max(2, height / mSpacing + 2);
+        float[] field = new float[mColumns * mRows];
+        Arrays.fill(field, band);
+        for (int i = 0; i < world.getWallCount(); i++) {
+            sampleWall(field, world.getWallX1(i), world.getWallY1(i), world.getWallX2(i), world.getWallY2(i),
+                    world.getWallW(i) / 2.0, band);
+        }
+        if (quantised) {
+            mStep = (float) band / Short.MAX_VALUE;
+            mShorts = new short[field.length];
+            for (int i = 0; i < field.length; i++) {
+                mShorts[i] = (short) Math.round(field[i] / mStep);
+            }
+            mFloats = null;
+        }
+        else {
+            mStep = 1;
+            mFloats = field;
+            mShorts = null;
+        }
+    }
+
+    /**
+     * Lowers the samples around one wall to their distance from it, where that is nearer.
+     *
+     * @param field The samples.
+     * @param x1 Point 1 x coordinate.
+     * @param y1 Point 1 y coordinate.
+     * @param x2 Point 2 x coordinate.
+     * @param y2 Point 2 y coordinate.
+     * @param halfWidth Half the wall's width.
+     * @param band Largest distance stored.
+     */
+    private void sampleWall(float[] field, int x1, int y1, int x2, int y2, double halfWidth, int band) {
+        double reach = halfWidth + band;
+        int c1 = clamp((int) Math.floor((Math.min(x1, x2) - reach) / mSpacing), mColumns);
+        int c2 = clamp((int) Math.ceil((Math.max(x1, x2) + reach) / mSpacing), mColumns);
+        int r1 = clamp((int) Math.floor((Math.min(y1, y2) - reach) / mSpacing), mRows);
+        int r2 = clamp((int) Math.ceil((Math.max(y1, y2) + reach) / mSpacing), mRows);
+        double sX = x2 - x1, sY = y2 - y1;
+        double lengthSquared = sX * sX + sY * sY;
+        for (int r = r1; r <= r2; r++) {
+            double y = r * mSpacing;
+            for (int c = c1; c <= c2; c++) {
+                double x = c * mSpacing;
+                double along = lengthSquared > 0 ? ((x - x1) * sX + (y - y1) * sY) / lengthSquared : 0;
+                along = Math.max(0, Math.min(1, along));
+                double dX = x - (x1 + sX * along), dY = y - (y1 + sY * along);
+                float distance = (float) (Math.sqrt(dX * dX + dY * dY) - halfWidth);
+                int i = r * mColumns + c;
+                if (distance < field[i]) {
+                    field[i] = distance;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the memory used by the samples.
+     *
+     * @return Size in bytes.
+     */
+    int getBytes() {
+        return mColumns * mRows * (mShorts != null ? 2 : 4);
+    }
+
+    /**
+     * Returns the sample at a grid position.
+     *
+     * @param i Sample index.
+     * @return Distance in pixels.
+     */
+    private double sample(int i) {
+        return mShorts != null ? mShorts[i] * mStep : mFloats[i];
+    }
+
+    /**
+     * Looks up the distance from a point to the nearest wall surface, and keeps the normal there.
+     *
+     * @param x X coordinate.
+     * @param y Y coordinate.
+     * @return Signed distance in pixels, negative inside a wall.
+     */
+    double distance(double x, double y) {
+        double fX = Math.max(0, Math.min(mColumns - 1.001, x / mSpacing));
+        double fY = Math.max(0, Math.min(mRows - 1.001, y / mSpacing));
+        int c = (int) fX, r = (int) fY;
+        double tX = fX - c, tY = fY - r;
+        int i = r * mColumns + c;
+        double d00 = sample(i), d10 = sample(i + 1);
+        double d01 = sample(i + mColumns), d11 = sample(i + mColumns + 1);
+        double top = d00 + (d10 - d00) * tX, bottom = d01 + (d11 - d01) * tX;
+        double gX = (d10 - d00) * (1 - tY) + (d11 - d01) * tY;
+        double gY = bottom - top;
+        double g = Math.sqrt(gX * gX + gY * gY);
+        if (g > 0) {
+            mNormalX = gX / g;
+            mNormalY = gY / g;
+        }
+        return top + (bottom - top) * tY;
+    }
+
+    /**
+     * Finds when a moving circle first touches a wall, by stepping along its movement as far as the distance field
+     * says is clear each time.
+     *
+     * A circle already touching hits at once if it is moving into the wall, and is stepped on a pixel at a time
+     * otherwise, so a marble resting against a wall can always leave it.
+     * A sweep that runs out of lookups short of a wall, such as one grazing along it, returns how far it got with a
+     * zero normal, for the caller to move there without bouncing and sweep on.
+     *
+     * @param x Start x coordinate.
+     * @param y Start y coordinate.
+     * @param radius Circle radius.
+     * @param dX Movement in x plane.
+     * @param dY Movement in y plane.
+     * @return Fraction of the movement before the hit, from 0 to 1, or SweptCircle.NO_HIT.
+     */
+    double sweep(double x, double y, double radius, double dX, double dY) {
+        double length = Math.sqrt(dX * dX + dY * dY);
+        double t = 0;
+        for (int step = 0; step < MAX_STEPS; step++) {
+            double gap = distance(x + dX * t, y + dY * t) - radius;
+            if (gap < TOUCHING) {
+                if (dX * mNormalX + dY * mNormalY < 0) {
+                    return t;
+                }
+                gap = LEAVING_STEP;
+            }
+            if (length == 0) {
+                return SweptCircle.NO_HIT;
+            }
+            t += gap / length;
+            if (t >= 1) {
+                return SweptCircle.NO_HIT;
+            }
+        }
+        mNormalX = 0;
+        mNormalY = 0;
+        return t;
+    }
+
+    /**
+     * Returns the x component of the last lookup's normal.
+     *
+     * @return Normal x component.
+     */
+    double getNormalX() {
+        return mNormalX;
+    }
+
+    /**
+     * Returns the y component of the last lookup's normal.
+     *
+     * @return Normal y component.
+     */
+    double getNormalY() {
+        return mNormalY;
+    }
+
+    /**
+     * Clamps a sample index to the range 0 to count - 1.
+     *
+     * @param i The sample index.
+     * @param count Number of samples.
+     * @return The clamped index.
+     */
+    private static int clamp(int i, int count) {
+        return i < 0 ? 0 : (i >= count ? count - 1 : i);
+    }
+}
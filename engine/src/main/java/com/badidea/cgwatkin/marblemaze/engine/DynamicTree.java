@@ -0,0 +1,455 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import java.util.Arrays;
+
+/**
+ * Dynamic Tree class
+ *
+ * Bounding volume hierarchy for objects that move, kept balanced by tree rotations as leaves are inserted and
+ * removed.
+ * Each leaf stores a fat box, its object's box grown by a margin, so small movements leave the tree untouched and
+ * only objects that leave their fat box are re-inserted. Nodes are kept in parallel arrays, like World.
+ */
+class DynamicTree {
+
+    /**
+     * Null node index.
+     */
+    private static final int NULL = -1;
+
+    /**
+     * Bounding box of each node.
+     */
+    private double[] mLeft = new double[0], mTop = new double[0], mRight = new double[0], mBottom = new double[0];
+
+    /**
+     * Parent of each node, or next free node for nodes on the free list.
+     */
+    private int[] mParent = new int[0];
+
+    /**
+     * Children of each internal node, NULL for leaves.
+     */
+    private int[] mChild1 = new int[0], mChild2 = new int[0];
+
+    /**
+     * Height of each node, 0 for leaves and -1 for free nodes.
+     */
+    private int[] mHeight = new int[0];
+
+    /**
+     * Item stored in each leaf.
+     */
+    private int[] mItem = new int[0];
+
+    /**
+     * Root node, first free node and number of nodes allocated.
+     */
+    private int mRoot = NULL, mFree = NULL, mCapacity;
+
+    /**
+     * Distance leaf boxes are grown by.
+     */
+    private final double mMargin;
+
+    /**
+     * Query traversal stack.
+     */
+    private int[] mStack = new int[64];
+
+    /**
+     * Items found by the last query.
+     */
+    private int[] mResults = new int[16];
+
+    /**
+     * Number of items found by the last query.
+     */
+    private int mResultCount;
+
+    /**
+     * Constructor
+     *
+     * @param margin Distance leaf boxes are grown by.
+     */
+    DynamicTree(double margin) {
+        mMargin = margin;
+        grow(16);
+    }
+
+    /**
+     * Inserts an item.
+     *
+     * @param item The item.
+     * @param left Left edge of the item's box.
+     * @param top Top edge of the item's box.
+     * @param right Right edge of the item's box.
+     * @param bottom Bottom edge of the item's box.
+     * @return Leaf node holding the item, used to move or remove it.
+     */
+    int insert(int item, double left, double top, double right, double bottom) {
+        int leaf = allocate();
+        setBox(leaf, left - mMargin, top - mMargin, right + mMargin, bottom + mMargin);
+        mItem[leaf] = item;
+        mHeight[leaf] = 0;
+        insertLeaf(leaf);
+        return leaf;
+    }
+
+    /**
+     * Removes an item.
+     *
+     * @param leaf Leaf node holding the item.
+     */
+    void remove(int leaf) {
+        removeLeaf(leaf);
+        release(leaf);
+    }
+
+    /**
+     * Updates an item's box, re-inserting it only if the box has left the leaf's fat box.
+     *
+     * @param leaf Leaf node holding the item.
+     * @param left Left edge of the item's box.
+     * @param top Top edge of the item's box.
+     * @param right Right edge of the item's box.
+     * @param bottom Bottom edge of the item's box.
+     * @return True if the item was re-inserted.
+     */
+    boolean move(int leaf, double left, double top, double right, double bottom) {
+        if (mLeft[leaf] <= left && mTop[leaf] <= top && mRight[leaf] >= right && mBottom[leaf] >= bottom) {
+            return false;
+        }
+        removeLeaf(leaf);
+        setBox(leaf, left - mMargin, top - mMargin, right + mMargin, bottom + mMargin);
+        insertLeaf(leaf);
+        return true;
+    }
+
+    /**
+     * Collects the items whose fat boxes overlap a box.
+     *
+     * @param left Left edge of the box.
+     * @param top Top edge of the box.
+     * @param right Right edge of the box.
+     * @param bottom Bottom edge of the box.
+     * @return Number of items found.
+     */
+    int query(double left, double top, double right, double bottom) {
+        mResultCount = 0;
+        if (mRoot == NULL) {
+            return 0;
+        }
+        int depth = 0;
+        mStack[depth++] = mRoot;
+        while (depth > 0) {
+            int node = mStack[--depth];
+            if (mLeft[node] > right || mRight[node] < left || mTop[node] > bottom || mBottom[node] < top) {
+                continue;
+            }
+            if (mChild1[node] == NULL) {
+                if (mResultCount == mResults.length) {
+                    mResults = Arrays.copyOf(mResults, mResults.length * 2);
+                }
+                mResults[mResultCount++] = mItem[node];
+            }
+            else {
+                if (depth + 2 > mStack.length) {
+                    mStack = Arrays.copyOf(mStack, mStack.length * 2);
+                }
+                mStack[depth++] = mChild1[node];
+                mStack[depth++] = mChild2[node];
+            }
+        }
+        return mResultCount;
+    }
+
+    /**
+     * Returns an item from the last query.
+     *
+     * @param i Position in the query results.
+     * @return The item.
+     */
+    int result(int i) {
+        return mResults[i];
+    }
+
+    /**
+     * Returns the height of the tree.
+     *
+     * @return Height, 0 for a single leaf or an empty tree.
+     */
+    int getHeight() {
+        return mRoot == NULL ? 0 : mHeight[mRoot];
+    }
+
+    /**
+     * Places a leaf next to the sibling that grows the tree's total perimeter least, then refits and rebalances
+     * its ancestors.
+     *
+     * @param leaf The leaf.
+     */
+    private void insertLeaf(int leaf) {
+        if (mRoot == NULL) {
+            mRoot = leaf;
+            mParent[leaf] = NULL;
+            return;
+        }
+        int index = mRoot;
+        while (mChild1[index] != NULL) {
+            int child1 = mChild1[index], child2 = mChild2[index];
+            double perimeter = perimeter(index);
+            double combined = unionPerimeter(index, leaf);
+            // Cost of pairing the leaf with this node, and the cost pushed down to either child
+            double cost = 2 * combined;
+            double inheritance = 2 * (combined - perimeter);
+            double cost1 = descendCost(child1, leaf) + inheritance;
+            double cost2 = descendCost(child2, leaf) + inheritance;
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? child1 : child2;
+        }
+
+        int sibling = index;
+        int oldParent = mParent[sibling];
+        int newParent = allocate();
+        mParent[newParent] = oldParent;
+        mItem[newParent] = NULL;
+        mHeight[newParent] = mHeight[sibling] + 1;
+        mChild1[newParent] = sibling;
+        mChild2[newParent] = leaf;
+        mParent[sibling] = newParent;
+        mParent[leaf] = newParent;
+        if (oldParent == NULL) {
+            mRoot = newParent;
+        }
+        else if (mChild1[oldParent] == sibling) {
+            mChild1[oldParent] = newParent;
+        }
+        else {
+            mChild2[oldParent] = newParent;
+        }
+        refit(mParent[leaf]);
+    }
+
+    /**
+     * Detaches a leaf, replacing its parent with its sibling, then refits and rebalances the ancestors.
+     *
+     * @param leaf The leaf.
+     */
+    private void removeLeaf(int leaf) {
+        if (leaf == mRoot) {
+            mRoot = NULL;
+            return;
+        }
+        int parent = mParent[leaf];
+        int grandParent = mParent[parent];
+        int sibling = mChild1[parent] == leaf ? mChild2[parent] : mChild1[parent];
+        if (grandParent == NULL) {
+            mRoot = sibling;
+            mParent[sibling] = NULL;
+            release(parent);
+            return;
+        }
+        if (mChild1[grandParent] == parent) {
+            mChild1[grandParent] = sibling;
+        }
+        else {
+            mChild2[grandParent] = sibling;
+        }
+        mParent[sibling] = grandParent;
+        release(parent);
+        refit(grandParent);
+    }
+
+    /**
+     * Rebalances and recomputes the boxes and heights of a node and all its ancestors.
+     *
+     * @param index The first node.
+     */
+    private void refit(int index) {
+        while (index != NULL) {
+            index = balance(index);
+            int child1 = mChild1[index], child2 = mChild2[index];
+            mHeight[index] = 1 + Math.max(mHeight[child1], mHeight[child2]);
+            union(index, child1, child2);
+            index = mParent[index];
+        }
+    }
+
+    /**
+     * Rotates a node's taller child up if the node's subtrees differ in height by more than one.
+     *
+     * @param a The node.
+     * @return The node now at a's position in the tree.
+     */
+    private int balance(int a) {
+        if (mChild1[a] == NULL || mHeight[a] < 2) {
+            return a;
+        }
+        int b = mChild1[a], c = mChild2[a];
+        int difference = mHeight[c] - mHeight[b];
+        if (difference > 1) {
+            rotateUp(a, c, b, true);
+            return c;
+        }
+        if (difference < -1) {
+            rotateUp(a, b, c, false);
+            return b;
+        }
+        return a;
+    }
+
+    /**
+     * Makes a child the parent of its own parent, keeping the taller of its children and handing the shorter one
+     * to the old parent.
+     *
+     * @param a The parent.
+     * @param up The taller child, moving up.
+     * @param other The other child, staying under a.
+     * @param upIsChild2 True if up is a's second child.
+     */
+    private void rotateUp(int a, int up, int other, boolean upIsChild2) {
+        int f = mChild1[up], g = mChild2[up];
+        mChild1[up] = a;
+        mParent[up] = mParent[a];
+        mParent[a] = up;
+        int parent = mParent[up];
+        if (parent == NULL) {
+            mRoot = up;
+        }
+        else if (mChild1[parent] == a) {
+            mChild1[parent] = up;
+        }
+        else {
+            mChild2[parent] = up;
+        }
+        int keep = mHeight[f] > mHeight[g] ? f : g;
+        int give = keep == f ? g : f;
+        mChild2[up] = keep;
+        if (upIsChild2) {
+            mChild2[a] = give;
+        }
+        else {
+            mChild1[a] = give;
+        }
+        mParent[give] = a;
+        union(a, other, give);
+        union(up, a, keep);
+        mHeight[a] = 1 + Math.max(mHeight[other], mHeight[give]);
+        mHeight[up] = 1 + Math.max(mHeight[a], mHeight[keep]);
+    }
+
+    /**
+     * Returns the cost of descending into a child to place a leaf.
+     *
+     * @param child The child.
+     * @param leaf The leaf.
+     * @return Perimeter added by pairing the leaf with the child, or with a node below it.
+     */
+    private double descendCost(int child, int leaf) {
+        double combined = unionPerimeter(child, leaf);
+        return mChild1[child] == NULL ? combined : combined - perimeter(child);
+    }
+
+    /**
+     * Returns a node's box perimeter.
+     *
+     * @param node The node.
+     * @return Perimeter.
+     */
+    private double perimeter(int node) {
+        return 2 * (mRight[node] - mLeft[node] + mBottom[node] - mTop[node]);
+    }
+
+    /**
+     * Returns the perimeter of the box around two nodes.
+     *
+     * @param a First node.
+     * @param b Second node.
+     * @return Perimeter.
+     */
+    private double unionPerimeter(int a, int b) {
+        return 2 * (Math.max(mRight[a], mRight[b]) - Math.min(mLeft[a], mLeft[b])
+                + Math.max(mBottom[a], mBottom[b]) - Math.min(mTop[a], mTop[b]));
+    }
+
+    /**
+     * Sets a node's box to the box around two other nodes.
+     *
+     * @param node The node.
+     * @param a First node.
+     * @param b Second node.
+     */
+    private void union(int node, int a, int b) {
+        setBox(node, Math.min(mLeft[a], mLeft[b]), Math.min(mTop[a], mTop[b]),
+                Math.max(mRight[a], mRight[b]), Math.max(mBottom[a], mBottom[b]));
+    }
+
+    /**
+     * Sets a node's box.
+     *
+     * @param node The node.
+     * @param left Left edge.
+     * @param top Top edge.
+     * @param right Right edge.
+     * @param bottom Bottom edge.
+     */
+    private void setBox(int node, double left, double top, double right, double bottom) {
+        mLeft[node] = left;
+        mTop[node] = top;
+        mRight[node] = right;
+        mBottom[node] = bottom;
+    }
+
+    /**
+     * Takes a node from the free list, growing the arrays if it is empty.
+     *
+     * @return The node.
+     */
+    private int allocate() {
+        if (mFree == NULL) {
+            grow(mCapacity * 2);
+        }
+        int node = mFree;
+        mFree = mParent[node];
+        mParent[node] = NULL;
+        mChild1[node] = NULL;
+        mChild2[node] = NULL;
+        mHeight[node] = 0;
+        return node;
+    }
+
+    /**
+     * Returns a node to the free list.
+     *
+     * @param node The node.
+     */
+    private void release(int node) {
+        mParent[node] = mFree;
+        mHeight[node] = -1;
+        mFree = node;
+    }
+
+    /**
+     * Grows the node arrays, adding the new nodes to the free list.
+     *
+     * @param capacity New node count.
+     */
+    private void grow(int capacity) {
+        mLeft = Arrays.copyOf(mLeft, capacity);
+        mTop = Arrays.copyOf(mTop, capacity);
+        mRight = Arrays.copyOf(mRight, capacity);
+        mBottom = Arrays.copyOf(mBottom, capacity);
+        mParent = Arrays.copyOf(mParent, capacity);
+        mChild1 = Arrays.copyOf(mChild1, capacity);
+        mChild2 = Arrays.copyOf(mChild2, capacity);
+        mHeight = Arrays.copyOf(mHeight, capacity);
+        mItem = Arrays.copyOf(mItem, capacity);
+        for (int node = capacity - 1; node >= mCapacity; node--) {
+            release(node);
+        }
+        mCapacity = capacity;
+    }
+}
@@ -1,4 +1,4 @@
-package com.badidea.cgwatkin.marblemaze;
+package com.badidea.cgwatkin.marblemaze.engine;
 
 /**
  * Goal Object class
@@ -8,7 +8,7 @@ package com.badidea.cgwatkin.marblemaze;
  *
  * Extends Circle Object, which implements World Object interface.
  */
-class GoalObject extends CircleObject {
+public class GoalObject extends CircleObject {
 
     /**
      * GoalObject constructor
@@ -17,10 +17,21 @@ class GoalObject extends CircleObject {
      * @param y Position of centre in y plane.
      * @param r Radius.
      */
-    GoalObject(int x, int y, int r) {
+    public GoalObject(int x, int y, int r) {
         super(x, y, r);
     }
 
+    /**
+     * Adds this goal to a world's arrays.
+     *
+     * @param world The world being built.
+     * @param id The goal's id in the world.
+     */
+    @Override
+    public void addTo(World world, int id) {
+        world.addGoal(id, getX(), getY(), getR());
+    }
+
     /**
      * Returns true if object is goal.
      *
@@ -0,0 +1,84 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gravity class
+ *
+ * Gravity handed from the sensor thread to the physics thread as one atomic word: both components packed as float
+ * bits into a long, so a reader always gets an x and y from the same sample, without locks or allocation.
+ */
+public class Gravity {
+
+    /**
+     * Largest gravity magnitude accepted in either plane; stronger readings, from shaking, are clamped.
+     */
+    public static final double MAX = 9.8;
+
+    /**
+     * Packed gravity, x in the high 32 bits and y in the low 32 bits.
+     */
+    private final AtomicLong mWord;
+
+    /**
+     * Constructor
+     *
+     * @param gX Gravity in x plane.
+     * @param gY Gravity in y plane.
+     */
+    public Gravity(double gX, double gY) {
+        mWord = new AtomicLong(pack(gX, gY));
+    }
+
+    /**
+     * Sets the gravity, clamping each component to within MAX either way.
+     *
+     * @param gX Gravity in x plane.
+     * @param gY Gravity in y plane.
+     */
+    public void set(double gX, double gY) {
+        mWord.set(pack(gX, gY));
+    }
+
+    /**
+     * Returns the packed gravity, to be unpacked with getX and getY.
+     *
+     * @return The packed word.
+     */
+    public long get() {
+        return mWord.get();
+    }
+
+    /**
+     * Returns the x component of a packed gravity word.
+     *
+     * @param word The packed word.
+     * @return Gravity in x plane.
+     */
+    public static double getX(long word) {
+        return Float.intBitsToFloat((int) (word >>> 32));
+    }
+
+    /**
+     * Returns the y component of a packed gravity word.
+     *
+     * @param word The packed word.
+     * @return Gravity in y plane.
+     */
+    public static double getY(long word) {
+        return Float.intBitsToFloat((int) word);
+    }
+
+    /**
+     * Packs clamped gravity components into a word.
+     *
+     * @param gX Gravity in x plane.
+     * @param gY Gravity in y plane.
+     * @return The packed word.
+     */
+    private static long pack(double gX, double gY) {
+        long x = Float.floatToIntBits((float) Math.max(-MAX, Math.min(MAX, gX)));
+        long y = Float.floatToIntBits((float) Math.max(-MAX, Math.min(MAX, gY)));
+        return x << 32 | (y & 0xffffffffL);
+    }
+}
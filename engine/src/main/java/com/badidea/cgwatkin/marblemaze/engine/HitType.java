@@ -0,0 +1,12 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+/**
+ * Hit types.
+ */
+public enum HitType {
+    NONE,
+    BOUNDARY,
+    WALL,
+    GOAL,
+    HOLE
+}
@@ -1,4 +1,4 @@
-package com.badidea.cgwatkin.marblemaze;
+package com.badidea.cgwatkin.marblemaze.engine;
 
 /**
  * Hole Object class
@@ -8,7 +8,7 @@ package com.badidea.cgwatkin.marblemaze;
  *
  * Extends Circle Object, which implements World Object interface.
  */
-class HoleObject extends CircleObject {
+public class HoleObject extends CircleObject {
 
     /**
      * HoleObject constructor
@@ -17,10 +17,21 @@ class HoleObject extends CircleObject {
      * @param y Position of centre in y plane.
      * @param r Radius.
      */
-    HoleObject(int x, int y, int r) {
+    public HoleObject(int x, int y, int r) {
         super(x, y, r);
     }
 
+    /**
+     * Adds this hole to a world's arrays.
+     *
+     * @param world The world being built.
+     * @param id The hole's id in the world.
+     */
+    @Override
+    public void addTo(World world, int id) {
+        world.addHole(id, getX(), getY(), getR());
+    }
+
     /**
      * Returns true if object is goal.
      *
@@ -0,0 +1,242 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import java.util.ArrayList;
+
+/**
+ * Level class
+ *
+ * Describes a world independently of screen size.
+ * All coordinates are in half cells, so both cell edges (walls) and cell centres (marble, goals and holes) are whole
+ * numbers. The border walls around the grid are implied by its size.
+ * Moving obstacles are stored as runs of OBSTACLE_FIELDS values: kind, x1, y1, x2, y2, offset x, offset y and period
+ * in milliseconds. Holes use only the first point, and rotating bars have no offset.
+ */
+public class Level {
+
+    /**
+     * Number of values per obstacle.
+     */
+    public static final int OBSTACLE_FIELDS = 8;
+
+    /**
+     * Grid size in cells.
+     */
+    private final int mColumns, mRows;
+
+    /**
+     * Marble start position.
+     */
+    private final int mMarbleX, mMarbleY;
+
+    /**
+     * Goal and hole centres, as x, y pairs.
+     */
+    private final int[] mGoals, mHoles;
+
+    /**
+     * Wall end points, as x1, y1, x2, y2 runs.
+     */
+    private final int[] mWalls;
+
+    /**
+     * Moving obstacles, as runs of OBSTACLE_FIELDS values.
+     */
+    private final int[] mObstacles;
+
+    /**
+     * Constructor
+     *
+     * @param columns Grid width in cells.
+     * @param rows Grid height in cells.
+     * @param marbleX Marble start x coordinate.
+     * @param marbleY Marble start y coordinate.
+     * @param goals Goal centres, as x, y pairs.
+     * @param holes Hole centres, as x, y pairs.
+     * @param walls Wall end points, as x1, y1, x2, y2 runs.
+     */
+    public Level(int columns, int rows, int marbleX, int marbleY, int[] goals, int[] holes, int[] walls) {
+        this(columns, rows, marbleX, marbleY, goals, holes, walls, new int[0]);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param columns Grid width in cells.
+     * @param rows Grid height in cells.
+     * @param marbleX Marble start x coordinate.
+     * @param marbleY Marble start y coordinate.
+     * @param goals Goal centres, as x, y pairs.
+     * @param holes Hole centres, as x, y pairs.
+     * @param walls Wall end points, as x1, y1, x2, y2 runs.
+     * @param obstacles Moving obstacles, as runs of OBSTACLE_FIELDS values.
+     */
+    public Level(int columns, int rows, int marbleX, int marbleY, int[] goals, int[] holes, int[] walls,
+                 int[] obstacles) {
+        mColumns = columns;
+        mRows = rows;
+        mMarbleX = marbleX;
+        mMarbleY = marbleY;
+        mGoals = goals;
+        mHoles = holes;
+        mWalls = walls;
+        mObstacles = obstacles;
+    }
+
+    /**
+     * Returns the grid width.
+     *
+     * @return Width in cells.
+     */
+    public int getColumns() {
+        return mColumns;
+    }
+
+    /**
+     * Returns the grid height.
+     *
+     * @return Height in cells.
+     */
+    public int getRows() {
+        return mRows;
+    }
+
+    /**
+     * Returns the marble's start x coordinate.
+     *
+     * @return X coordinate in half cells.
+     */
+    public int getMarbleX() {
+        return mMarbleX;
+    }
+
+    /**
+     * Returns the marble's start y coordinate.
+     *
+     * @return Y coordinate in half cells.
+     */
+    public int getMarbleY() {
+        return mMarbleY;
+    }
+
+    /**
+     * Returns the goal centres.
+     *
+     * @return X, y pairs in half cells.
+     */
+    public int[] getGoals() {
+        return mGoals;
+    }
+
+    /**
+     * Returns the hole centres.
+     *
+     * @return X, y pairs in half cells.
+     */
+    public int[] getHoles() {
+        return mHoles;
+    }
+
+    /**
+     * Returns the wall end points.
+     *
+     * @return X1, y1, x2, y2 runs in half cells.
+     */
+    public int[] getWalls() {
+        return mWalls;
+    }
+
+    /**
+     * Returns the moving obstacles.
+     *
+     * @return Runs of OBSTACLE_FIELDS values, with coordinates in half cells.
+     */
+    public int[] getObstacles() {
+        return mObstacles;
+    }
+
+    /**
+     * Converts a coordinate in half cells to pixels.
+     *
+     * @param halfCells Coordinate in half cells.
+     * @param padding Padding before the grid in pixels.
+     * @param cellSize Cell size in pixels.
+     * @return Coordinate in pixels.
+     */
+    public static int toPixels(int halfCells, int padding, int cellSize) {
+        return padding + halfCells * cellSize / 2;
+    }
+
+    /**
+     * Creates world objects for this level at a given scale, including the border walls.
+     *
+     * @param xPadding Padding around grid in x plane.
+     * @param yPadding Padding around grid in y plane.
+     * @param cellSize Cell size, the minimum distance between walls.
+     * @param radius Radius of goals and holes.
+     * @param wallWidth Width of walls.
+     * @return An array list of world objects.
+     */
+    public ArrayList<WorldObject> createWorldObjects(int xPadding, int yPadding, int cellSize, int radius,
+                                                     int wallWidth) {
+        ArrayList<WorldObject> worldObjects = new ArrayList<>(4 + (mGoals.length + mHoles.length) / 2
+                + mWalls.length / 4);
+        for (int i = 0; i < mGoals.length; i += 2) {
+            worldObjects.add(new GoalObject(toPixels(mGoals[i], xPadding, cellSize),
+                    toPixels(mGoals[i + 1], yPadding, cellSize), radius));
+        }
+
+        // Edges (left, top, right, bottom)
+        int left = xPadding, top = yPadding;
+        int right = xPadding + mColumns * cellSize, bottom = yPadding + mRows * cellSize;
+        worldObjects.add(new WallObject(left, top, left, bottom, wallWidth));
+        worldObjects.add(new WallObject(left, top, right, top, wallWidth));
+        worldObjects.add(new WallObject(right, top, right, bottom, wallWidth));
+        worldObjects.add(new WallObject(left, bottom, right, bottom, wallWidth));
+
+        for (int i = 0; i < mWalls.length; i += 4) {
+            worldObjects.add(new WallObject(toPixels(mWalls[i], xPadding, cellSize),
+                    toPixels(mWalls[i + 1], yPadding, cellSize), toPixels(mWalls[i + 2], xPadding, cellSize),
+                    toPixels(mWalls[i + 3], yPadding, cellSize), wallWidth));
+        }
+        for (int i = 0; i < mHoles.length; i += 2) {
+            worldObjects.add(new HoleObject(toPixels(mHoles[i], xPadding, cellSize),
+                    toPixels(mHoles[i + 1], yPadding, cellSize), radius));
+        }
+        return worldObjects;
+    }
+
+    /**
+     * Creates the moving obstacles for this level at a given scale.
+     *
+     * @param xPadding Padding around grid in x plane.
+     * @param yPadding Padding around grid in y plane.
+     * @param cellSize Cell size, the minimum distance between walls.
+     * @param radius Radius of holes.
+     * @param wallWidth Width of bars.
+     * @return The obstacles.
+     */
+    public Obstacles createObstacles(int xPadding, int yPadding, int cellSize, int radius, int wallWidth) {
+        Obstacles obstacles = new Obstacles(cellSize / 4.0);
+        for (int i = 0; i < mObstacles.length; i += OBSTACLE_FIELDS) {
+            int x1 = toPixels(mObstacles[i + 1], xPadding, cellSize);
+            int y1 = toPixels(mObstacles[i + 2], yPadding, cellSize);
+            int x2 = toPixels(mObstacles[i + 3], xPadding, cellSize);
+            int y2 = toPixels(mObstacles[i + 4], yPadding, cellSize);
+            int offsetX = toPixels(mObstacles[i + 5], 0, cellSize);
+            int offsetY = toPixels(mObstacles[i + 6], 0, cellSize);
+            double period = mObstacles[i + 7] / 1000.0;
+            switch (mObstacles[i]) {
+                case Obstacles.SLIDING_BAR:
+                    obstacles.addSlidingBar(x1, y1, x2, y2, wallWidth, offsetX, offsetY, period);
+                    break;
+                case Obstacles.ROTATING_BAR:
+                    obstacles.addRotatingBar(x1, y1, x2, y2, wallWidth, period);
+                    break;
+                default:
+                    obstacles.addSlidingHole(x1, y1, radius, offsetX, offsetY, period);
+                    break;
+            }
+        }
+        return obstacles;
+    }
+}
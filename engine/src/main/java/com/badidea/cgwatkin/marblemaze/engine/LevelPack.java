@@ -0,0 +1,181 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Level Pack class
+ *
+ * Reads levels from a binary pack, as written by LevelPackWriter.
+ * Only the header is read up front; each level is decoded from its own record when requested, so opening a pack of
+ * any size costs the same.
+ *
+ * Layout, big-endian:
+ *
+ *   int    magic "MMLP"
+ *   short  version
+ *   short  reserved
+ *   int    level count N
+ *   int[N + 1] record offsets from the start of the pack; record i ends where record i + 1 starts
+ *
+ * Each record, with all coordinates as int16 half cells:
+ *
+ *   short columns, rows, marble x, marble y
+ *   int   goal count, hole count, wall count, obstacle count
+ *   short[2 * goals] goal centres, short[2 * holes] hole centres, short[4 * walls] wall end points
+ *   per obstacle: short kind, x1, y1, x2, y2, offset x, offset y, int period in milliseconds
+ */
+public class LevelPack {
+
+    /**
+     * Pack magic number, "MMLP".
+     */
+    static final int MAGIC = 0x4d4d4c50;
+
+    /**
+     * Pack format version, raised whenever the record layout changes, so an older pack is rejected rather than
+     * misread.
+     */
+    static final short VERSION = 3;
+
+    /**
+     * Size of the fixed header before the offset table.
+     */
+    static final int HEADER_SIZE = 12;
+
+    /**
+     * Size of the fixed fields at the start of each record.
+     */
+    static final int RECORD_HEADER_SIZE = 24;
+
+    /**
+     * Size of each obstacle in a record.
+     */
+    static final int OBSTACLE_SIZE = 18;
+
+    /**
+     * The pack contents.
+     */
+    private final ByteBuffer mBuffer;
+
+    /**
+     * Number of levels in the pack.
+     */
+    private final int mCount;
+
+    /**
+     * Constructor
+     *
+     * Reads only the header. The buffer is read with absolute gets, so its position is never changed.
+     *
+     * @param buffer The pack contents, typically memory-mapped.
+     * @throws IOException If the buffer is not a level pack.
+     */
+    public LevelPack(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a level pack");
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IOException("Unsupported level pack version " + buffer.getShort(4));
+        }
+        mCount = buffer.getInt(8);
+        if (mCount < 0 || HEADER_SIZE + (mCount + 1L) * 4 > buffer.limit()) {
+            throw new IOException("Level pack truncated");
+        }
+    }
+
+    /**
+     * Memory-maps a pack file.
+     *
+     * @param file The pack file.
+     * @return The pack.
+     * @throws IOException If the file cannot be mapped or is not a level pack.
+     */
+    public static LevelPack open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return new LevelPack(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the number of levels in the pack.
+     *
+     * @return Level count.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Decodes one level.
+     *
+     * @param number Level number, from 0.
+     * @return The level.
+     * @throws IOException If the level's record is malformed.
+     */
+    public Level getLevel(int number) throws IOException {
+        if (number < 0 || number >= mCount) {
+            throw new IndexOutOfBoundsException("Level " + number + " of " + mCount);
+        }
+        int start = mBuffer.getInt(HEADER_SIZE + number * 4);
+        int end = mBuffer.getInt(HEADER_SIZE + number * 4 + 4);
+        if (start < 0 || end > mBuffer.limit() || end - start < RECORD_HEADER_SIZE) {
+            throw new IOException("Level " + number + " record out of range");
+        }
+        int columns = mBuffer.getShort(start) & 0xffff;
+        int rows = mBuffer.getShort(start + 2) & 0xffff;
+        int marbleX = mBuffer.getShort(start + 4);
+        int marbleY = mBuffer.getShort(start + 6);
+        int goals = mBuffer.getInt(start + 8);
+        int holes = mBuffer.getInt(start + 12);
+        int walls = mBuffer.getInt(start + 16);
+        int obstacles = mBuffer.getInt(start + 20);
+        if (goals < 0 || holes < 0 || walls < 0 || obstacles < 0
+                || end - start != RECORD_HEADER_SIZE + (goals * 2L + holes * 2L + walls * 4L) * 2
+                + obstacles * (long) OBSTACLE_SIZE) {
+            throw new IOException("Level " + number + " record size mismatch");
+        }
+        int position = start + RECORD_HEADER_SIZE;
+        int[] goalCoordinates = readShorts(position, goals * 2);
+        position += goals * 4;
+        int[] holeCoordinates = readShorts(position, holes * 2);
+        position += holes * 4;
+        int[] wallCoordinates = readShorts(position, walls * 4);
+        position += walls * 8;
+        int[] obstacleValues = new int[obstacles * Level.OBSTACLE_FIELDS];
+        for (int i = 0; i < obstacles; i++) {
+            int fields = i * Level.OBSTACLE_FIELDS;
+            for (int j = 0; j < Level.OBSTACLE_FIELDS - 1; j++) {
+                obstacleValues[fields + j] = mBuffer.getShort(position + j * 2);
+            }
+            obstacleValues[fields + Level.OBSTACLE_FIELDS - 1] = mBuffer.getInt(position + 14);
+            position += OBSTACLE_SIZE;
+        }
+        return new Level(columns, rows, marbleX, marbleY, goalCoordinates, holeCoordinates, wallCoordinates,
+                obstacleValues);
+    }
+
+    /**
+     * Reads a run of signed 16 bit values.
+     *
+     * @param position Byte offset of the first value.
+     * @param count Number of values.
+     * @return The values.
+     */
+    private int[] readShorts(int position, int count) {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = mBuffer.getShort(position + i * 2);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,188 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Level Pack Writer class
+ *
+ * Writes levels into the binary pack format read by LevelPack.
+ * Can be run from the command line to pack a directory of level text files, in file name order.
+ */
+public class LevelPackWriter {
+
+    /**
+     * Packs a directory of level text files.
+     *
+     * @param args Level directory and output pack file.
+     * @throws IOException If a level cannot be read or the pack cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: LevelPackWriter LEVEL_DIRECTORY OUTPUT_PACK");
+            System.exit(2);
+        }
+        File[] files = new File(args[0]).listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list " + args[0]);
+        }
+        Arrays.sort(files);
+        ArrayList<Level> levels = new ArrayList<>();
+        for (File file: files) {
+            if (!file.getName().endsWith(".txt")) {
+                continue;
+            }
+            Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            try {
+                levels.add(LevelParser.parse(reader));
+            }
+            catch (IOException e) {
+                throw new IOException(file.getName() + ": " + e.getMessage(), e);
+            }
+            finally {
+                reader.close();
+            }
+        }
+        File output = new File(args[1]);
+        File parent = output.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+        try {
+            write(levels, out);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes levels as a pack.
+     *
+     * @param levels The levels, in pack order.
+     * @param out Stream to write to; not closed.
+     * @throws IOException If a level does not fit the format or the stream cannot be written.
+     */
+    public static void write(List<Level> levels, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(LevelPack.MAGIC);
+        data.writeShort(LevelPack.VERSION);
+        data.writeShort(0);
+        data.writeInt(levels.size());
+        long offset = LevelPack.HEADER_SIZE + (levels.size() + 1L) * 4;
+        for (Level level: levels) {
+            data.writeInt(checkedOffset(offset));
+            offset += recordSize(level);
+        }
+        data.writeInt(checkedOffset(offset));
+        for (int i = 0; i < levels.size(); i++) {
+            Level level = levels.get(i);
+            try {
+                writeLevel(level, data);
+            }
+            catch (IOException e) {
+                throw new IOException("Level " + i + ": " + e.getMessage(), e);
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Returns the size of a level's record.
+     *
+     * @param level The level.
+     * @return Record size in bytes.
+     */
+    private static long recordSize(Level level) {
+        return LevelPack.RECORD_HEADER_SIZE
+                + (level.getGoals().length + level.getHoles().length + level.getWalls().length) * 2L
+                + level.getObstacles().length / Level.OBSTACLE_FIELDS * (long) LevelPack.OBSTACLE_SIZE;
+    }
+
+    /**
+     * Writes one level's record.
+     *
+     * @param level The level.
+     * @param data Stream to write to.
+     * @throws IOException If the level does not fit the format or the stream cannot be written.
+     */
+    private static void writeLevel(Level level, DataOutputStream data) throws IOException {
+        data.writeShort(unsigned(level.getColumns()));
+        data.writeShort(unsigned(level.getRows()));
+        data.writeShort(signed(level.getMarbleX()));
+        data.writeShort(signed(level.getMarbleY()));
+        data.writeInt(level.getGoals().length / 2);
+        data.writeInt(level.getHoles().length / 2);
+        data.writeInt(level.getWalls().length / 4);
+        data.writeInt(level.getObstacles().length / Level.OBSTACLE_FIELDS);
+        for (int value: level.getGoals()) {
+            data.writeShort(signed(value));
+        }
+        for (int value: level.getHoles()) {
+            data.writeShort(signed(value));
+        }
+        for (int value: level.getWalls()) {
+            data.writeShort(signed(value));
+        }
+        int[] obstacles = level.getObstacles();
+        for (int i = 0; i < obstacles.length; i += Level.OBSTACLE_FIELDS) {
+            for (int j = 0; j < Level.OBSTACLE_FIELDS - 1; j++) {
+                data.writeShort(signed(obstacles[i + j]));
+            }
+            data.writeInt(obstacles[i + Level.OBSTACLE_FIELDS - 1]);
+        }
+    }
+
+    /**
+     * Checks a value fits an unsigned 16 bit field.
+     *
+     * @param value The value.
+     * @return The value.
+     * @throws IOException If it does not fit.
+     */
+    private static int unsigned(int value) throws IOException {
+        if (value < 0 || value > 0xffff) {
+            throw new IOException(value + " does not fit an unsigned 16 bit field");
+        }
+        return value;
+    }
+
+    /**
+     * Checks a coordinate fits a signed 16 bit field.
+     *
+     * @param value The coordinate.
+     * @return The coordinate.
+     * @throws IOException If it does not fit.
+     */
+    private static int signed(int value) throws IOException {
+        if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+            throw new IOException("Coordinate " + value + " does not fit a signed 16 bit field");
+        }
+        return value;
+    }
+
+    /**
+     * Checks a record offset fits a signed 32 bit field.
+     *
+     * @param offset The offset.
+     * @return The offset.
+     * @throws IOException If the pack is too large.
+     */
+    private static int checkedOffset(long offset) throws IOException {
+        if (offset > Integer.MAX_VALUE) {
+            throw new IOException("Level pack larger than 2GB");
+        }
+        return (int) offset;
+    }
+}
@@ -0,0 +1,324 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Level Parser class
+ *
+ * Reads levels from a line based text format, with coordinates in cells:
+ *
+ *   # comment
+ *   size COLUMNS ROWS
+ *   marble X Y
+ *   goal X Y
+ *   hole X Y
+ *   wall X1 Y1 X2 Y2
+ *   path X1 Y1 X2 Y2 [X3 Y3 ...]
+ *   slide X1 Y1 X2 Y2 DX DY SECONDS
+ *   rotate X1 Y1 X2 Y2 SECONDS
+ *   slidehole X Y DX DY SECONDS
+ *
+ * Coordinates may be whole or half cells, so 0.5 is the centre of the first cell.
+ * Size and marble are required, and there may be any number of goals, holes, walls and moving obstacles. Walls may
+ * lie at any angle, and a path is a run of walls joining each point to the next, for bent or curved corridors.
+ * Sliding bars and holes move by DX, DY and back every SECONDS; rotating bars turn about their centre once every
+ * SECONDS, anticlockwise if negative. Moving bars may lie at any angle.
+ */
+public class LevelParser {
+
+    /**
+     * Growable coordinate buffers.
+     */
+    private int[] mGoals = new int[8], mHoles = new int[8], mWalls = new int[16],
+            mObstacles = new int[Level.OBSTACLE_FIELDS * 2];
+
+    /**
+     * Number of coordinates in each buffer.
+     */
+    private int mGoalCount, mHoleCount, mWallCount, mObstacleCount;
+
+    /**
+     * Parsed size, or -1 if not yet seen.
+     */
+    private int mColumns = -1, mRows = -1;
+
+    /**
+     * Parsed marble start.
+     */
+    private int mMarbleX, mMarbleY;
+
+    /**
+     * Whether the marble start has been seen.
+     */
+    private boolean mMarbleSeen;
+
+    /**
+     * Current line number, for error messages.
+     */
+    private int mLine;
+
+    /**
+     * Parses a level.
+     *
+     * @param reader Source of the level text.
+     * @return The level.
+     * @throws IOException If the source cannot be read or the level is malformed.
+     */
+    public static Level parse(Reader reader) throws IOException {
+        return new LevelParser().read(new BufferedReader(reader));
+    }
+
+    /**
+     * Reads every line, then builds the level.
+     *
+     * @param reader Source of the level text.
+     * @return The level.
+     * @throws IOException If the source cannot be read or the level is malformed.
+     */
+    private Level read(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            mLine++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (!line.isEmpty()) {
+                readLine(line.split("\\s+"));
+            }
+        }
+        if (mColumns < 0) {
+            throw new IOException("Level has no size");
+        }
+        if (!mMarbleSeen) {
+            throw new IOException("Level has no marble");
+        }
+        if (mMarbleX < 0 || mMarbleX > mColumns * 2 || mMarbleY < 0 || mMarbleY > mRows * 2) {
+            throw new IOException("Marble " + mMarbleX / 2.0 + " " + mMarbleY / 2.0 + " is outside the level");
+        }
+        return new Level(mColumns, mRows, mMarbleX, mMarbleY, Arrays.copyOf(mGoals, mGoalCount),
+                Arrays.copyOf(mHoles, mHoleCount), Arrays.copyOf(mWalls, mWallCount),
+                Arrays.copyOf(mObstacles, mObstacleCount));
+    }
+
+    /**
+     * Reads one command.
+     *
+     * @param tokens The command and its arguments.
+     * @throws IOException If the command is malformed.
+     */
+    private void readLine(String[] tokens) throws IOException {
+        switch (tokens[0]) {
+            case "size":
+                expectArguments(tokens, 2);
+                mColumns = wholeCells(tokens[1]);
+                mRows = wholeCells(tokens[2]);
+                if (mColumns <= 0 || mRows <= 0) {
+                    throw error("size must be positive");
+                }
+                break;
+            case "marble":
+                expectArguments(tokens, 2);
+                mMarbleX = halfCells(tokens[1]);
+                mMarbleY = halfCells(tokens[2]);
+                mMarbleSeen = true;
+                break;
+            case "goal":
+                expectArguments(tokens, 2);
+                mGoals = append(mGoals, mGoalCount, halfCells(tokens[1]), halfCells(tokens[2]));
+                mGoalCount += 2;
+                break;
+            case "hole":
+                expectArguments(tokens, 2);
+                mHoles = append(mHoles, mHoleCount, halfCells(tokens[1]), halfCells(tokens[2]));
+                mHoleCount += 2;
+                break;
+            case "wall":
+                expectArguments(tokens, 4);
+                addWall(halfCells(tokens[1]), halfCells(tokens[2]), halfCells(tokens[3]), halfCells(tokens[4]));
+                break;
+            case "path":
+                if (tokens.length < 5 || tokens.length % 2 == 0) {
+                    throw error("'path' takes two or more points");
+                }
+                int[] points = new int[tokens.length - 1];
+                for (int i = 0; i < points.length; i++) {
+                    points[i] = halfCells(tokens[i + 1]);
+                }
+                for (int i = 0; i + 3 < points.length; i += 2) {
+                    addWall(points[i], points[i + 1], points[i + 2], points[i + 3]);
+                }
+                break;
+            case "slide":
+                expectArguments(tokens, 7);
+                addObstacle(Obstacles.SLIDING_BAR, halfCells(tokens[1]), halfCells(tokens[2]),
+                        halfCells(tokens[3]), halfCells(tokens[4]), halfCells(tokens[5]), halfCells(tokens[6]),
+                        periodMillis(tokens[7]));
+                break;
+            case "rotate":
+                expectArguments(tokens, 5);
+                addObstacle(Obstacles.ROTATING_BAR, halfCells(tokens[1]), halfCells(tokens[2]),
+                        halfCells(tokens[3]), halfCells(tokens[4]), 0, 0, periodMillis(tokens[5]));
+                break;
+            case "slidehole":
+                expectArguments(tokens, 5);
+                int x = halfCells(tokens[1]), y = halfCells(tokens[2]);
+                addObstacle(Obstacles.SLIDING_HOLE, x, y, x, y, halfCells(tokens[3]), halfCells(tokens[4]),
+                        periodMillis(tokens[5]));
+                break;
+            default:
+                throw error("unknown command '" + tokens[0] + "'");
+        }
+    }
+
+    /**
+     * Adds a wall.
+     *
+     * @param x1 Point 1 x coordinate.
+     * @param y1 Point 1 y coordinate.
+     * @param x2 Point 2 x coordinate.
+     * @param y2 Point 2 y coordinate.
+     * @throws IOException If the wall has no length.
+     */
+    private void addWall(int x1, int y1, int x2, int y2) throws IOException {
+        if (x1 == x2 && y1 == y2) {
+            throw error("walls must have a length");
+        }
+        mWalls = append(mWalls, mWallCount, x1, y1);
+        mWallCount += 2;
+        mWalls = append(mWalls, mWallCount, x2, y2);
+        mWallCount += 2;
+    }
+
+    /**
+     * Adds a moving obstacle.
+     *
+     * @param kind Obstacle kind.
+     * @param x1 Point 1 x coordinate.
+     * @param y1 Point 1 y coordinate.
+     * @param x2 Point 2 x coordinate.
+     * @param y2 Point 2 y coordinate.
+     * @param offsetX Distance slid in x plane.
+     * @param offsetY Distance slid in y plane.
+     * @param period Milliseconds per cycle.
+     */
+    private void addObstacle(byte kind, int x1, int y1, int x2, int y2, int offsetX, int offsetY, int period) {
+        if (mObstacleCount + Level.OBSTACLE_FIELDS > mObstacles.length) {
+            mObstacles = Arrays.copyOf(mObstacles, mObstacles.length * 2);
+        }
+        int i = mObstacleCount;
+        mObstacles[i] = kind;
+        mObstacles[i + 1] = x1;
+        mObstacles[i + 2] = y1;
+        mObstacles[i + 3] = x2;
+        mObstacles[i + 4] = y2;
+        mObstacles[i + 5] = offsetX;
+        mObstacles[i + 6] = offsetY;
+        mObstacles[i + 7] = period;
+        mObstacleCount += Level.OBSTACLE_FIELDS;
+    }
+
+    /**
+     * Parses a period in seconds.
+     *
+     * @param token The period.
+     * @return Period in milliseconds.
+     * @throws IOException If the period is not a number or rounds to 0.
+     */
+    private int periodMillis(String token) throws IOException {
+        double seconds;
+        try {
+            seconds = Double.parseDouble(token);
+        }
+        catch (NumberFormatException e) {
+            throw error("'" + token + "' is not a number");
+        }
+        long millis = Math.round(seconds * 1000);
+        if (millis == 0 || Math.abs(millis) > Integer.MAX_VALUE) {
+            throw error("period '" + token + "' out of range");
+        }
+        return (int) millis;
+    }
+
+    /**
+     * Checks a command has the expected number of arguments.
+     *
+     * @param tokens The command and its arguments.
+     * @param count Expected argument count.
+     * @throws IOException If the count is wrong.
+     */
+    private void expectArguments(String[] tokens, int count) throws IOException {
+        if (tokens.length != count + 1) {
+            throw error("'" + tokens[0] + "' takes " + count + " arguments");
+        }
+    }
+
+    /**
+     * Parses a coordinate in cells, which must be a whole or half number.
+     *
+     * @param token The coordinate.
+     * @return Coordinate in half cells.
+     * @throws IOException If the coordinate is not a whole or half number.
+     */
+    private int halfCells(String token) throws IOException {
+        double halves;
+        try {
+            halves = Double.parseDouble(token) * 2;
+        }
+        catch (NumberFormatException e) {
+            throw error("'" + token + "' is not a number");
+        }
+        if (halves != Math.rint(halves) || Math.abs(halves) > Integer.MAX_VALUE) {
+            throw error("'" + token + "' is not a whole or half cell");
+        }
+        return (int) halves;
+    }
+
+    /**
+     * Parses a whole number of cells.
+     *
+     * @param token The number.
+     * @return Number of cells.
+     * @throws IOException If the number is not whole.
+     */
+    private int wholeCells(String token) throws IOException {
+        try {
+            return Integer.parseInt(token);
+        }
+        catch (NumberFormatException e) {
+            throw error("'" + token + "' is not a whole number");
+        }
+    }
+
+    /**
+     * Appends a coordinate pair, growing the buffer if needed.
+     *
+     * @param buffer The buffer.
+     * @param count Number of coordinates in the buffer.
+     * @param x X coordinate.
+     * @param y Y coordinate.
+     * @return The buffer, or a larger copy.
+     */
+    private static int[] append(int[] buffer, int count, int x, int y) {
+        if (count + 2 > buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[count] = x;
+        buffer[count + 1] = y;
+        return buffer;
+    }
+
+    /**
+     * Creates an error for the current line.
+     *
+     * @param message What is wrong.
+     * @return The error.
+     */
+    private IOException error(String message) {
+        return new IOException("Line " + mLine + ": " + message);
+    }
+}
@@ -0,0 +1,591 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+/**
+ * Marble class
+ *
+ * The main object in the world, which the user controls through accelerometer.
+ */
+public class Marble {
+
+    /**
+     * The marble's position, radius and velocity values.
+     */
+    private double mX, mY, mR, mVX, mVY, mMaxVelocity;
+
+    /**
+     * The marble's position before the last move, for render interpolation.
+     */
+    private double mPrevX, mPrevY;
+
+    /**
+     * Velocity modifier on collision.
+     */
+    private double k = 0.3;
+
+    /**
+     * Tick length, in seconds, that the maximum velocity is measured over.
+     */
+    private static final double REFERENCE_TICK = 1.0 / 60;
+
+    /**
+     * Most wall contacts resolved in one move; any time left after that is dropped.
+     */
+    private static final int MAX_CONTACTS = 4;
+
+    /**
+     * Distance the marble is left from a wall it hits, so it does not start the next sweep touching it.
+     */
+    private static final double CONTACT_SKIN = 0.01;
+
+    /**
+     * Swept collision test, reused by every move.
+     */
+    private final SweptCircle mSweep = new SweptCircle();
+
+    /**
+     * Most static contacts resolved at once, enough for a marble wedged into a corner of several walls.
+     */
+    private static final int CONTACT_CAPACITY = 8;
+
+    /**
+     * Contact buffer, reused by every move.
+     */
+    private final Contacts mContacts = new Contacts(CONTACT_CAPACITY);
+
+    /**
+     * Broadphase results and recently hit objects, carried from tick to tick.
+     */
+    private final ContactCache mCache = new ContactCache();
+
+    /**
+     * Object hit by the last static sweep, or -1 for none or a wall in the distance field.
+     */
+    private int mHitId;
+
+    /**
+     * Whether the object hit by the last static sweep was a recent contact.
+     */
+    private boolean mHitRecent;
+
+    /**
+     * Contact normal of the last static sweep's hit.
+     */
+    private double mHitNX, mHitNY;
+
+    /**
+     * Marble constructor
+     *
+     * @param x Position in x plane.
+     * @param y Position in y plane.
+     * @param vX Velocity in x plane.
+     * @param vY Velocity in y plane.
+     * @param r Radius.
+     * @param maxVelocity Maximum velocity in any plane.
+     */
+    public Marble(int x, int y, double vX, double vY, double r, double maxVelocity) {
+        mX = x;
+        mY = y;
+        mPrevX = x;
+        mPrevY = y;
+        mR = r;
+        mVX = vX;
+        mVY = vY;
+        mMaxVelocity = maxVelocity;
+    }
+
+    /**
+     * Returns the marble's x coordinate, between its previous and current positions.
+     *
+     * @param alpha Interpolation factor, 0 for previous position through 1 for current position.
+     * @return Centre x coordinate.
+     */
+    public double getX(double alpha) {
+        return mPrevX + (mX - mPrevX) * alpha;
+    }
+
+    /**
+     * Returns the marble's y coordinate, between its previous and current positions.
+     *
+     * @param alpha Interpolation factor, 0 for previous position through 1 for current position.
+     * @return Centre y coordinate.
+     */
+    public double getY(double alpha) {
+        return mPrevY + (mY - mPrevY) * alpha;
+    }
+
+    /**
+     * Returns the marble's radius.
+     *
+     * @return Radius.
+     */
+    public double getR() {
+        return mR;
+    }
+
+    /**
+     * Returns the marble's contact cache, for its hit rate counters.
+     *
+     * @return The cache.
+     */
+    public ContactCache getContactCache() {
+        return mCache;
+    }
+
+    /**
+     * Resolves an overlap with another marble, pushing both apart along the line between their centres and, if they
+     * are approaching, exchanging the velocity along that line as equal masses, damped by the collision modifier.
+     * Neither marble is pushed into a wall: the push is swept through the static world, and whatever one marble
+     * cannot take is given to the other.
+     *
+     * @param other The other marble.
+     * @param world The objects in the world.
+     * @return True if the marbles overlapped.
+     */
+    boolean collide(Marble other, World world) {
+        double dX = other.mX - mX, dY = other.mY - mY;
+        double minDistance = mR + other.mR;
+        double distanceSquared = dX * dX + dY * dY;
+        if (distanceSquared >= minDistance * minDistance) {
+            return false;
+        }
+        double distance = Math.sqrt(distanceSquared);
+        double nX, nY;
+        if (distance > 0) {
+            nX = dX / distance;
+            nY = dY / distance;
+        }
+        else {
+            // Exactly on top of each other, separate along x
+            nX = 1;
+            nY = 0;
+        }
+        double separation = minDistance - distance;
+        double moved = separation / 2 * pushThroughStatic(world, -nX * separation / 2, -nY * separation / 2);
+        other.pushThroughStatic(world, nX * (separation - moved), nY * (separation - moved));
+        double approach = (other.mVX - mVX) * nX + (other.mVY - mVY) * nY;
+        if (approach < 0) {
+            double impulse = -(1 + k) * approach / 2;
+            mVX -= impulse * nX;
+            mVY -= impulse * nY;
+            other.mVX += impulse * nX;
+            other.mVY += impulse * nY;
+        }
+        return true;
+    }
+
+    /**
+     * Move the marble based on change in time and current gravity, sweeping it through the static objects and then
+     * against the moving obstacles, then push it out of anything static it is left overlapping.
+     *
+     * @param dT Difference in time.
+     * @param gX Gravity in x plane.
+     * @param gY Gravity in y plane.
+     * @param w Width of canvas.
+     * @param h Height of canvas.
+     * @param world The objects in the world.
+     * @return Type of hit.
+     */
+    public HitType move(double dT, double gX, double gY, double w, double h, World world) {
+        HitType hit = moveThroughStatic(dT, gX, gY, w, h, world);
+        if (hit == HitType.GOAL || hit == HitType.HOLE) {
+            return hit;
+        }
+        if (world.getObstacles().getCount() > 0) {
+            HitType obstacleHit = collideObstacles(dT, world);
+            if (obstacleHit != HitType.NONE) {
+                hit = obstacleHit;
+            }
+            if (hit == HitType.HOLE) {
+                return hit;
+            }
+        }
+        HitType contactHit = resolveContacts(world);
+        if (contactHit == HitType.GOAL || contactHit == HitType.HOLE || hit == HitType.NONE) {
+            return contactHit;
+        }
+        return hit;
+    }
+
+    /**
+     * Resolves every static contact the marble is left with in one pass, such as after a moving bar or another
+     * marble pushed it into a wall.
+     * Each wall contact moves the marble out only by as much as the contacts before it have not already, so two
+     * walls meeting in a line are not counted twice, and each bounces the velocity off its normal.
+     *
+     * @param world The objects in the world.
+     * @return GOAL or HOLE if the marble overlaps one, WALL if it was pushed out of a wall, otherwise NONE.
+     */
+    private HitType resolveContacts(World world) {
+        int count = world.contacts(mX, mY, mR, mContacts);
+        double pushX = 0, pushY = 0;
+        for (int i = 0; i < count; i++) {
+            byte kind = world.getKind(mContacts.getId(i));
+            if (kind == World.GOAL) {
+                return HitType.GOAL;
+            }
+            else if (kind == World.HOLE) {
+                return HitType.HOLE;
+            }
+            mCache.touched(mContacts.getId(i));
+            double nX = mContacts.getNormalX(i), nY = mContacts.getNormalY(i);
+            double depth = mContacts.getDepth(i) - (pushX * nX + pushY * nY);
+            if (depth > 0) {
+                pushX += nX * depth;
+                pushY += nY * depth;
+            }
+            reflect(nX, nY);
+        }
+        updatePosition(mX + pushX, mY + pushY);
+        return count > 0 ? HitType.WALL : HitType.NONE;
+    }
+
+    /**
+     * Sweeps the marble's movement this tick against the moving obstacles, relative to each obstacle's own motion.
+     * At the first bar hit, the marble is put back where it met the bar, carried along with the bar for the rest of
+     * the tick, and bounced off it relative to the bar's motion. That push is swept through the static world, so a
+     * bar never shoves the marble into or through a wall.
+     *
+     * @param dT Difference in time.
+     * @param world The objects in the world.
+     * @return HOLE if the marble met a moving hole, WALL if it hit a bar, otherwise NONE.
+     */
+    private HitType collideObstacles(double dT, World world) {
+        Obstacles obstacles = world.getObstacles();
+        double dX = mX - mPrevX, dY = mY - mPrevY;
+        // Obstacles are indexed where they are now, so look as far as any moved this tick
+        double reach = mR + obstacles.getMaxStep();
+        int count = obstacles.query(Math.min(mPrevX, mX) - reach, Math.min(mPrevY, mY) - reach,
+                Math.max(mPrevX, mX) + reach, Math.max(mPrevY, mY) + reach);
+        double first = SweptCircle.NO_HIT;
+        int firstIndex = -1;
+        double nX = 0, nY = 0, depth = 0, surfaceVX = 0, surfaceVY = 0;
+        for (int n = 0; n < count; n++) {
+            int i = obstacles.result(n);
+            double t = obstacles.sweep(i, mSweep, mPrevX, mPrevY, mR, dX, dY);
+            if (t < first || (t == first && i < firstIndex)) {
+                first = t;
+                firstIndex = i;
+                nX = obstacles.getContactNormalX();
+                nY = obstacles.getContactNormalY();
+                depth = obstacles.getContactDepth();
+                surfaceVX = obstacles.getContactVelocityX();
+                surfaceVY = obstacles.getContactVelocityY();
+            }
+        }
+        if (firstIndex < 0) {
+            return HitType.NONE;
+        }
+        if (obstacles.isHole(firstIndex)) {
+            return HitType.HOLE;
+        }
+        // From where the marble started, to where it met the bar, then along with the bar and out of any overlap
+        double carried = dT * (1 - first);
+        double x = mPrevX + dX * first + surfaceVX * carried + nX * (depth + CONTACT_SKIN);
+        double y = mPrevY + dY * first + surfaceVY * carried + nY * (depth + CONTACT_SKIN);
+        updatePosition(mPrevX, mPrevY);
+        pushThroughStatic(world, x - mX, y - mY);
+        // Velocities move the marble v * 100 per second, see linearMovement
+        double approach = (mVX - surfaceVX / 100) * nX + (mVY - surfaceVY / 100) * nY;
+        if (approach < 0) {
+            mVX -= (1 + k) * approach * nX;
+            mVY -= (1 + k) * approach * nY;
+        }
+        return HitType.WALL;
+    }
+
+    /**
+     * Move the marble through the static objects, based on change in time and current gravity.
+     *
+     * The movement is swept against every nearby object to find the first contact. At a wall the marble stops just
+     * short, bounces off the contact normal and carries on for the rest of the tick, up to MAX_CONTACTS times, so
+     * no speed or tick length lets it pass through a wall. If the world has a distance field, walls are swept
+     * through that instead of one by one.
+     * Moving obstacles are not part of this pass. collideObstacles sweeps them afterwards, against the tick's
+     * movement as one straight line; see there for how closely that follows a rotating bar.
+     *
+     * @param dT Difference in time.
+     * @param gX Gravity in x plane.
+     * @param gY Gravity in y plane.
+     * @param w Width of canvas.
+     * @param h Height of canvas.
+     * @param world The objects in the world.
+     * @return Type of hit.
+     */
+    private HitType moveThroughStatic(double dT, double gX, double gY, double w, double h, World world) {
+        mPrevX = mX;
+        mPrevY = mY;
+        mVX = updateVelocity(mVX, dT, gX);
+        mVY = updateVelocity(mVY, dT, gY);
+        boolean wallCollision = false;
+        double timeLeft = dT;
+        for (int contact = 0; contact <= MAX_CONTACTS && timeLeft > 0; contact++) {
+            double x = linearMovement(mX, mVX, timeLeft);
+            double y = linearMovement(mY, mVY, timeLeft);
+            double dX = x - mX, dY = y - mY;
+            double first = firstStaticHit(world, dX, dY, false);
+            if (first == SweptCircle.NO_HIT) {
+                updatePosition(x, y);
+                break;
+            }
+            if (mHitId < 0 && mHitNX == 0 && mHitNY == 0) {
+                // The distance field ran out of lookups short of any wall, so carry on from where it got to
+                updatePosition(mX + dX * first, mY + dY * first);
+                timeLeft *= 1 - first;
+                continue;
+            }
+            byte kind = World.WALL;
+            if (mHitId >= 0) {
+                kind = world.getKind(mHitId);
+                mCache.touched(mHitId);
+                mCache.countHit(mHitRecent);
+            }
+            updatePosition(mX + dX * first, mY + dY * first);
+            if (kind == World.GOAL) {
+                return HitType.GOAL;
+            }
+            else if (kind == World.HOLE) {
+                return HitType.HOLE;
+            }
+            // Stand just off the wall, bounce, and carry on for the rest of the tick
+            updatePosition(mX + mHitNX * CONTACT_SKIN, mY + mHitNY * CONTACT_SKIN);
+            reflect(mHitNX, mHitNY);
+            wallCollision = true;
+            timeLeft *= 1 - first;
+        }
+        if (wallCollision) {
+            return HitType.WALL;
+        }
+        boolean bc = false;
+        if (boundaryCollision(mX, w)) {
+            reverseVX();
+            mX = Math.max(mR, Math.min(w - mR, mX));
+            bc = true;
+        }
+        if (boundaryCollision(mY, h)) {
+            reverseVY();
+            mY = Math.max(mR, Math.min(h - mR, mY));
+            bc = true;
+        }
+        if (bc) {
+            return HitType.BOUNDARY;
+        }
+        return HitType.NONE;
+    }
+
+    /**
+     * Finds the first static object the marble touches moving in a straight line from where it is.
+     * The object, whether it was a recent contact, and the contact normal are kept in the hit fields.
+     *
+     * @param world The objects in the world.
+     * @param dX Movement in x plane.
+     * @param dY Movement in y plane.
+     * @param wallsOnly True to pass through goals and holes.
+     * @return Fraction of the movement before the hit, from 0 to 1, or SweptCircle.NO_HIT.
+     */
+    private double firstStaticHit(World world, double dX, double dY, boolean wallsOnly) {
+        DistanceField field = world.getDistanceField();
+        double x = mX + dX, y = mY + dY;
+        int count = mCache.query(world, Math.min(mX, x) - mR, Math.min(mY, y) - mR, Math.max(mX, x) + mR,
+                Math.max(mY, y) + mR);
+
+        // Earliest hit along the movement, ties going to the lowest id as in a scan of the world in id order.
+        // Recently hit objects go first, so once one is hit, objects beyond it are skipped on their boxes alone
+        double first = SweptCircle.NO_HIT;
+        mHitId = -1;
+        mHitRecent = false;
+        mHitNX = 0;
+        mHitNY = 0;
+        if (field != null) {
+            first = field.sweep(mX, mY, mR, dX, dY);
+            mHitNX = field.getNormalX();
+            mHitNY = field.getNormalY();
+        }
+        for (int i = 0; i < mCache.getRecentCount(); i++) {
+            int id = mCache.getRecent(i);
+            if (skip(world, id, field, wallsOnly)) {
+                continue;
+            }
+            double t = world.sweep(id, mSweep, mX, mY, mR, dX, dY);
+            if (t < first || (t == first && id < mHitId)) {
+                first = t;
+                mHitId = id;
+                mHitRecent = true;
+                mHitNX = mSweep.getNormalX();
+                mHitNY = mSweep.getNormalY();
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            int id = mCache.result(i);
+            // Results are in id order, so once something is touched at once, nothing later can come first or tie
+            if (first == 0 && id > mHitId) {
+                break;
+            }
+            if (skip(world, id, field, wallsOnly) || mCache.isRecent(id) || !canReach(world, id, dX, dY, first)) {
+                continue;
+            }
+            double t = world.sweep(id, mSweep, mX, mY, mR, dX, dY);
+            if (t < first || (t == first && id < mHitId)) {
+                first = t;
+                mHitId = id;
+                mHitRecent = false;
+                mHitNX = mSweep.getNormalX();
+                mHitNY = mSweep.getNormalY();
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Tests if a static object is left out of a sweep: walls when the distance field covers them, and goals and holes
+     * when only walls are wanted.
+     *
+     * @param world The objects in the world.
+     * @param id Object id.
+     * @param field The distance field, or null.
+     * @param wallsOnly True if only walls are wanted.
+     * @return True to skip the object.
+     */
+    private static boolean skip(World world, int id, DistanceField field, boolean wallsOnly) {
+        byte kind = world.getKind(id);
+        return kind == World.WALL ? field != null : wallsOnly;
+    }
+
+    /**
+     * Moves the marble by a push that is not its own motion, such as from another marble or a moving bar, without
+     * passing into or through a wall: at a wall the marble stops just short and slides along it for the rest of the
+     * push, up to MAX_CONTACTS times.
+     *
+     * @param world The objects in the world.
+     * @param dX Push in x plane.
+     * @param dY Push in y plane.
+     * @return Fraction of the push made along its own direction, from 0 to 1.
+     */
+    private double pushThroughStatic(World world, double dX, double dY) {
+        double lengthSquared = dX * dX + dY * dY;
+        if (lengthSquared == 0) {
+            return 1;
+        }
+        double startX = mX, startY = mY;
+        double leftX = dX, leftY = dY;
+        for (int contact = 0; contact <= MAX_CONTACTS && (leftX != 0 || leftY != 0); contact++) {
+            double first = firstStaticHit(world, leftX, leftY, true);
+            if (first == SweptCircle.NO_HIT) {
+                updatePosition(mX + leftX, mY + leftY);
+                break;
+            }
+            if (mHitId >= 0) {
+                mCache.touched(mHitId);
+            }
+            updatePosition(mX + leftX * first + mHitNX * CONTACT_SKIN, mY + leftY * first + mHitNY * CONTACT_SKIN);
+            // Keep only the part of the rest of the push along the wall
+            leftX *= 1 - first;
+            leftY *= 1 - first;
+            double into = leftX * mHitNX + leftY * mHitNY;
+            if (into < 0) {
+                leftX -= into * mHitNX;
+                leftY -= into * mHitNY;
+            }
+        }
+        double made = ((mX - startX) * dX + (mY - startY) * dY) / lengthSquared;
+        return Math.max(0, Math.min(1, made));
+    }
+
+    /**
+     * Tests if the marble could touch an object before a given point in its movement, from the object's bounding box.
+     *
+     * @param world The objects in the world.
+     * @param id Object id.
+     * @param dX Movement in x plane.
+     * @param dY Movement in y plane.
+     * @param first Fraction of the movement to look along.
+     * @return False if the object is certainly out of reach.
+     */
+    private boolean canReach(World world, int id, double dX, double dY, double first) {
+        double t = Math.min(first, 1);
+        double x = mX + dX * t, y = mY + dY * t;
+        // A pixel of slack, as wall boxes round half widths down
+        double reach = mR + 1;
+        return world.getLeft(id) <= Math.max(mX, x) + reach && world.getRight(id) >= Math.min(mX, x) - reach
+                && world.getTop(id) <= Math.max(mY, y) + reach && world.getBottom(id) >= Math.min(mY, y) - reach;
+    }
+
+    /**
+     * Reverses and damps the velocity along a contact normal, if moving into the contact.
+     * For horizontal and vertical walls this is the same as reverseVY and reverseVX.
+     *
+     * @param nX Normal x component.
+     * @param nY Normal y component.
+     */
+    private void reflect(double nX, double nY) {
+        double approach = mVX * nX + mVY * nY;
+        if (approach < 0) {
+            mVX -= (1 + k) * approach * nX;
+            mVY -= (1 + k) * approach * nY;
+        }
+    }
+
+    /**
+     * Reverse velocity in x plane.
+     */
+    private void reverseVX() {
+        mVX = -mVX * k;
+    }
+
+    /**
+     * Reverse velocity in y plane.
+     */
+    private void reverseVY() {
+        mVY = -mVY * k;
+    }
+
+    private void updatePosition(double x, double y) {
+        mX = x;
+        mY = y;
+    }
+
+    /**
+     * Reverse velocity in both x and y planes.
+     */
+    private void bounce() {
+        reverseVX();
+        reverseVY();
+    }
+
+    /**
+     * Calculate next linear position.
+     * Movement is limited to the maximum velocity per reference tick, in either direction.
+     *
+     * @param coordinate The coordinate.
+     * @param v The velocity.
+     * @param dT The time difference.
+     * @return The new coordinate.
+     */
+    private double linearMovement(double coordinate, double v, double dT) {
+        double limit = mMaxVelocity * dT / REFERENCE_TICK;
+        return coordinate + Math.max(-limit, Math.min(v * dT * 100, limit));
+    }
+
+    /**
+     * Calculate the new velocity based on gravity.
+     *
+     * @param v The current velocity.
+     * @param dT The time difference.
+     * @param g The gravity modifier.
+     * @return The new velocity.
+     */
+    private double updateVelocity(double v, double dT, double g) {
+        return v + (dT * g * 10);
+    }
+
+    /**
+     * Calculate if the marble is touching the boundary.
+     *
+     * @param coordinate The coordinate.
+     * @param boundary The boundary value.
+     * @return True if boundary collision occurred.
+     */
+    private boolean boundaryCollision(double coordinate, double boundary) {
+        return coordinate < mR || coordinate > boundary - mR;
+    }
+}
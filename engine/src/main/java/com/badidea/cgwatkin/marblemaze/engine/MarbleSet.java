@@ -0,0 +1,360 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import java.util.Arrays;
+
+/**
+ * Marble Set class
+ *
+ * Any number of marbles sharing gravity, colliding with the world and with each other.
+ * A marble that reaches a goal is finished and one that falls in a hole is lost; neither moves again.
+ * The set is won once enough marbles are finished, and lost once too few are left in play to get there.
+ *
+ * Marble pairs are found with a uniform grid rebuilt every tick, with cells as wide as the largest marble, so each
+ * marble is only tested against marbles in its own and neighbouring cells instead of every other marble.
+ */
+public class MarbleSet {
+
+    /**
+     * Marble states.
+     */
+    private static final byte ACTIVE = 0, FINISHED = 1, LOST = 2;
+
+    /**
+     * Most passes separating touching marbles per tick. A marble pinned against a wall hands its share of a push
+     * on to its neighbours, so a pile-up can take a few passes to settle.
+     */
+    private static final int SEPARATION_PASSES = 4;
+
+    /**
+     * The marbles.
+     */
+    private final Marble[] mMarbles;
+
+    /**
+     * State of each marble.
+     */
+    private final byte[] mState;
+
+    /**
+     * Number of finished marbles needed to win.
+     */
+    private final int mToWin;
+
+    /**
+     * Number of finished and lost marbles.
+     */
+    private int mFinished, mLost;
+
+    /**
+     * Broadphase cell size, the largest marble diameter.
+     */
+    private final double mCellSize;
+
+    /**
+     * Broadphase grid size in cells.
+     */
+    private int mColumns, mRows;
+
+    /**
+     * Index into mCellItems of each cell's first marble, with one extra entry marking the end of the last cell.
+     */
+    private int[] mCellStart = new int[1];
+
+    /**
+     * Next free index into mCellItems for each cell, while filling.
+     */
+    private int[] mFill = new int[0];
+
+    /**
+     * Active marble indices, grouped by cell.
+     */
+    private final int[] mCellItems;
+
+    /**
+     * Cell of each marble, or -1 if it is not active.
+     */
+    private final int[] mMarbleCell;
+
+    /**
+     * Constructor
+     *
+     * @param marbles The marbles.
+     * @param toWin Number of marbles that must reach a goal to win, or 0 for all of them.
+     */
+    public MarbleSet(Marble[] marbles, int toWin) {
+        mMarbles = marbles;
+        mState = new byte[marbles.length];
+        mToWin = toWin > 0 ? Math.min(toWin, marbles.length) : marbles.length;
+        double maxR = 1;
+        for (Marble marble: marbles) {
+            maxR = Math.max(maxR, marble.getR());
+        }
+        mCellSize = maxR * 2;
+        mCellItems = new int[marbles.length];
+        mMarbleCell = new int[marbles.length];
+    }
+
+    /**
+     * Creates marbles on a square lattice spiralling out from a start position, skipping points outside the bounds
+     * or overlapping the bounding box of any world object. The start position itself is always used, as the level
+     * places it. Fewer marbles are created if there is not enough room.
+     *
+     * @param world The objects in the world.
+     * @param startX Start x coordinate.
+     * @param startY Start y coordinate.
+     * @param vX Start velocity in x plane.
+     * @param vY Start velocity in y plane.
+     * @param count Number of marbles.
+     * @param r Marble radius.
+     * @param maxVelocity Maximum marble velocity in any plane.
+     * @param left Left edge of the area marbles may start in.
+     * @param top Top edge of the area marbles may start in.
+     * @param right Right edge of the area marbles may start in.
+     * @param bottom Bottom edge of the area marbles may start in.
+     * @return The marbles.
+     */
+    public static Marble[] spawn(World world, int startX, int startY, double vX, double vY, int count, int r,
+                                 double maxVelocity, int left, int top, int right, int bottom) {
+        Marble[] marbles = new Marble[count];
+        int n = 0;
+        int spacing = 2 * r + 2;
+        int rings = Math.max(right - left, bottom - top) / spacing + 1;
+        for (int ring = 0; ring <= rings && n < count; ring++) {
+            for (int j = -ring; j <= ring && n < count; j++) {
+                for (int i = -ring; i <= ring && n < count; i++) {
+                    if (Math.max(Math.abs(i), Math.abs(j)) != ring) {
+                        continue;
+                    }
+                    int x = startX + i * spacing, y = startY + j * spacing;
+                    if (ring > 0 && (x - r < left || x + r > right || y - r < top || y + r > bottom
+                            || overlapsObject(world, x - r, y - r, x + r, y + r))) {
+                        continue;
+                    }
+                    marbles[n++] = new Marble(x, y, vX, vY, r, maxVelocity);
+                }
+            }
+        }
+        return n == count ? marbles : Arrays.copyOf(marbles, n);
+    }
+
+    /**
+     * Tests if a box overlaps the bounding box of any world object.
+     *
+     * @param world The objects in the world.
+     * @param left Left edge of the box.
+     * @param top Top edge of the box.
+     * @param right Right edge of the box.
+     * @param bottom Bottom edge of the box.
+     * @return True if any object's bounding box overlaps.
+     */
+    private static boolean overlapsObject(World world, int left, int top, int right, int bottom) {
+        int count = world.query(left, top, right, bottom);
+        for (int i = 0; i < count; i++) {
+            int id = world.result(i);
+            if (world.getLeft(id) <= right && world.getRight(id) >= left
+                    && world.getTop(id) <= bottom && world.getBottom(id) >= top) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of marbles.
+     *
+     * @return Marble count.
+     */
+    public int getCount() {
+        return mMarbles.length;
+    }
+
+    /**
+     * Returns a marble.
+     *
+     * @param i Marble index.
+     * @return The marble.
+     */
+    public Marble getMarble(int i) {
+        return mMarbles[i];
+    }
+
+    /**
+     * Returns true if a marble is still in play.
+     *
+     * @param i Marble index.
+     * @return True if the marble has not reached a goal or fallen in a hole.
+     */
+    public boolean isActive(int i) {
+        return mState[i] == ACTIVE;
+    }
+
+    /**
+     * Returns the number of marbles that have reached a goal.
+     *
+     * @return Finished marble count.
+     */
+    public int getFinished() {
+        return mFinished;
+    }
+
+    /**
+     * Returns the number of marbles that must reach a goal to win.
+     *
+     * @return Marbles needed to win.
+     */
+    public int getToWin() {
+        return mToWin;
+    }
+
+    /**
+     * Moves every marble in play, then separates touching marbles, without pushing any into a wall.
+     *
+     * @param dT Difference in time.
+     * @param gX Gravity in x plane.
+     * @param gY Gravity in y plane.
+     * @param w Width of canvas.
+     * @param h Height of canvas.
+     * @param world The objects in the world.
+     * @return GOAL once enough marbles are finished, HOLE once too few are left to finish, otherwise the most
+     *         significant hit of the tick, WALL over BOUNDARY over NONE.
+     */
+    public HitType move(double dT, double gX, double gY, double w, double h, World world) {
+        HitType result = HitType.NONE;
+        for (int i = 0; i < mMarbles.length; i++) {
+            if (mState[i] != ACTIVE) {
+                continue;
+            }
+            HitType hit = mMarbles[i].move(dT, gX, gY, w, h, world);
+            switch (hit) {
+                case GOAL:
+                    mState[i] = FINISHED;
+                    mFinished++;
+                    break;
+                case HOLE:
+                    mState[i] = LOST;
+                    mLost++;
+                    break;
+                case WALL:
+                    result = HitType.WALL;
+                    break;
+                case BOUNDARY:
+                    if (result == HitType.NONE) {
+                        result = HitType.BOUNDARY;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (mFinished >= mToWin) {
+            return HitType.GOAL;
+        }
+        if (mMarbles.length - mLost < mToWin) {
+            return HitType.HOLE;
+        }
+        for (int pass = 0; pass < SEPARATION_PASSES; pass++) {
+            if (!collideMarbles(w, h, world)) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Buckets active marbles into grid cells, then tests each marble against the marbles in its own cell and in the
+     * four neighbouring cells after it, so each nearby pair is tested exactly once.
+     *
+     * @param w Width of canvas.
+     * @param h Height of canvas.
+     * @param world The objects in the world, which marbles are not pushed into.
+     * @return True if any marbles overlapped.
+     */
+    private boolean collideMarbles(double w, double h, World world) {
+        int columns = Math.max(1, (int) (w / mCellSize) + 1);
+        int rows = Math.max(1, (int) (h / mCellSize) + 1);
+        if (columns != mColumns || rows != mRows) {
+            mColumns = columns;
+            mRows = rows;
+            mCellStart = new int[columns * rows + 1];
+            mFill = new int[columns * rows];
+        }
+        else {
+            Arrays.fill(mCellStart, 0);
+        }
+
+        // Count marbles per cell, then convert counts to start offsets
+        for (int i = 0; i < mMarbles.length; i++) {
+            if (mState[i] != ACTIVE) {
+                mMarbleCell[i] = -1;
+                continue;
+            }
+            int column = clamp((int) (mMarbles[i].getX(1) / mCellSize), columns);
+            int row = clamp((int) (mMarbles[i].getY(1) / mCellSize), rows);
+            int cell = row * columns + column;
+            mMarbleCell[i] = cell;
+            mCellStart[cell + 1]++;
+        }
+        for (int i = 1; i < mCellStart.length; i++) {
+            mCellStart[i] += mCellStart[i - 1];
+        }
+        System.arraycopy(mCellStart, 0, mFill, 0, mFill.length);
+        for (int i = 0; i < mMarbles.length; i++) {
+            int cell = mMarbleCell[i];
+            if (cell >= 0) {
+                mCellItems[mFill[cell]++] = i;
+            }
+        }
+
+        boolean overlapped = false;
+        for (int i = 0; i < mMarbles.length; i++) {
+            int cell = mMarbleCell[i];
+            if (cell < 0) {
+                continue;
+            }
+            int column = cell % columns, row = cell / columns;
+            // Own cell, only marbles after this one
+            for (int j = mCellStart[cell]; j < mCellStart[cell + 1]; j++) {
+                if (mCellItems[j] > i) {
+                    overlapped |= mMarbles[i].collide(mMarbles[mCellItems[j]], world);
+                }
+            }
+            overlapped |= collideCell(i, column + 1, row, world);
+            overlapped |= collideCell(i, column - 1, row + 1, world);
+            overlapped |= collideCell(i, column, row + 1, world);
+            overlapped |= collideCell(i, column + 1, row + 1, world);
+        }
+        return overlapped;
+    }
+
+    /**
+     * Tests a marble against every marble in a cell.
+     *
+     * @param i Marble index.
+     * @param column Cell column, possibly outside the grid.
+     * @param row Cell row, possibly outside the grid.
+     * @param world The objects in the world.
+     * @return True if any marbles overlapped.
+     */
+    private boolean collideCell(int i, int column, int row, World world) {
+        if (column < 0 || column >= mColumns || row >= mRows) {
+            return false;
+        }
+        int cell = row * mColumns + column;
+        boolean overlapped = false;
+        for (int j = mCellStart[cell]; j < mCellStart[cell + 1]; j++) {
+            overlapped |= mMarbles[i].collide(mMarbles[mCellItems[j]], world);
+        }
+        return overlapped;
+    }
+
+    /**
+     * Clamps a cell index to the grid.
+     *
+     * @param i Cell index.
+     * @param count Number of cells.
+     * @return Clamped cell index.
+     */
+    private static int clamp(int i, int count) {
+        return i < 0 ? 0 : i >= count ? count - 1 : i;
+    }
+}
@@ -0,0 +1,232 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Maze Generator class
+ *
+ * Generates seeded random mazes as levels, using an iterative recursive backtracker so every cell is reachable and
+ * there is exactly one path between any two cells.
+ * The marble starts in the bottom right cell and the goal is in the top left cell, as in the built-in worlds.
+ * Holes are only placed in dead ends, so they never block the path to the goal.
+ * The same seed, size and hole count always give the same maze.
+ */
+public class MazeGenerator {
+
+    /**
+     * Largest number of columns or rows.
+     */
+    public static final int MAX_SIZE = 500;
+
+    /**
+     * Passage bits per cell, to the east and to the south.
+     */
+    private static final byte EAST = 1, SOUTH = 2;
+
+    /**
+     * Random number source.
+     */
+    private final Random mRandom;
+
+    /**
+     * Number of holes to place.
+     */
+    private int mHoles;
+
+    /**
+     * Constructor
+     *
+     * @param seed Random seed.
+     */
+    public MazeGenerator(long seed) {
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * Sets the number of holes placed in each maze. Fewer are placed if there are not enough dead ends.
+     *
+     * @param holes Hole count.
+     * @return This generator.
+     */
+    public MazeGenerator setHoles(int holes) {
+        mHoles = holes;
+        return this;
+    }
+
+    /**
+     * Generates a maze.
+     *
+     * @param columns Grid width in cells, from 1 to MAX_SIZE.
+     * @param rows Grid height in cells, from 1 to MAX_SIZE.
+     * @return The maze.
+     */
+    public Level generate(int columns, int rows) {
+        if (columns < 1 || columns > MAX_SIZE || rows < 1 || rows > MAX_SIZE) {
+            throw new IllegalArgumentException("Maze size " + columns + "x" + rows + " outside 1 to " + MAX_SIZE);
+        }
+        byte[] passages = carve(columns, rows);
+        int goal = 0, start = columns * rows - 1;
+        return new Level(columns, rows, 2 * (columns - 1) + 1, 2 * (rows - 1) + 1, new int[] {1, 1},
+                placeHoles(passages, columns, rows, goal, start), walls(passages, columns, rows));
+    }
+
+    /**
+     * Carves passages between cells with a depth first walk from a random cell.
+     *
+     * @param columns Grid width in cells.
+     * @param rows Grid height in cells.
+     * @return Passage bits per cell, in row order.
+     */
+    private byte[] carve(int columns, int rows) {
+        int cells = columns * rows;
+        byte[] passages = new byte[cells];
+        boolean[] visited = new boolean[cells];
+        int[] stack = new int[cells];
+        int[] neighbours = new int[4];
+        int top = 0;
+        stack[top++] = mRandom.nextInt(cells);
+        visited[stack[0]] = true;
+        while (top > 0) {
+            int cell = stack[top - 1];
+            int x = cell % columns, y = cell / columns;
+            int n = 0;
+            if (x > 0 && !visited[cell - 1]) {
+                neighbours[n++] = cell - 1;
+            }
+            if (x < columns - 1 && !visited[cell + 1]) {
+                neighbours[n++] = cell + 1;
+            }
+            if (y > 0 && !visited[cell - columns]) {
+                neighbours[n++] = cell - columns;
+            }
+            if (y < rows - 1 && !visited[cell + columns]) {
+                neighbours[n++] = cell + columns;
+            }
+            if (n == 0) {
+                top--;
+                continue;
+            }
+            int next = neighbours[mRandom.nextInt(n)];
+            if (next == cell + 1) {
+                passages[cell] |= EAST;
+            }
+            else if (next == cell - 1) {
+                passages[next] |= EAST;
+            }
+            else if (next == cell + columns) {
+                passages[cell] |= SOUTH;
+            }
+            else {
+                passages[next] |= SOUTH;
+            }
+            visited[next] = true;
+            stack[top++] = next;
+        }
+        return passages;
+    }
+
+    /**
+     * Creates the walls between cells without a passage, merging each straight run into a single wall.
+     * The border is left out, as levels imply it.
+     *
+     * @param passages Passage bits per cell.
+     * @param columns Grid width in cells.
+     * @param rows Grid height in cells.
+     * @return Wall end points in half cells, as x1, y1, x2, y2 runs.
+     */
+    private static int[] walls(byte[] passages, int columns, int rows) {
+        int[] walls = new int[16];
+        int count = 0;
+        // Vertical walls, on the line east of column x
+        for (int x = 0; x < columns - 1; x++) {
+            int runStart = -1;
+            for (int y = 0; y <= rows; y++) {
+                boolean wall = y < rows && (passages[y * columns + x] & EAST) == 0;
+                if (wall && runStart < 0) {
+                    runStart = y;
+                }
+                else if (!wall && runStart >= 0) {
+                    if (count + 4 > walls.length) {
+                        walls = Arrays.copyOf(walls, walls.length * 2);
+                    }
+                    walls[count++] = 2 * (x + 1);
+                    walls[count++] = 2 * runStart;
+                    walls[count++] = 2 * (x + 1);
+                    walls[count++] = 2 * y;
+                    runStart = -1;
+                }
+            }
+        }
+        // Horizontal walls, on the line south of row y
+        for (int y = 0; y < rows - 1; y++) {
+            int runStart = -1;
+            for (int x = 0; x <= columns; x++) {
+                boolean wall = x < columns && (passages[y * columns + x] & SOUTH) == 0;
+                if (wall && runStart < 0) {
+                    runStart = x;
+                }
+                else if (!wall && runStart >= 0) {
+                    if (count + 4 > walls.length) {
+                        walls = Arrays.copyOf(walls, walls.length * 2);
+                    }
+                    walls[count++] = 2 * runStart;
+                    walls[count++] = 2 * (y + 1);
+                    walls[count++] = 2 * x;
+                    walls[count++] = 2 * (y + 1);
+                    runStart = -1;
+                }
+            }
+        }
+        return Arrays.copyOf(walls, count);
+    }
+
+    /**
+     * Places holes in randomly chosen dead ends, other than the goal and start cells.
+     *
+     * @param passages Passage bits per cell.
+     * @param columns Grid width in cells.
+     * @param rows Grid height in cells.
+     * @param goal Goal cell.
+     * @param start Marble start cell.
+     * @return Hole centres in half cells, as x, y pairs.
+     */
+    private int[] placeHoles(byte[] passages, int columns, int rows, int goal, int start) {
+        int cells = columns * rows;
+        int[] deadEnds = new int[cells];
+        int count = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (cell == goal || cell == start) {
+                continue;
+            }
+            int x = cell % columns, y = cell / columns;
+            int exits = 0;
+            if ((passages[cell] & EAST) != 0) {
+                exits++;
+            }
+            if ((passages[cell] & SOUTH) != 0) {
+                exits++;
+            }
+            if (x > 0 && (passages[cell - 1] & EAST) != 0) {
+                exits++;
+            }
+            if (y > 0 && (passages[cell - columns] & SOUTH) != 0) {
+                exits++;
+            }
+            if (exits == 1) {
+                deadEnds[count++] = cell;
+            }
+        }
+        int holes = Math.max(0, Math.min(mHoles, count));
+        int[] result = new int[holes * 2];
+        for (int i = 0; i < holes; i++) {
+            // Partial shuffle, so each dead end is picked at most once
+            int j = i + mRandom.nextInt(count - i);
+            int cell = deadEnds[j];
+            deadEnds[j] = deadEnds[i];
+            result[i * 2] = 2 * (cell % columns) + 1;
+            result[i * 2 + 1] = 2 * (cell / columns) + 1;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,528 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import java.util.Arrays;
+
+/**
+ * Obstacles class
+ *
+ * Kinematic obstacles: bars and holes that follow a fixed motion over time, pushing the marble rather than being
+ * pushed by it. Bars collide as capsules, a segment with rounded ends, so they may lie at any angle.
+ *
+ * Obstacles are stored in parallel arrays, like World, and indexed by a dynamic tree updated incrementally every
+ * tick. The static world keeps its grid, so moving obstacles never force it to be rebuilt.
+ */
+public class Obstacles {
+
+    /**
+     * Obstacle kinds.
+     * A sliding bar moves back and forth by an offset, a rotating bar turns about its centre, and a sliding hole
+     * moves back and forth by an offset.
+     */
+    public static final byte SLIDING_BAR = 0, ROTATING_BAR = 1, SLIDING_HOLE = 2;
+
+    /**
+     * Kind of each obstacle.
+     */
+    private byte[] mKind = new byte[4];
+
+    /**
+     * Start end points of each bar, or centre of each hole in the first point.
+     */
+    private double[] mBaseX1 = new double[4], mBaseY1 = new double[4], mBaseX2 = new double[4],
+            mBaseY2 = new double[4];
+
+    /**
+     * Offset each sliding obstacle moves by.
+     */
+    private double[] mOffsetX = new double[4], mOffsetY = new double[4];
+
+    /**
+     * Seconds for one full cycle of each obstacle's motion.
+     */
+    private double[] mPeriod = new double[4];
+
+    /**
+     * Bar width or hole radius.
+     */
+    private double[] mSize = new double[4];
+
+    /**
+     * Current end points, or centre of each hole in the first point.
+     */
+    private double[] mX1 = new double[4], mY1 = new double[4], mX2 = new double[4], mY2 = new double[4];
+
+    /**
+     * End points before the last tick, for render interpolation and surface velocity.
+     */
+    private double[] mPrevX1 = new double[4], mPrevY1 = new double[4], mPrevX2 = new double[4],
+            mPrevY2 = new double[4];
+
+    /**
+     * Tree leaf of each obstacle.
+     */
+    private int[] mLeaf = new int[4];
+
+    /**
+     * Number of obstacles.
+     */
+    private int mCount;
+
+    /**
+     * Index over the obstacles' bounding boxes.
+     */
+    private final DynamicTree mTree;
+
+    /**
+     * Time since the obstacles started moving, and length of the last tick, in seconds.
+     */
+    private double mTime, mLastDT;
+
+    /**
+     * Furthest any point of an obstacle moved in the last tick, in either plane.
+     */
+    private double mMaxStep;
+
+    /**
+     * Contact found by the last call to sweep.
+     */
+    private double mNormalX, mNormalY, mDepth, mSurfaceVX, mSurfaceVY;
+
+    /**
+     * Constructor
+     *
+     * @param margin Distance the tree grows bounding boxes by, so small movements do not change the tree.
+     */
+    public Obstacles(double margin) {
+        mTree = new DynamicTree(margin);
+    }
+
+    /**
+     * Adds a bar that slides back and forth, easing in and out at each end.
+     *
+     * @param x1 Point 1 x coordinate.
+     * @param y1 Point 1 y coordinate.
+     * @param x2 Point 2 x coordinate.
+     * @param y2 Point 2 y coordinate.
+     * @param w Bar width.
+     * @param offsetX Distance moved in x plane.
+     * @param offsetY Distance moved in y plane.
+     * @param period Seconds to move there and back.
+     * @return Obstacle index.
+     */
+    public int addSlidingBar(int x1, int y1, int x2, int y2, int w, int offsetX, int offsetY, double period) {
+        return add(SLIDING_BAR, x1, y1, x2, y2, w, offsetX, offsetY, period);
+    }
+
+    /**
+     * Adds a bar that rotates about its centre.
+     *
+     * @param x1 Point 1 x coordinate.
+     * @param y1 Point 1 y coordinate.
+     * @param x2 Point 2 x coordinate.
+     * @param y2 Point 2 y coordinate.
+     * @param w Bar width.
+     * @param period Seconds per revolution; negative to turn anticlockwise.
+     * @return Obstacle index.
+     */
+    public int addRotatingBar(int x1, int y1, int x2, int y2, int w, double period) {
+        return add(ROTATING_BAR, x1, y1, x2, y2, w, 0, 0, period);
+    }
+
+    /**
+     * Adds a hole that slides back and forth, easing in and out at each end.
+     *
+     * @param x Centre x coordinate.
+     * @param y Centre y coordinate.
+     * @param r Radius.
+     * @param offsetX Distance moved in x plane.
+     * @param offsetY Distance moved in y plane.
+     * @param period Seconds to move there and back.
+     * @return Obstacle index.
+     */
+    public int addSlidingHole(int x, int y, int r, int offsetX, int offsetY, double period) {
+        return add(SLIDING_HOLE, x, y, x, y, r, offsetX, offsetY, period);
+    }
+
+    /**
+     * Adds an obstacle at its start position.
+     *
+     * @param kind Obstacle kind.
+     * @param x1 Point 1 x coordinate.
+     * @param y1 Point 1 y coordinate.
+     * @param x2 Point 2 x coordinate.
+     * @param y2 Point 2 y coordinate.
+     * @param size Bar width or hole radius.
+     * @param offsetX Distance slid in x plane.
+     * @param offsetY Distance slid in y plane.
+     * @param period Seconds per cycle.
+     * @return Obstacle index.
+     */
+    private int add(byte kind, int x1, int y1, int x2, int y2, int size, int offsetX, int offsetY, double period) {
+        if (period == 0) {
+            throw new IllegalArgumentException("Obstacle period must not be 0");
+        }
+        if (mCount == mKind.length) {
+            grow(mCount * 2);
+        }
+        int i = mCount++;
+        mKind[i] = kind;
+        mBaseX1[i] = x1;
+        mBaseY1[i] = y1;
+        mBaseX2[i] = x2;
+        mBaseY2[i] = y2;
+        mOffsetX[i] = offsetX;
+        mOffsetY[i] = offsetY;
+        mPeriod[i] = period;
+        mSize[i] = size;
+        place(i, mTime);
+        mPrevX1[i] = mX1[i];
+        mPrevY1[i] = mY1[i];
+        mPrevX2[i] = mX2[i];
+        mPrevY2[i] = mY2[i];
+        mLeaf[i] = mTree.insert(i, getLeft(i), getTop(i), getRight(i), getBottom(i));
+        return i;
+    }
+
+    /**
+     * Moves every obstacle on by a tick, updating the tree only for obstacles that leave their fat boxes.
+     *
+     * @param dT Difference in time.
+     */
+    public void advance(double dT) {
+        mTime += dT;
+        mLastDT = dT;
+        mMaxStep = 0;
+        for (int i = 0; i < mCount; i++) {
+            mPrevX1[i] = mX1[i];
+            mPrevY1[i] = mY1[i];
+            mPrevX2[i] = mX2[i];
+            mPrevY2[i] = mY2[i];
+            place(i, mTime);
+            double step1 = Math.max(Math.abs(mX1[i] - mPrevX1[i]), Math.abs(mY1[i] - mPrevY1[i]));
+            double step2 = Math.max(Math.abs(mX2[i] - mPrevX2[i]), Math.abs(mY2[i] - mPrevY2[i]));
+            mMaxStep = Math.max(mMaxStep, Math.max(step1, step2));
+            mTree.move(mLeaf[i], getLeft(i), getTop(i), getRight(i), getBottom(i));
+        }
+    }
+
+    /**
+     * Sets an obstacle's position for a time.
+     *
+     * @param i Obstacle index.
+     * @param time Seconds since the obstacles started moving.
+     */
+    private void place(int i, double time) {
+        double phase = 2 * Math.PI * time / mPeriod[i];
+        if (mKind[i] == ROTATING_BAR) {
+            double cX = (mBaseX1[i] + mBaseX2[i]) / 2, cY = (mBaseY1[i] + mBaseY2[i]) / 2;
+            double hX = (mBaseX2[i] - mBaseX1[i]) / 2, hY = (mBaseY2[i] - mBaseY1[i]) / 2;
+            double cos = Math.cos(phase), sin = Math.sin(phase);
+            double rX = hX * cos - hY * sin, rY = hX * sin + hY * cos;
+            mX1[i] = cX - rX;
+            mY1[i] = cY - rY;
+            mX2[i] = cX + rX;
+            mY2[i] = cY + rY;
+        }
+        else {
+            double t = (1 - Math.cos(phase)) / 2;
+            mX1[i] = mBaseX1[i] + mOffsetX[i] * t;
+            mY1[i] = mBaseY1[i] + mOffsetY[i] * t;
+            mX2[i] = mBaseX2[i] + mOffsetX[i] * t;
+            mY2[i] = mBaseY2[i] + mOffsetY[i] * t;
+        }
+    }
+
+    /**
+     * Returns the number of obstacles.
+     *
+     * @return Obstacle count.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the kind of an obstacle.
+     *
+     * @param i Obstacle index.
+     * @return SLIDING_BAR, ROTATING_BAR or SLIDING_HOLE.
+     */
+    public byte getKind(int i) {
+        return mKind[i];
+    }
+
+    /**
+     * Returns true if an obstacle is a hole.
+     *
+     * @param i Obstacle index.
+     * @return True if hole.
+     */
+    public boolean isHole(int i) {
+        return mKind[i] == SLIDING_HOLE;
+    }
+
+    /**
+     * Returns a bar's width or a hole's radius.
+     *
+     * @param i Obstacle index.
+     * @return Width or radius.
+     */
+    public double getSize(int i) {
+        return mSize[i];
+    }
+
+    /**
+     * Returns a bar's point 1 x coordinate, or a hole's centre x coordinate, between its previous and current
+     * positions.
+     *
+     * @param i Obstacle index.
+     * @param alpha Interpolation factor, 0 for previous position through 1 for current position.
+     * @return X coordinate.
+     */
+    public double getX1(int i, double alpha) {
+        return mPrevX1[i] + (mX1[i] - mPrevX1[i]) * alpha;
+    }
+
+    /**
+     * Returns a bar's point 1 y coordinate, or a hole's centre y coordinate, between its previous and current
+     * positions.
+     *
+     * @param i Obstacle index.
+     * @param alpha Interpolation factor, 0 for previous position through 1 for current position.
+     * @return Y coordinate.
+     */
+    public double getY1(int i, double alpha) {
+        return mPrevY1[i] + (mY1[i] - mPrevY1[i]) * alpha;
+    }
+
+    /**
+     * Returns a bar's point 2 x coordinate between its previous and current positions.
+     *
+     * @param i Obstacle index.
+     * @param alpha Interpolation factor, 0 for previous position through 1 for current position.
+     * @return X coordinate.
+     */
+    public double getX2(int i, double alpha) {
+        return mPrevX2[i] + (mX2[i] - mPrevX2[i]) * alpha;
+    }
+
+    /**
+     * Returns a bar's point 2 y coordinate between its previous and current positions.
+     *
+     * @param i Obstacle index.
+     * @param alpha Interpolation factor, 0 for previous position through 1 for current position.
+     * @return Y coordinate.
+     */
+    public double getY2(int i, double alpha) {
+        return mPrevY2[i] + (mY2[i] - mPrevY2[i]) * alpha;
+    }
+
+    /**
+     * Returns the height of the obstacle tree.
+     *
+     * @return Tree height.
+     */
+    public int getTreeHeight() {
+        return mTree.getHeight();
+    }
+
+    /**
+     * Collects the obstacles that may overlap a box.
+     *
+     * @param left Left edge of the box.
+     * @param top Top edge of the box.
+     * @param right Right edge of the box.
+     * @param bottom Bottom edge of the box.
+     * @return Number of obstacles found.
+     */
+    int query(double left, double top, double right, double bottom) {
+        return mTree.query(left, top, right, bottom);
+    }
+
+    /**
+     * Returns an obstacle index from the last query.
+     *
+     * @param i Position in the query results.
+     * @return Obstacle index.
+     */
+    int result(int i) {
+        return mTree.result(i);
+    }
+
+    /**
+     * Finds when a marble moving in a straight line over the last tick first touches an obstacle moving over the same
+     * tick, so neither a fast marble nor a fast obstacle can pass through the other.
+     * The marble is swept against the obstacle where it was at the start of the tick, moving relative to it. A
+     * rotating bar is taken to move as its point nearest the marble does, which is close for the small turn of a
+     * tick. The contact normal, how far the marble already overlapped at the start, and the obstacle's velocity at
+     * the contact are kept for the getContact methods.
+     *
+     * @param i Obstacle index.
+     * @param sweep Swept collision test to use.
+     * @param x Marble's centre x coordinate at the start of the tick.
+     * @param y Marble's centre y coordinate at the start of the tick.
+     * @param r Marble's radius.
+     * @param dX Marble's movement over the tick in x plane.
+     * @param dY Marble's movement over the tick in y plane.
+     * @return Fraction of the tick before the hit, from 0 to 1, or SweptCircle.NO_HIT.
+     */
+    double sweep(int i, SweptCircle sweep, double x, double y, double r, double dX, double dY) {
+        // Closest point on the obstacle's centre line at the start of the tick, and how far that point moved
+        double sX = mPrevX2[i] - mPrevX1[i], sY = mPrevY2[i] - mPrevY1[i];
+        double lengthSquared = sX * sX + sY * sY;
+        double t = lengthSquared > 0 ? ((x - mPrevX1[i]) * sX + (y - mPrevY1[i]) * sY) / lengthSquared : 0;
+        t = Math.max(0, Math.min(1, t));
+        double pX = mPrevX1[i] + sX * t, pY = mPrevY1[i] + sY * t;
+        double stepX = mX1[i] + (mX2[i] - mX1[i]) * t - pX, stepY = mY1[i] + (mY2[i] - mY1[i]) * t - pY;
+
+        double reach = mKind[i] == SLIDING_HOLE ? mSize[i] + r : mSize[i] / 2 + r;
+        double hit;
+        if (lengthSquared > 0) {
+            double length = Math.sqrt(lengthSquared);
+            hit = sweep.againstCapsule(mPrevX1[i], mPrevY1[i], sX / length, sY / length, length,
+                    WallObject.BOTH_CAPS, reach, x, y, dX - stepX, dY - stepY);
+        }
+        else {
+            hit = sweep.againstCircle(pX, pY, reach, x, y, dX - stepX, dY - stepY);
+        }
+        if (hit == SweptCircle.NO_HIT) {
+            return hit;
+        }
+        mNormalX = sweep.getNormalX();
+        mNormalY = sweep.getNormalY();
+        mDepth = hit > 0 ? 0 : Math.max(0, reach - Math.sqrt((x - pX) * (x - pX) + (y - pY) * (y - pY)));
+        mSurfaceVX = mLastDT > 0 ? stepX / mLastDT : 0;
+        mSurfaceVY = mLastDT > 0 ? stepY / mLastDT : 0;
+        return hit;
+    }
+
+    /**
+     * Returns the furthest any point of an obstacle moved in the last tick, in either plane.
+     *
+     * @return Distance.
+     */
+    double getMaxStep() {
+        return mMaxStep;
+    }
+
+    /**
+     * Returns the x component of the last contact's normal, pointing from the bar to the marble.
+     *
+     * @return Normal x component.
+     */
+    double getContactNormalX() {
+        return mNormalX;
+    }
+
+    /**
+     * Returns the y component of the last contact's normal, pointing from the bar to the marble.
+     *
+     * @return Normal y component.
+     */
+    double getContactNormalY() {
+        return mNormalY;
+    }
+
+    /**
+     * Returns how far the marble already overlapped the bar at the start of the tick, at the last contact.
+     *
+     * @return Depth.
+     */
+    double getContactDepth() {
+        return mDepth;
+    }
+
+    /**
+     * Returns the bar's x velocity at the last contact point, in distance per second.
+     *
+     * @return Surface x velocity.
+     */
+    double getContactVelocityX() {
+        return mSurfaceVX;
+    }
+
+    /**
+     * Returns the bar's y velocity at the last contact point, in distance per second.
+     *
+     * @return Surface y velocity.
+     */
+    double getContactVelocityY() {
+        return mSurfaceVY;
+    }
+
+    /**
+     * Returns the left edge of an obstacle's bounding box.
+     *
+     * @param i Obstacle index.
+     * @return Left edge.
+     */
+    private double getLeft(int i) {
+        return Math.min(mX1[i], mX2[i]) - extent(i);
+    }
+
+    /**
+     * Returns the top edge of an obstacle's bounding box.
+     *
+     * @param i Obstacle index.
+     * @return Top edge.
+     */
+    private double getTop(int i) {
+        return Math.min(mY1[i], mY2[i]) - extent(i);
+    }
+
+    /**
+     * Returns the right edge of an obstacle's bounding box.
+     *
+     * @param i Obstacle index.
+     * @return Right edge.
+     */
+    private double getRight(int i) {
+        return Math.max(mX1[i], mX2[i]) + extent(i);
+    }
+
+    /**
+     * Returns the bottom edge of an obstacle's bounding box.
+     *
+     * @param i Obstacle index.
+     * @return Bottom edge.
+     */
+    private double getBottom(int i) {
+        return Math.max(mY1[i], mY2[i]) + extent(i);
+    }
+
+    /**
+     * Returns how far an obstacle reaches beyond its points: half a bar's width or a hole's radius.
+     *
+     * @param i Obstacle index.
+     * @return Extent.
+     */
+    private double extent(int i) {
+        return mKind[i] == SLIDING_HOLE ? mSize[i] : mSize[i] / 2;
+    }
+
+    /**
+     * Grows the obstacle arrays.
+     *
+     * @param capacity New capacity.
+     */
+    private void grow(int capacity) {
+        mKind = Arrays.copyOf(mKind, capacity);
+        mBaseX1 = Arrays.copyOf(mBaseX1, capacity);
+        mBaseY1 = Arrays.copyOf(mBaseY1, capacity);
+        mBaseX2 = Arrays.copyOf(mBaseX2, capacity);
+        mBaseY2 = Arrays.copyOf(mBaseY2, capacity);
+        mOffsetX = Arrays.copyOf(mOffsetX, capacity);
+        mOffsetY = Arrays.copyOf(mOffsetY, capacity);
+        mPeriod = Arrays.copyOf(mPeriod, capacity);
+        mSize = Arrays.copyOf(mSize, capacity);
+        mX1 = Arrays.copyOf(mX1, capacity);
+        mY1 = Arrays.copyOf(mY1, capacity);
+        mX2 = Arrays.copyOf(mX2, capacity);
+        mY2 = Arrays.copyOf(mY2, capacity);
+        mPrevX1 = Arrays.copyOf(mPrevX1, capacity);
+        mPrevY1 = Arrays.copyOf(mPrevY1, capacity);
+        mPrevX2 = Arrays.copyOf(mPrevX2, capacity);
+        mPrevY2 = Arrays.copyOf(mPrevY2, capacity);
+        mLeaf = Arrays.copyOf(mLeaf, capacity);
+    }
+}
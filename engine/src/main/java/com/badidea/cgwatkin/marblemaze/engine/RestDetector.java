@@ -0,0 +1,189 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rest Detector class
+ *
+ * Decides when the simulation can sleep: every marble in play has stayed within a small distance of where it came
+ * to rest, and gravity has stayed within a small tilt of where it was, for a number of ticks in a row. Once asleep,
+ * ticking would not visibly move anything, so the game loop can stop until a tilt beyond that threshold wakes it.
+ * Distance from where a marble came to rest is used rather than movement per tick, so sensor jitter rocking a
+ * marble in place still counts as rest, while a slow creep does not.
+ * Worlds with moving obstacles never sleep.
+ *
+ * Ticks are counted on the physics thread, which must not tick while asleep; the wake test may run on the sensor
+ * thread.
+ */
+public class RestDetector {
+
+    /**
+     * Most a marble may drift from where it came to rest and still count as at rest, in pixels.
+     */
+    private final double mMaxDrift;
+
+    /**
+     * Most gravity may change in either plane, from where it was when the marbles came to rest, before it counts
+     * as a tilt.
+     */
+    private final double mMaxTilt;
+
+    /**
+     * Ticks at rest needed to sleep, or 0 to never sleep.
+     */
+    private final int mTicks;
+
+    /**
+     * Ticks at rest so far.
+     */
+    private int mRestTicks;
+
+    /**
+     * Gravity when the marbles came to rest.
+     */
+    private double mGX, mGY;
+
+    /**
+     * Where each marble came to rest.
+     */
+    private double[] mRestX = new double[0], mRestY = new double[0];
+
+    /**
+     * Whether the simulation is asleep.
+     */
+    private final AtomicBoolean mAsleep = new AtomicBoolean();
+
+    /**
+     * Constructor
+     *
+     * @param maxDrift Most a marble may drift from where it came to rest and still count as at rest, in pixels.
+     * @param maxTilt Most gravity may change in either plane before it counts as a tilt.
+     * @param ticks Ticks at rest needed to sleep, or 0 to never sleep.
+     */
+    public RestDetector(double maxDrift, double maxTilt, int ticks) {
+        mMaxDrift = maxDrift;
+        mMaxTilt = maxTilt;
+        mTicks = ticks;
+    }
+
+    /**
+     * Counts a tick, falling asleep once the marbles and gravity have been still for long enough.
+     *
+     * @param marbles The marbles, after the tick.
+     * @param world The world, for its moving obstacles.
+     * @param gX Gravity in x plane used for the tick.
+     * @param gY Gravity in y plane used for the tick.
+     * @return True if the simulation has just fallen asleep.
+     */
+    public boolean update(MarbleSet marbles, World world, double gX, double gY) {
+        if (mTicks <= 0 || world.getObstacles().getCount() > 0) {
+            return false;
+        }
+        if (mRestTicks == 0 || isTilted(gX, gY) || !isStill(marbles)) {
+            // Start counting again from here
+            mGX = gX;
+            mGY = gY;
+            markRest(marbles);
+            mRestTicks = 1;
+            return false;
+        }
+        if (++mRestTicks < mTicks) {
+            return false;
+        }
+        // Counted again from scratch after waking
+        mRestTicks = 0;
+        mAsleep.set(true);
+        return true;
+    }
+
+    /**
+     * Records where each marble is as where it came to rest.
+     *
+     * @param marbles The marbles.
+     */
+    private void markRest(MarbleSet marbles) {
+        if (mRestX.length != marbles.getCount()) {
+            mRestX = new double[marbles.getCount()];
+            mRestY = new double[marbles.getCount()];
+        }
+        for (int i = 0; i < marbles.getCount(); i++) {
+            mRestX[i] = marbles.getMarble(i).getX(1);
+            mRestY[i] = marbles.getMarble(i).getY(1);
+        }
+    }
+
+    /**
+     * Tests if every marble in play is still within the threshold of where it came to rest.
+     *
+     * @param marbles The marbles.
+     * @return True if all are still.
+     */
+    private boolean isStill(MarbleSet marbles) {
+        if (mRestX.length != marbles.getCount()) {
+            return false;
+        }
+        for (int i = 0; i < marbles.getCount(); i++) {
+            Marble marble = marbles.getMarble(i);
+            double drift = Math.abs(marble.getX(1) - mRestX[i]) + Math.abs(marble.getY(1) - mRestY[i]);
+            if (marbles.isActive(i) && drift > mMaxDrift) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests if gravity has moved beyond the threshold from where it was when the marbles came to rest.
+     *
+     * @param gX Gravity in x plane.
+     * @param gY Gravity in y plane.
+     * @return True if tilted.
+     */
+    private boolean isTilted(double gX, double gY) {
+        return Math.abs(gX - mGX) > mMaxTilt || Math.abs(gY - mGY) > mMaxTilt;
+    }
+
+    /**
+     * Returns true if the simulation is asleep.
+     *
+     * @return True if asleep.
+     */
+    public boolean isAsleep() {
+        return mAsleep.get();
+    }
+
+    /**
+     * Wakes the simulation if it is asleep and gravity has tilted beyond the threshold.
+     *
+     * @param gX Gravity in x plane.
+     * @param gY Gravity in y plane.
+     * @return True if this call woke it.
+     */
+    public boolean wakeIfTilted(double gX, double gY) {
+        return mAsleep.get() && isTilted(gX, gY) && wake();
+    }
+
+    /**
+     * Forgets the rest state and wakes the simulation, for a new world whose marbles have nothing to do with where
+     * the last world's came to rest. Call only where ticks are counted, or while none can be.
+     *
+     * @return True if it was asleep.
+     */
+    public boolean reset() {
+        mRestTicks = 0;
+        mGX = 0;
+        mGY = 0;
+        mRestX = new double[0];
+        mRestY = new double[0];
+        return wake();
+    }
+
+    /**
+     * Wakes the simulation.
+     *
+     * @return True if it was asleep.
+     */
+    public boolean wake() {
+        return mAsleep.compareAndSet(true, false);
+    }
+}
@@ -0,0 +1,242 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+/**
+ * Snapshot class
+ *
+ * The moving parts of the world after one physics tick: each marble's previous and current positions, and each
+ * moving obstacle's, so a renderer can draw between them without touching the live marbles or world.
+ * Snapshots are only filled in by a SnapshotBuffer, before they are published, and are read-only once a reader has
+ * them. Arrays are kept and reused from tick to tick, so filling one allocates nothing once it has grown to fit.
+ */
+public class Snapshot {
+
+    /**
+     * When the tick that made this snapshot finished, in System.nanoTime() nanoseconds.
+     */
+    private long mTime;
+
+    /**
+     * Number of marbles and obstacles held.
+     */
+    private int mMarbleCount, mObstacleCount;
+
+    /**
+     * Marble previous and current positions, and radii.
+     */
+    private float[] mMarblePrevX = new float[0], mMarblePrevY = new float[0], mMarbleX = new float[0],
+            mMarbleY = new float[0], mMarbleR = new float[0];
+
+    /**
+     * Whether each marble is still in play.
+     */
+    private boolean[] mActive = new boolean[0];
+
+    /**
+     * Obstacle end points, or hole centres in point 1, at their previous and current positions.
+     */
+    private float[] mPrevX1 = new float[0], mPrevY1 = new float[0], mPrevX2 = new float[0], mPrevY2 = new float[0],
+            mX1 = new float[0], mY1 = new float[0], mX2 = new float[0], mY2 = new float[0];
+
+    /**
+     * Obstacle bar widths or hole radii.
+     */
+    private float[] mSize = new float[0];
+
+    /**
+     * Whether each obstacle is a hole.
+     */
+    private boolean[] mHole = new boolean[0];
+
+    /**
+     * Copies the moving parts of the world into this snapshot.
+     *
+     * @param marbles The marbles.
+     * @param world The world, for its moving obstacles.
+     * @param time When the tick finished, in System.nanoTime() nanoseconds.
+     */
+    void capture(MarbleSet marbles, World world, long time) {
+        mTime = time;
+        mMarbleCount = marbles.getCount();
+        if (mMarbleX.length < mMarbleCount) {
+            mMarblePrevX = new float[mMarbleCount];
+            mMarblePrevY = new float[mMarbleCount];
+            mMarbleX = new float[mMarbleCount];
+            mMarbleY = new float[mMarbleCount];
+            mMarbleR = new float[mMarbleCount];
+            mActive = new boolean[mMarbleCount];
+        }
+        for (int i = 0; i < mMarbleCount; i++) {
+            Marble marble = marbles.getMarble(i);
+            mMarblePrevX[i] = (float) marble.getX(0);
+            mMarblePrevY[i] = (float) marble.getY(0);
+            mMarbleX[i] = (float) marble.getX(1);
+            mMarbleY[i] = (float) marble.getY(1);
+            mMarbleR[i] = (float) marble.getR();
+            mActive[i] = marbles.isActive(i);
+        }
+
+        Obstacles obstacles = world.getObstacles();
+        mObstacleCount = obstacles.getCount();
+        if (mX1.length < mObstacleCount) {
+            mPrevX1 = new float[mObstacleCount];
+            mPrevY1 = new float[mObstacleCount];
+            mPrevX2 = new float[mObstacleCount];
+            mPrevY2 = new float[mObstacleCount];
+            mX1 = new float[mObstacleCount];
+            mY1 = new float[mObstacleCount];
+            mX2 = new float[mObstacleCount];
+            mY2 = new float[mObstacleCount];
+            mSize = new float[mObstacleCount];
+            mHole = new boolean[mObstacleCount];
+        }
+        for (int i = 0; i < mObstacleCount; i++) {
+            mPrevX1[i] = (float) obstacles.getX1(i, 0);
+            mPrevY1[i] = (float) obstacles.getY1(i, 0);
+            mX1[i] = (float) obstacles.getX1(i, 1);
+            mY1[i] = (float) obstacles.getY1(i, 1);
+            mHole[i] = obstacles.isHole(i);
+            if (!mHole[i]) {
+                mPrevX2[i] = (float) obstacles.getX2(i, 0);
+                mPrevY2[i] = (float) obstacles.getY2(i, 0);
+                mX2[i] = (float) obstacles.getX2(i, 1);
+                mY2[i] = (float) obstacles.getY2(i, 1);
+            }
+            mSize[i] = (float) obstacles.getSize(i);
+        }
+    }
+
+    /**
+     * Returns when the tick that made this snapshot finished.
+     *
+     * @return Time in System.nanoTime() nanoseconds, 0 for a snapshot never filled in.
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    /**
+     * Returns the number of marbles.
+     *
+     * @return Marble count.
+     */
+    public int getMarbleCount() {
+        return mMarbleCount;
+    }
+
+    /**
+     * Returns a marble's x coordinate, between its previous and current positions.
+     *
+     * @param i Marble index.
+     * @param alpha Interpolation factor, 0 for previous position through 1 for current position.
+     * @return X coordinate.
+     */
+    public float getMarbleX(int i, float alpha) {
+        return mMarblePrevX[i] + (mMarbleX[i] - mMarblePrevX[i]) * alpha;
+    }
+
+    /**
+     * Returns a marble's y coordinate, between its previous and current positions.
+     *
+     * @param i Marble index.
+     * @param alpha Interpolation factor, 0 for previous position through 1 for current position.
+     * @return Y coordinate.
+     */
+    public float getMarbleY(int i, float alpha) {
+        return mMarblePrevY[i] + (mMarbleY[i] - mMarblePrevY[i]) * alpha;
+    }
+
+    /**
+     * Returns a marble's radius.
+     *
+     * @param i Marble index.
+     * @return Radius.
+     */
+    public float getMarbleR(int i) {
+        return mMarbleR[i];
+    }
+
+    /**
+     * Returns true if a marble is still in play.
+     *
+     * @param i Marble index.
+     * @return True if the marble has not reached a goal or fallen in a hole.
+     */
+    public boolean isActive(int i) {
+        return mActive[i];
+    }
+
+    /**
+     * Returns the number of moving obstacles.
+     *
+     * @return Obstacle count.
+     */
+    public int getObstacleCount() {
+        return mObstacleCount;
+    }
+
+    /**
+     * Returns true if an obstacle is a sliding hole.
+     *
+     * @param i Obstacle index.
+     * @return True for a hole, false for a bar.
+     */
+    public boolean isHole(int i) {
+        return mHole[i];
+    }
+
+    /**
+     * Returns a bar's width or a hole's radius.
+     *
+     * @param i Obstacle index.
+     * @return Width or radius.
+     */
+    public float getSize(int i) {
+        return mSize[i];
+    }
+
+    /**
+     * Returns a bar's point 1 x coordinate, or a hole's centre x coordinate, between its previous and current
+     * positions.
+     *
+     * @param i Obstacle index.
+     * @param alpha Interpolation factor, 0 for previous position through 1 for current position.
+     * @return X coordinate.
+     */
+    public float getX1(int i, float alpha) {
+        return mPrevX1[i] + (mX1[i] - mPrevX1[i]) * alpha;
+    }
+
+    /**
+     * Returns a bar's point 1 y coordinate, or a hole's centre y coordinate, between its previous and current
+     * positions.
+     *
+     * @param i Obstacle index.
+     * @param alpha Interpolation factor, 0 for previous position through 1 for current position.
+     * @return Y coordinate.
+     */
+    public float getY1(int i, float alpha) {
+        return mPrevY1[i] + (mY1[i] - mPrevY1[i]) * alpha;
+    }
+
+    /**
+     * Returns a bar's point 2 x coordinate between its previous and current positions.
+     *
+     * @param i Obstacle index.
+     * @param alpha Interpolation factor, 0 for previous position through 1 for current position.
+     * @return X coordinate.
+     */
+    public float getX2(int i, float alpha) {
+        return mPrevX2[i] + (mX2[i] - mPrevX2[i]) * alpha;
+    }
+
+    /**
+     * Returns a bar's point 2 y coordinate between its previous and current positions.
+     *
+     * @param i Obstacle index.
+     * @param alpha Interpolation factor, 0 for previous position through 1 for current position.
+     * @return Y coordinate.
+     */
+    public float getY2(int i, float alpha) {
+        return mPrevY2[i] + (mY2[i] - mPrevY2[i]) * alpha;
+    }
+}
@@ -0,0 +1,99 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Snapshot Buffer class
+ *
+ * Hands snapshots from one writer thread to one reader thread without locks, through three snapshots:
+ *
+ * - The writer fills its back snapshot, then swaps it with the middle one and marks the middle as fresh.
+ * - The reader, if the middle is fresh, swaps it with its front snapshot, then reads the front.
+ *
+ * Both swaps are a single atomic exchange of a word holding the middle's index and fresh flag, so neither side ever
+ * waits for the other. The writer never touches the snapshot being read, so a frame never tears, and the reader
+ * always gets the newest complete snapshot; older unread ones are overwritten.
+ *
+ * Only one thread may publish at a time, and only one may acquire at a time.
+ */
+public class SnapshotBuffer {
+
+    /**
+     * Bits of the middle word holding the middle snapshot's index.
+     */
+    private static final int INDEX = 3;
+
+    /**
+     * Bit of the middle word set when the middle snapshot was published and not yet acquired.
+     */
+    private static final int FRESH = 4;
+
+    /**
+     * The three snapshots.
+     */
+    private final Snapshot[] mSnapshots = {new Snapshot(), new Snapshot(), new Snapshot()};
+
+    /**
+     * Index of the middle snapshot, with the fresh flag.
+     */
+    private final AtomicInteger mMiddle = new AtomicInteger(1);
+
+    /**
+     * Index of the writer's back snapshot. Only touched by the writer.
+     */
+    private int mBack = 0;
+
+    /**
+     * Index of the reader's front snapshot. Only touched by the reader.
+     */
+    private int mFront = 2;
+
+    /**
+     * Number of snapshots published and acquired.
+     */
+    private final AtomicInteger mPublished = new AtomicInteger(), mAcquired = new AtomicInteger();
+
+    /**
+     * Captures the marbles and moving obstacles into the back snapshot and publishes it.
+     *
+     * @param marbles The marbles.
+     * @param world The world, for its moving obstacles.
+     * @param time When the tick finished, in System.nanoTime() nanoseconds.
+     */
+    public void publish(MarbleSet marbles, World world, long time) {
+        mSnapshots[mBack].capture(marbles, world, time);
+        mBack = mMiddle.getAndSet(mBack | FRESH) & INDEX;
+        mPublished.lazySet(mPublished.get() + 1);
+    }
+
+    /**
+     * Returns the newest published snapshot. It stays valid until the next call.
+     *
+     * @return The snapshot, empty if none has been published.
+     */
+    public Snapshot acquire() {
+        if ((mMiddle.get() & FRESH) != 0) {
+            mFront = mMiddle.getAndSet(mFront) & INDEX;
+            mAcquired.lazySet(mAcquired.get() + 1);
+        }
+        return mSnapshots[mFront];
+    }
+
+    /**
+     * Returns the number of snapshots published.
+     *
+     * @return Published count.
+     */
+    public int getPublished() {
+        return mPublished.get();
+    }
+
+    /**
+     * Returns the number of snapshots the reader picked up; the rest were overwritten before being read.
+     *
+     * @return Acquired count.
+     */
+    public int getAcquired() {
+        return mAcquired.get();
+    }
+}
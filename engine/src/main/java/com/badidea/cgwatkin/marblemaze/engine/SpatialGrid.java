@@ -0,0 +1,193 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import java.util.Arrays;
+
+/**
+ * Spatial Grid class
+ *
+ * Static uniform-grid broadphase for the objects in a world.
+ * Buckets each object by the cells its bounding box overlaps, so collision queries only need to test the objects
+ * near the marble rather than every object in the world.
+ */
+class SpatialGrid {
+
+    /**
+     * Cell size in pixels and grid dimensions in cells.
+     */
+    private final int mCellSize, mColumns, mRows;
+
+    /**
+     * Index of each cell's first entry in mCellItems; cell i spans mCellStart[i] to mCellStart[i + 1].
+     */
+    private final int[] mCellStart;
+
+    /**
+     * Object ids for every cell, packed one cell after another.
+     */
+    private final int[] mCellItems;
+
+    /**
+     * Query number in which each object was last collected, used to skip duplicates without clearing.
+     */
+    private final int[] mStamp;
+
+    /**
+     * The current query number.
+     */
+    private int mQuery;
+
+    /**
+     * Object ids found by the last query, sorted ascending.
+     */
+    private final int[] mResults;
+
+    /**
+     * Number of valid entries in mResults.
+     */
+    private int mResultCount;
+
+    /**
+     * Constructor
+     *
+     * Buckets all objects into cells. Objects outside the width and height are clamped into the edge cells.
+     *
+     * @param world The world.
+     * @param width Width of the area covered by the grid.
+     * @param height Height of the area covered by the grid.
+     * @param cellSize Width and height of each cell.
+     */
+    SpatialGrid(World world, int width, int height, int cellSize) {
+        int n = world.size();
+        mCellSize = Math.max(1, cellSize);
+        mColumns = Math.max(1, (width + mCellSize - 1) / mCellSize);
+        mRows = Math.max(1, (height + mCellSize - 1) / mCellSize);
+        mCellStart = new int[mColumns * mRows + 1];
+        mStamp = new int[n];
+        mResults = new int[n];
+
+        // Count entries per cell, then convert counts to start offsets
+        for (int id = 0; id < n; id++) {
+            int c1 = column(world.getLeft(id)), c2 = column(world.getRight(id));
+            int r1 = row(world.getTop(id)), r2 = row(world.getBottom(id));
+            for (int r = r1; r <= r2; r++) {
+                for (int c = c1; c <= c2; c++) {
+                    mCellStart[r * mColumns + c + 1]++;
+                }
+            }
+        }
+        for (int i = 1; i < mCellStart.length; i++) {
+            mCellStart[i] += mCellStart[i - 1];
+        }
+
+        // Fill cells in id order, so each cell's entries are already sorted
+        mCellItems = new int[mCellStart[mCellStart.length - 1]];
+        int[] fill = Arrays.copyOf(mCellStart, mCellStart.length - 1);
+        for (int id = 0; id < n; id++) {
+            int c1 = column(world.getLeft(id)), c2 = column(world.getRight(id));
+            int r1 = row(world.getTop(id)), r2 = row(world.getBottom(id));
+            for (int r = r1; r <= r2; r++) {
+                for (int c = c1; c <= c2; c++) {
+                    mCellItems[fill[r * mColumns + c]++] = id;
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the objects in every cell touched by the given box.
+     *
+     * Results are de-duplicated and sorted into id order, so testing them in turn gives the same outcome as
+     * testing every object in the world.
+     *
+     * @param left Left edge of the box.
+     * @param top Top edge of the box.
+     * @param right Right edge of the box.
+     * @param bottom Bottom edge of the box.
+     * @return Number of objects found.
+     */
+    int query(double left, double top, double right, double bottom) {
+        mResultCount = 0;
+        if (mStamp.length == 0) {
+            return 0;
+        }
+        if (++mQuery == 0) {
+            Arrays.fill(mStamp, 0);
+            mQuery = 1;
+        }
+        int c1 = column(left), c2 = column(right);
+        int r1 = row(top), r2 = row(bottom);
+        for (int r = r1; r <= r2; r++) {
+            for (int c = c1; c <= c2; c++) {
+                int cell = r * mColumns + c;
+                for (int i = mCellStart[cell]; i < mCellStart[cell + 1]; i++) {
+                    int id = mCellItems[i];
+                    if (mStamp[id] != mQuery) {
+                        mStamp[id] = mQuery;
+                        mResults[mResultCount++] = id;
+                    }
+                }
+            }
+        }
+        if (r1 != r2 || c1 != c2) {
+            Arrays.sort(mResults, 0, mResultCount);
+        }
+        return mResultCount;
+    }
+
+    /**
+     * Returns a key for the cells a box touches. Two boxes with the same key get the same query results.
+     *
+     * @param left Left edge of the box.
+     * @param top Top edge of the box.
+     * @param right Right edge of the box.
+     * @param bottom Bottom edge of the box.
+     * @return The first and last column and row packed into 16 bits each, or -1 if the grid is too large to pack.
+     */
+    long cellRange(double left, double top, double right, double bottom) {
+        if (mColumns > 0xffff || mRows > 0xffff) {
+            return -1;
+        }
+        return (long) column(left) << 48 | (long) row(top) << 32 | (long) column(right) << 16 | row(bottom);
+    }
+
+    /**
+     * Returns the object id at the given position in the last query's results.
+     *
+     * @param i Position in the results.
+     * @return Object id.
+     */
+    int result(int i) {
+        return mResults[i];
+    }
+
+    /**
+     * Returns the column containing an x coordinate, clamped to the grid.
+     *
+     * @param x The x coordinate.
+     * @return The column.
+     */
+    private int column(double x) {
+        return clamp((int) Math.floor(x / mCellSize), mColumns);
+    }
+
+    /**
+     * Returns the row containing a y coordinate, clamped to the grid.
+     *
+     * @param y The y coordinate.
+     * @return The row.
+     */
+    private int row(double y) {
+        return clamp((int) Math.floor(y / mCellSize), mRows);
+    }
+
+    /**
+     * Clamps a cell index to the range 0 to count - 1.
+     *
+     * @param i The cell index.
+     * @param count Number of cells.
+     * @return The clamped index.
+     */
+    private static int clamp(int i, int count) {
+        return i < 0 ? 0 : (i >= count ? count - 1 : i);
+    }
+}
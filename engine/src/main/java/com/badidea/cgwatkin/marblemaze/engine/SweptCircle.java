@@ -0,0 +1,152 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+/**
+ * Swept Circle class
+ *
+ * Finds when a moving circle first touches a wall or a circle, as a fraction of its movement, so a fast marble
+ * cannot step over a wall between ticks.
+ * The marble is treated as a point and the shape it hits is grown by its radius: a wall becomes a capsule, its
+ * centre line with rounded ends, and a circle a larger circle.
+ * The contact normal of the last hit found is kept for the getNormal methods.
+ */
+class SweptCircle {
+
+    /**
+     * Returned when there is no hit within the movement.
+     */
+    static final double NO_HIT = Double.POSITIVE_INFINITY;
+
+    /**
+     * Contact normal of the last hit, pointing from the object to the marble.
+     */
+    private double mNormalX, mNormalY;
+
+    /**
+     * Finds when a moving point first comes within a distance of a segment.
+     *
+     * A point already that close hits at once if it is moving closer, and is let go if it is moving away, so a
+     * marble resting against a wall can always leave it. A point exactly on the segment always hits at once, with
+     * the normal across the segment against its movement.
+     *
+     * @param x1 Segment point 1 x coordinate.
+     * @param y1 Segment point 1 y coordinate.
+     * @param uX Segment unit direction x component.
+     * @param uY Segment unit direction y component.
+     * @param length Segment length.
+     * @param caps End caps to test, as WallObject cap flags; a cap covered by another wall need not be.
+     * @param radius Distance from the segment, the wall's half width plus the marble's radius.
+     * @param x Start x coordinate.
+     * @param y Start y coordinate.
+     * @param dX Movement in x plane.
+     * @param dY Movement in y plane.
+     * @return Fraction of the movement before the hit, from 0 to 1, or NO_HIT.
+     */
+    double againstCapsule(double x1, double y1, double uX, double uY, double length, byte caps, double radius,
+                          double x, double y, double dX, double dY) {
+        // Already touching
+        double fX = x - x1, fY = y - y1;
+        double along = Math.max(0, Math.min(length, fX * uX + fY * uY));
+        double cX = fX - uX * along, cY = fY - uY * along;
+        double distanceSquared = cX * cX + cY * cY;
+        if (distanceSquared < radius * radius) {
+            double distance = Math.sqrt(distanceSquared);
+            if (distance == 0) {
+                // No side to push out to, so push back across the segment the way the point came
+                double sign = dX * -uY + dY * uX > 0 ? -1 : 1;
+                mNormalX = -uY * sign;
+                mNormalY = uX * sign;
+                return 0;
+            }
+            mNormalX = cX / distance;
+            mNormalY = cY / distance;
+            return dX * mNormalX + dY * mNormalY < 0 ? 0 : NO_HIT;
+        }
+
+        // Either long side; if it is missed, the first contact can only be on a cap
+        if (length > 0) {
+            double side = fX * -uY + fY * uX;
+            double approach = dX * -uY + dY * uX;
+            double sign = side > 0 ? 1 : -1;
+            if (approach * sign < 0) {
+                double t = (sign * radius - side) / approach;
+                if (t >= 0 && t <= 1) {
+                    double hit = (fX + dX * t) * uX + (fY + dY * t) * uY;
+                    if (hit >= 0 && hit <= length) {
+                        mNormalX = -uY * sign;
+                        mNormalY = uX * sign;
+                        return t;
+                    }
+                }
+            }
+        }
+        double t1 = (caps & WallObject.CAP_1) != 0 ? againstCircle(x1, y1, radius, x, y, dX, dY) : NO_HIT;
+        double normalX = mNormalX, normalY = mNormalY;
+        double t2 = (caps & WallObject.CAP_2) != 0
+                ? againstCircle(x1 + uX * length, y1 + uY * length, radius, x, y, dX, dY) : NO_HIT;
+        if (t1 <= t2) {
+            mNormalX = normalX;
+            mNormalY = normalY;
+            return t1;
+        }
+        return t2;
+    }
+
+    /**
+     * Finds when a moving point first comes within a distance of a centre.
+     * A point already that close hits at once, whichever way it is moving.
+     *
+     * @param cX Centre x coordinate.
+     * @param cY Centre y coordinate.
+     * @param radius Distance from the centre, the circle's radius plus the marble's radius.
+     * @param x Start x coordinate.
+     * @param y Start y coordinate.
+     * @param dX Movement in x plane.
+     * @param dY Movement in y plane.
+     * @return Fraction of the movement before the hit, from 0 to 1, or NO_HIT.
+     */
+    double againstCircle(double cX, double cY, double radius, double x, double y, double dX, double dY) {
+        double fX = x - cX, fY = y - cY;
+        double c = fX * fX + fY * fY - radius * radius;
+        if (c < 0) {
+            double distance = Math.sqrt(fX * fX + fY * fY);
+            mNormalX = distance > 0 ? fX / distance : 0;
+            mNormalY = distance > 0 ? fY / distance : 0;
+            return 0;
+        }
+        // Solve |f + d t| = radius for the first t, with b halved
+        double a = dX * dX + dY * dY;
+        double b = fX * dX + fY * dY;
+        if (a == 0 || b >= 0) {
+            return NO_HIT;
+        }
+        double discriminant = b * b - a * c;
+        if (discriminant < 0) {
+            return NO_HIT;
+        }
+        double t = (-b - Math.sqrt(discriminant)) / a;
+        if (t > 1) {
+            return NO_HIT;
+        }
+        mNormalX = (fX + dX * t) / radius;
+        mNormalY = (fY + dY * t) / radius;
+        return t;
+    }
+
+    /**
+     * Returns the x component of the last hit's normal.
+     *
+     * @return Normal x component.
+     */
+    double getNormalX() {
+        return mNormalX;
+    }
+
+    /**
+     * Returns the y component of the last hit's normal.
+     *
+     * @return Normal y component.
+     */
+    double getNormalY() {
+        return mNormalY;
+    }
+}
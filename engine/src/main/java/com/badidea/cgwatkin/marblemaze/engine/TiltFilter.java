@@ -0,0 +1,116 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+/**
+ * Tilt Filter class
+ *
+ * Smooths accelerometer samples with a one euro filter on each axis: a low-pass filter whose cutoff rises with how
+ * fast the tilt is changing, so a board held still does not jitter but a quick tilt is followed without lag.
+ * With a speed coefficient of 0 it is a plain low-pass filter at the minimum cutoff, and with a minimum cutoff of 0
+ * samples pass through unfiltered.
+ *
+ * Samples are timestamped, so batches of samples delivered together are filtered at the rate they were taken.
+ */
+public class TiltFilter {
+
+    /**
+     * Cutoff of the filter on the rate of change, in hertz.
+     */
+    private static final double DERIVATIVE_CUTOFF = 1;
+
+    /**
+     * Cutoff when the tilt is still, in hertz, and how much the cutoff rises per unit of rate of change.
+     */
+    private final double mMinCutoff, mBeta;
+
+    /**
+     * Filtered x and y values.
+     */
+    private double mX, mY;
+
+    /**
+     * Filtered rates of change of x and y, per second.
+     */
+    private double mDX, mDY;
+
+    /**
+     * Timestamp of the last sample in nanoseconds, or 0 if none since reset.
+     */
+    private long mTime;
+
+    /**
+     * Constructor
+     *
+     * @param minCutoff Cutoff when the tilt is still, in hertz, or 0 to pass samples through.
+     * @param beta Rise in cutoff per unit of rate of change per second, or 0 for a plain low-pass filter.
+     */
+    public TiltFilter(double minCutoff, double beta) {
+        mMinCutoff = minCutoff;
+        mBeta = beta;
+    }
+
+    /**
+     * Forgets past samples, so the next sample is taken as is.
+     */
+    public void reset() {
+        mTime = 0;
+    }
+
+    /**
+     * Adds a sample.
+     *
+     * @param x Sample x value.
+     * @param y Sample y value.
+     * @param time Sample timestamp in nanoseconds.
+     */
+    public void filter(double x, double y, long time) {
+        if (mMinCutoff <= 0 || mTime == 0) {
+            mX = x;
+            mY = y;
+            mDX = 0;
+            mDY = 0;
+            mTime = time;
+            return;
+        }
+        double dT = (time - mTime) / 1e9;
+        if (dT <= 0) {
+            // Out of order or repeated timestamp, nothing to filter against
+            return;
+        }
+        double derivativeAlpha = alpha(dT, DERIVATIVE_CUTOFF);
+        mDX += ((x - mX) / dT - mDX) * derivativeAlpha;
+        mDY += ((y - mY) / dT - mDY) * derivativeAlpha;
+        mX += (x - mX) * alpha(dT, mMinCutoff + mBeta * Math.abs(mDX));
+        mY += (y - mY) * alpha(dT, mMinCutoff + mBeta * Math.abs(mDY));
+        mTime = time;
+    }
+
+    /**
+     * Returns the smoothing factor of an exponential low-pass filter.
+     *
+     * @param dT Time since the last sample in seconds.
+     * @param cutoff Cutoff in hertz.
+     * @return Weight of the new sample, 0 to 1.
+     */
+    private static double alpha(double dT, double cutoff) {
+        double tau = 1 / (2 * Math.PI * cutoff);
+        return 1 / (1 + tau / dT);
+    }
+
+    /**
+     * Returns the filtered x value.
+     *
+     * @return X value.
+     */
+    public double getX() {
+        return mX;
+    }
+
+    /**
+     * Returns the filtered y value.
+     *
+     * @return Y value.
+     */
+    public double getY() {
+        return mY;
+    }
+}
@@ -0,0 +1,375 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+/**
+ * Wall Object class
+ *
+ * For walls in the world.
+ * Marble cannot pass through these.
+ *
+ * Implements World Object interface.
+ */
+public class WallObject implements WorldObject {
+
+    /**
+     * End cap flags: the rounded ends at point 1 and point 2 that the marble can hit.
+     */
+    static final byte CAP_1 = 1, CAP_2 = 2, BOTH_CAPS = CAP_1 | CAP_2;
+
+    /**
+     * Line end coordinates.
+     */
+    private int mX1, mY1, mX2, mY2, mW;
+
+    /**
+     * Unit direction from point 1 to point 2, and length, worked out once so collision tests are only
+     * multiply-adds.
+     */
+    private final double mUX, mUY, mLength;
+
+    /**
+     * Bounding box, including the wall's width.
+     */
+    private final int mLeft, mTop, mRight, mBottom;
+
+    /**
+     * End caps the marble can hit; a cap inside another wall is left out.
+     */
+    private final byte mCaps;
+
+    /**
+     * Constructor
+     *
+     * Walls may lie at any angle.
+     *
+     * @param x1 Point 1 x coordinate.
+     * @param y1 Point 1 y coordinate.
+     * @param x2 Point 2 x coordinate.
+     * @param y2 Point 2 y coordinate.
+     * @param w Wall width in pixels.
+     */
+    public WallObject(int x1, int y1, int x2, int y2, int w) {
+        this(x1, y1, x2, y2, w, BOTH_CAPS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param x1 Point 1 x coordinate.
+     * @param y1 Point 1 y coordinate.
+     * @param x2 Point 2 x coordinate.
+     * @param y2 Point 2 y coordinate.
+     * @param w Wall width in pixels.
+     * @param caps End caps the marble can hit, CAP_1 and CAP_2 flags.
+     */
+    WallObject(int x1, int y1, int x2, int y2, int w, byte caps) {
+        mX1 = x1;
+        mY1 = y1;
+        mX2 = x2;
+        mY2 = y2;
+        mW = w;
+        mLength = Math.hypot(x2 - x1, y2 - y1);
+        mUX = mLength > 0 ? (x2 - x1) / mLength : 0;
+        mUY = mLength > 0 ? (y2 - y1) / mLength : 0;
+        mLeft = Math.min(x1, x2) - w / 2;
+        mTop = Math.min(y1, y2) - w / 2;
+        mRight = Math.max(x1, x2) + w / 2;
+        mBottom = Math.max(y1, y2) + w / 2;
+        mCaps = caps;
+    }
+
+    /**
+     * Writes a wall's drawn line end points, extended along the wall by half its width to square the corners, into
+     * a line buffer.
+     *
+     * @param x1 Point 1 x coordinate.
+     * @param y1 Point 1 y coordinate.
+     * @param x2 Point 2 x coordinate.
+     * @param y2 Point 2 y coordinate.
+     * @param uX Unit direction x component.
+     * @param uY Unit direction y component.
+     * @param w Wall width in pixels.
+     * @param lines The line buffer, four coordinates per line.
+     * @param offset Index to write the four coordinates at.
+     * @return Index after the written coordinates.
+     */
+    static int packLine(int x1, int y1, int x2, int y2, double uX, double uY, int w, float[] lines, int offset) {
+        int halfW = w / 2;
+        lines[offset] = (float) (x1 - uX * halfW);
+        lines[offset + 1] = (float) (y1 - uY * halfW);
+        lines[offset + 2] = (float) (x2 + uX * halfW);
+        lines[offset + 3] = (float) (y2 + uY * halfW);
+        return offset + 4;
+    }
+
+    /**
+     * Adds this wall to a world's arrays.
+     *
+     * @param world The world being built.
+     * @param id The wall's id in the world.
+     */
+    public void addTo(World world, int id) {
+        world.addWall(id, mX1, mY1, mX2, mY2, mW, mUX, mUY, mLength, mCaps);
+    }
+
+    /**
+     * Tests if the marble collides with this object.
+     *
+     * @param cX Marble's centre's x coordinate.
+     * @param cY Marble's centre's y coordinate.
+     * @param cR Marble's radius.
+     * @param cVX Marble's velocity in x plane.
+     * @param cVY Marble's velocity in y plane.
+     * @return True if collision occurred.
+     */
+    public boolean collision(double cX, double cY, double cR, double cVX, double cVY) {
+        double reach = mW / 2.0 + cR;
+        return distanceSquared(mX1, mY1, mUX, mUY, mLength, cX, cY) < reach * reach;
+    }
+
+    /**
+     * Returns the squared distance from a point to a wall's centre line.
+     *
+     * @param x1 Point 1 x coordinate.
+     * @param y1 Point 1 y coordinate.
+     * @param uX Unit direction x component.
+     * @param uY Unit direction y component.
+     * @param length Length of the wall.
+     * @param cX The point's x coordinate.
+     * @param cY The point's y coordinate.
+     * @return Squared distance.
+     */
+    static double distanceSquared(int x1, int y1, double uX, double uY, double length, double cX, double cY) {
+        double fX = cX - x1, fY = cY - y1;
+        double along = Math.max(0, Math.min(length, fX * uX + fY * uY));
+        double dX = fX - uX * along, dY = fY - uY * along;
+        return dX * dX + dY * dY;
+    }
+
+    /**
+     * Tests if the marble overlaps this wall, and if so adds the contact to a buffer.
+     *
+     * @param cX Marble's centre's x coordinate.
+     * @param cY Marble's centre's y coordinate.
+     * @param cR Marble's radius.
+     * @param id This wall's id, recorded with the contact.
+     * @param contacts The buffer to add the contact to.
+     * @return True if the marble overlaps this wall.
+     */
+    public boolean contact(double cX, double cY, double cR, int id, Contacts contacts) {
+        return contact(mX1, mY1, mUX, mUY, mLength, mW, cX, cY, cR, id, contacts);
+    }
+
+    /**
+     * Tests if the marble overlaps a wall, taken as its centre line with rounded ends half its width thick, and if
+     * so adds the contact to a buffer.
+     * A marble centred exactly on the line is pushed out along the wall's normal.
+     *
+     * @param x1 Point 1 x coordinate.
+     * @param y1 Point 1 y coordinate.
+     * @param uX Unit direction x component.
+     * @param uY Unit direction y component.
+     * @param length Length of the wall.
+     * @param w Wall width in pixels.
+     * @param cX Marble's centre's x coordinate.
+     * @param cY Marble's centre's y coordinate.
+     * @param cR Marble's radius.
+     * @param id The wall's id, recorded with the contact.
+     * @param contacts The buffer to add the contact to.
+     * @return True if the marble overlaps the wall.
+     */
+    static boolean contact(int x1, int y1, double uX, double uY, double length, int w,
+                           double cX, double cY, double cR, int id, Contacts contacts) {
+        double fX = cX - x1, fY = cY - y1;
+        double along = Math.max(0, Math.min(length, fX * uX + fY * uY));
+        double dX = fX - uX * along, dY = fY - uY * along;
+        double reach = w / 2.0 + cR;
+        double distanceSquared = dX * dX + dY * dY;
+        if (distanceSquared >= reach * reach) {
+            return false;
+        }
+        double distance = Math.sqrt(distanceSquared);
+        if (distance > 0) {
+            contacts.add(id, dX / distance, dY / distance, reach - distance);
+        }
+        else if (length > 0) {
+            contacts.add(id, uY, -uX, reach);
+        }
+        else {
+            contacts.add(id, 0, -1, reach);
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if object is goal.
+     *
+     * @return false
+     */
+    public boolean isGoal() {
+        return false;
+    }
+
+    /**
+     * Returns true if object is hole.
+     *
+     * @return false
+     */
+    public boolean isHole() {
+        return false;
+    }
+
+    /**
+     * Returns true if object is object.
+     *
+     * @return true
+     */
+    public boolean isWall() {
+        return true;
+    }
+
+    /**
+     * Returns the left edge of the wall's bounding box, including its width.
+     *
+     * @return Left edge.
+     */
+    public int getLeft() {
+        return mLeft;
+    }
+
+    /**
+     * Returns the top edge of the wall's bounding box, including its width.
+     *
+     * @return Top edge.
+     */
+    public int getTop() {
+        return mTop;
+    }
+
+    /**
+     * Returns the right edge of the wall's bounding box, including its width.
+     *
+     * @return Right edge.
+     */
+    public int getRight() {
+        return mRight;
+    }
+
+    /**
+     * Returns the bottom edge of the wall's bounding box, including its width.
+     *
+     * @return Bottom edge.
+     */
+    public int getBottom() {
+        return mBottom;
+    }
+
+    /**
+     * Returns true if wall is horizontal.
+     *
+     * @return true if wall is horizontal.
+     */
+    public boolean isHorizontal() {
+        return mY1 == mY2;
+    }
+
+    /**
+     * Returns the x component of the wall's unit direction, from point 1 to point 2.
+     *
+     * @return Direction x component.
+     */
+    public double getDirectionX() {
+        return mUX;
+    }
+
+    /**
+     * Returns the y component of the wall's unit direction, from point 1 to point 2.
+     *
+     * @return Direction y component.
+     */
+    public double getDirectionY() {
+        return mUY;
+    }
+
+    /**
+     * Returns the x component of the wall's unit normal, the direction turned a quarter turn anticlockwise on
+     * screen.
+     *
+     * @return Normal x component.
+     */
+    public double getNormalX() {
+        return mUY;
+    }
+
+    /**
+     * Returns the y component of the wall's unit normal, the direction turned a quarter turn anticlockwise on
+     * screen.
+     *
+     * @return Normal y component.
+     */
+    public double getNormalY() {
+        return -mUX;
+    }
+
+    /**
+     * Returns the end caps the marble can hit.
+     *
+     * @return CAP_1 and CAP_2 flags.
+     */
+    byte getCaps() {
+        return mCaps;
+    }
+
+    /**
+     * Returns the point 1 x coordinate.
+     *
+     * @return Point 1 x coordinate.
+     */
+    public int getX1() {
+        return mX1;
+    }
+
+    /**
+     * Returns the point 1 y coordinate.
+     *
+     * @return Point 1 y coordinate.
+     */
+    public int getY1() {
+        return mY1;
+    }
+
+    /**
+     * Returns the point 2 x coordinate.
+     *
+     * @return Point 2 x coordinate.
+     */
+    public int getX2() {
+        return mX2;
+    }
+
+    /**
+     * Returns the point 2 y coordinate.
+     *
+     * @return Point 2 y coordinate.
+     */
+    public int getY2() {
+        return mY2;
+    }
+
+    /**
+     * Returns the wall's width.
+     *
+     * @return Width in pixels.
+     */
+    public int getW() {
+        return mW;
+    }
+
+    /**
+     * Returns the length of the wall's centre line.
+     *
+     * @return Length in pixels.
+     */
+    public double getLength() {
+        return mLength;
+    }
+}
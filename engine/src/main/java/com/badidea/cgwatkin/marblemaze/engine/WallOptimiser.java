@@ -0,0 +1,379 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Wall Optimiser class
+ *
+ * Tidies a level's walls once, when it is loaded, so the collision and rendering paths have less to do every tick:
+ *
+ * - Walls of the same width on the same line that touch or overlap are merged into one, which also drops walls
+ *   another wall covers completely, such as level walls along the border walls.
+ * - An end cap that lies on another wall at least as wide is left out of the swept test, as the marble reaches the
+ *   other wall first. Where walls of the same width share an end point, only the first keeps its cap.
+ *
+ * Other objects are kept, in their original order. Each merged wall takes the place of the first wall it was
+ * merged from.
+ */
+public class WallOptimiser {
+
+    /**
+     * Object and end cap counts before and after the last optimisation.
+     */
+    private int mObjectsBefore, mObjectsAfter, mCapsBefore, mCapsAfter;
+
+    /**
+     * Optimises a list of world objects.
+     *
+     * @param worldObjects The objects, which are not changed.
+     * @return A new list with the walls merged.
+     */
+    public ArrayList<WorldObject> optimise(ArrayList<WorldObject> worldObjects) {
+        ArrayList<Segment> segments = new ArrayList<>();
+        for (int i = 0; i < worldObjects.size(); i++) {
+            WorldObject wo = worldObjects.get(i);
+            if (wo instanceof WallObject) {
+                segments.add(new Segment(i, (WallObject) wo));
+            }
+        }
+        ArrayList<Segment> merged = merge(segments);
+        byte[] caps = findCaps(merged);
+
+        // Put each merged wall where its first wall was
+        WallObject[] walls = new WallObject[worldObjects.size()];
+        mCapsAfter = 0;
+        for (int i = 0; i < merged.size(); i++) {
+            Segment s = merged.get(i);
+            walls[s.index] = new WallObject(s.x1, s.y1, s.x2, s.y2, s.w, caps[i]);
+            mCapsAfter += Integer.bitCount(caps[i]);
+        }
+        ArrayList<WorldObject> result = new ArrayList<>(worldObjects.size() - segments.size() + merged.size());
+        for (int i = 0; i < worldObjects.size(); i++) {
+            WorldObject wo = worldObjects.get(i);
+            if (!(wo instanceof WallObject)) {
+                result.add(wo);
+            }
+            else if (walls[i] != null) {
+                result.add(walls[i]);
+            }
+        }
+        mObjectsBefore = worldObjects.size();
+        mObjectsAfter = result.size();
+        mCapsBefore = segments.size() * 2;
+        return result;
+    }
+
+    /**
+     * Merges segments that share a line and width and touch or overlap.
+     *
+     * @param segments The segments.
+     * @return The merged segments, in order of the first segment each was merged from.
+     */
+    private static ArrayList<Segment> merge(ArrayList<Segment> segments) {
+        Collections.sort(segments, new Comparator<Segment>() {
+            @Override
+            public int compare(Segment a, Segment b) {
+                if (a.dirX != b.dirX) {
+                    return a.dirX < b.dirX ? -1 : 1;
+                }
+                if (a.dirY != b.dirY) {
+                    return a.dirY < b.dirY ? -1 : 1;
+                }
+                if (a.offset != b.offset) {
+                    return a.offset < b.offset ? -1 : 1;
+                }
+                if (a.w != b.w) {
+                    return a.w < b.w ? -1 : 1;
+                }
+                return a.start < b.start ? -1 : (a.start > b.start ? 1 : 0);
+            }
+        });
+        ArrayList<Segment> merged = new ArrayList<>();
+        Segment current = null;
+        for (Segment s: segments) {
+            if (current != null && current.sameLine(s) && s.start <= current.end) {
+                current.extend(s);
+            }
+            else {
+                current = s;
+                merged.add(current);
+            }
+        }
+        Collections.sort(merged, new Comparator<Segment>() {
+            @Override
+            public int compare(Segment a, Segment b) {
+                return a.index < b.index ? -1 : (a.index > b.index ? 1 : 0);
+            }
+        });
+        return merged;
+    }
+
+    /**
+     * Works out which end caps each wall needs.
+     * Walls are bucketed on a coarse grid so each end point is only checked against walls near it.
+     *
+     * @param walls The merged walls, in order.
+     * @return Cap flags for each wall.
+     */
+    private static byte[] findCaps(ArrayList<Segment> walls) {
+        byte[] caps = new byte[walls.size()];
+        Arrays.fill(caps, WallObject.BOTH_CAPS);
+        if (walls.isEmpty()) {
+            return caps;
+        }
+        long totalLength = 0;
+        for (Segment s: walls) {
+            totalLength += Math.abs(s.x2 - s.x1) + Math.abs(s.y2 - s.y1);
+        }
+        int cellSize = (int) Math.max(1, totalLength / walls.size());
+        HashMap<Long, ArrayList<Integer>> cells = new HashMap<>();
+        for (int i = 0; i < walls.size(); i++) {
+            Segment s = walls.get(i);
+            for (long cY = cell(Math.min(s.y1, s.y2), cellSize); cY <= cell(Math.max(s.y1, s.y2), cellSize); cY++) {
+                for (long cX = cell(Math.min(s.x1, s.x2), cellSize); cX <= cell(Math.max(s.x1, s.x2), cellSize);
+                     cX++) {
+                    Long key = (cY << 32) ^ (cX & 0xffffffffL);
+                    ArrayList<Integer> bucket = cells.get(key);
+                    if (bucket == null) {
+                        bucket = new ArrayList<>(2);
+                        cells.put(key, bucket);
+                    }
+                    bucket.add(i);
+                }
+            }
+        }
+        for (int i = 0; i < walls.size(); i++) {
+            Segment s = walls.get(i);
+            if (isCovered(walls, cells, cellSize, i, s.x1, s.y1)) {
+                caps[i] &= ~WallObject.CAP_1;
+            }
+            if (isCovered(walls, cells, cellSize, i, s.x2, s.y2)) {
+                caps[i] &= ~WallObject.CAP_2;
+            }
+        }
+        return caps;
+    }
+
+    /**
+     * Tests if a wall's end cap is covered by another wall: it lies on a wall that is wider, or on the middle of one
+     * as wide, or on the end of an earlier one as wide.
+     *
+     * @param walls The walls.
+     * @param cells Wall indexes by grid cell.
+     * @param cellSize Grid cell size.
+     * @param i Index of the wall the cap belongs to.
+     * @param x Cap x coordinate.
+     * @param y Cap y coordinate.
+     * @return True if another wall covers the cap.
+     */
+    private static boolean isCovered(ArrayList<Segment> walls, HashMap<Long, ArrayList<Integer>> cells, int cellSize,
+                                     int i, int x, int y) {
+        ArrayList<Integer> bucket = cells.get((cell(y, cellSize) << 32) ^ (cell(x, cellSize) & 0xffffffffL));
+        int w = walls.get(i).w;
+        for (int j: bucket) {
+            Segment other = walls.get(j);
+            if (j == i || other.w < w || !other.contains(x, y)) {
+                continue;
+            }
+            boolean end = (x == other.x1 && y == other.y1) || (x == other.x2 && y == other.y2);
+            if (other.w > w || !end || j < i) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the grid cell containing a coordinate.
+     *
+     * @param coordinate The coordinate.
+     * @param cellSize Grid cell size.
+     * @return Cell index.
+     */
+    private static long cell(int coordinate, int cellSize) {
+        return (long) Math.floor((double) coordinate / cellSize);
+    }
+
+    /**
+     * Returns the number of objects before the last optimisation.
+     *
+     * @return Object count.
+     */
+    public int getObjectsBefore() {
+        return mObjectsBefore;
+    }
+
+    /**
+     * Returns the number of objects after the last optimisation.
+     *
+     * @return Object count.
+     */
+    public int getObjectsAfter() {
+        return mObjectsAfter;
+    }
+
+    /**
+     * Returns the number of wall end caps before the last optimisation.
+     *
+     * @return Cap count.
+     */
+    public int getCapsBefore() {
+        return mCapsBefore;
+    }
+
+    /**
+     * Returns the number of wall end caps the marble is tested against after the last optimisation.
+     *
+     * @return Cap count.
+     */
+    public int getCapsAfter() {
+        return mCapsAfter;
+    }
+
+    /**
+     * A wall being merged, placed on its line by a whole-number direction, offset and span, so walls on the same
+     * line compare exactly.
+     */
+    private static class Segment {
+
+        /**
+         * Position of the first wall merged into this one in the original list.
+         */
+        int index;
+
+        /**
+         * Wall width.
+         */
+        final int w;
+
+        /**
+         * Direction reduced to lowest terms, pointing right or else down, and the line's offset across it.
+         */
+        final long dirX, dirY, offset;
+
+        /**
+         * End points, ordered along the direction.
+         */
+        int x1, y1, x2, y2;
+
+        /**
+         * Span along the direction, as dot products with it.
+         */
+        long start, end;
+
+        /**
+         * Constructor
+         *
+         * @param index Position of the wall in the original list.
+         * @param wall The wall.
+         */
+        Segment(int index, WallObject wall) {
+            this.index = index;
+            w = wall.getW();
+            long dX = wall.getX2() - wall.getX1(), dY = wall.getY2() - wall.getY1();
+            long gcd = gcd(Math.abs(dX), Math.abs(dY));
+            if (gcd == 0) {
+                gcd = 1;
+                dX = 1;
+            }
+            dX /= gcd;
+            dY /= gcd;
+            if (dX < 0 || (dX == 0 && dY < 0)) {
+                dX = -dX;
+                dY = -dY;
+            }
+            dirX = dX;
+            dirY = dY;
+            offset = dY * wall.getX1() - dX * wall.getY1();
+            long s1 = dX * wall.getX1() + dY * wall.getY1(), s2 = dX * wall.getX2() + dY * wall.getY2();
+            if (s1 <= s2) {
+                setStart(wall.getX1(), wall.getY1(), s1);
+                setEnd(wall.getX2(), wall.getY2(), s2);
+            }
+            else {
+                setStart(wall.getX2(), wall.getY2(), s2);
+                setEnd(wall.getX1(), wall.getY1(), s1);
+            }
+        }
+
+        /**
+         * Tests if another segment lies on the same line with the same width.
+         *
+         * @param other The other segment.
+         * @return True if they can be merged where they touch.
+         */
+        boolean sameLine(Segment other) {
+            return dirX == other.dirX && dirY == other.dirY && offset == other.offset && w == other.w;
+        }
+
+        /**
+         * Extends this segment to cover another on the same line that starts within it.
+         *
+         * @param other The other segment.
+         */
+        void extend(Segment other) {
+            index = Math.min(index, other.index);
+            if (other.end > end) {
+                setEnd(other.x2, other.y2, other.end);
+            }
+        }
+
+        /**
+         * Tests if a point lies on this segment's centre line, including its end points.
+         *
+         * @param x Point x coordinate.
+         * @param y Point y coordinate.
+         * @return True if the point is on the segment.
+         */
+        boolean contains(int x, int y) {
+            long along = dirX * x + dirY * y;
+            return dirY * x - dirX * y == offset && along >= start && along <= end;
+        }
+
+        /**
+         * Sets the start point.
+         *
+         * @param x X coordinate.
+         * @param y Y coordinate.
+         * @param along Position along the direction.
+         */
+        private void setStart(int x, int y, long along) {
+            x1 = x;
+            y1 = y;
+            start = along;
+        }
+
+        /**
+         * Sets the end point.
+         *
+         * @param x X coordinate.
+         * @param y Y coordinate.
+         * @param along Position along the direction.
+         */
+        private void setEnd(int x, int y, long along) {
+            x2 = x;
+            y2 = y;
+            end = along;
+        }
+
+        /**
+         * Returns the greatest common divisor of two non-negative numbers.
+         *
+         * @param a First number.
+         * @param b Second number.
+         * @return Greatest common divisor, 0 if both are 0.
+         */
+        private static long gcd(long a, long b) {
+            while (b != 0) {
+                long t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
+    }
+}
@@ -0,0 +1,581 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import java.util.ArrayList;
+
+/**
+ * World class
+ *
+ * Compact store of the static objects in the world.
+ * Walls, holes and goals are kept in separate primitive arrays, so the collision kernel runs over plain arrays with
+ * no iterators, interface calls or casts. World objects are only used to build it.
+ *
+ * Each object also has an id, its position in the list it was built from. Ids keep their original order, so
+ * collisions resolve in the same order as a scan of that list.
+ *
+ * Moving obstacles are kept apart, in their own dynamic tree, so the static objects' grid is never rebuilt.
+ *
+ * Walls can instead be collided against through a signed distance field, built on request. It trades memory for
+ * wall tests that cost the same however many walls are near the marble.
+ */
+public class World {
+
+    /**
+     * Object kinds.
+     */
+    public static final byte WALL = 0, HOLE = 1, GOAL = 2;
+
+    /**
+     * Kind of each object, by id.
+     */
+    private final byte[] mKind;
+
+    /**
+     * Index of each object within the arrays for its kind, by id.
+     */
+    private final int[] mSlot;
+
+    /**
+     * Bounding box of each object, by id.
+     */
+    private final int[] mLeft, mTop, mRight, mBottom;
+
+    /**
+     * Wall end points and widths.
+     */
+    private final int[] mWallX1, mWallY1, mWallX2, mWallY2, mWallW;
+
+    /**
+     * Wall unit directions and lengths, precomputed by the wall objects.
+     */
+    private final double[] mWallUX, mWallUY, mWallLength;
+
+    /**
+     * Wall end caps the marble can hit, as WallObject cap flags.
+     */
+    private final byte[] mWallCaps;
+
+    /**
+     * Hole centres and radii.
+     */
+    private final int[] mHoleX, mHoleY, mHoleR;
+
+    /**
+     * Goal centres and radii.
+     */
+    private final int[] mGoalX, mGoalY, mGoalR;
+
+    /**
+     * Number of objects of each kind added so far.
+     */
+    private int mWallCount, mHoleCount, mGoalCount;
+
+    /**
+     * Broadphase grid over the objects' bounding boxes.
+     */
+    private final SpatialGrid mGrid;
+
+    /**
+     * Moving obstacles.
+     */
+    private final Obstacles mObstacles;
+
+    /**
+     * Size of the world and broadphase grid cell size.
+     */
+    private final int mWidth, mHeight, mCellSize;
+
+    /**
+     * Distance field over the walls, or null to test walls one by one.
+     */
+    private DistanceField mField;
+
+    /**
+     * Constructor
+     *
+     * @param worldObjects The objects to build the world from.
+     * @param width Width of the world.
+     * @param height Height of the world.
+     * @param cellSize Broadphase grid cell size.
+     */
+    public World(ArrayList<WorldObject> worldObjects, int width, int height, int cellSize) {
+        this(worldObjects, new Obstacles(0), width, height, cellSize);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param worldObjects The static objects to build the world from.
+     * @param obstacles The moving obstacles.
+     * @param width Width of the world.
+     * @param height Height of the world.
+     * @param cellSize Broadphase grid cell size.
+     */
+    public World(ArrayList<WorldObject> worldObjects, Obstacles obstacles, int width, int height, int cellSize) {
+        mObstacles = obstacles;
+        mWidth = width;
+        mHeight = height;
+        mCellSize = cellSize;
+        int n = worldObjects.size();
+        int walls = 0, holes = 0, goals = 0;
+        for (WorldObject wo: worldObjects) {
+            if (wo.isWall()) {
+                walls++;
+            }
+            else if (wo.isHole()) {
+                holes++;
+            }
+            else if (wo.isGoal()) {
+                goals++;
+            }
+        }
+        mKind = new byte[n];
+        mSlot = new int[n];
+        mLeft = new int[n];
+        mTop = new int[n];
+        mRight = new int[n];
+        mBottom = new int[n];
+        mWallX1 = new int[walls];
+        mWallY1 = new int[walls];
+        mWallX2 = new int[walls];
+        mWallY2 = new int[walls];
+        mWallW = new int[walls];
+        mWallUX = new double[walls];
+        mWallUY = new double[walls];
+        mWallLength = new double[walls];
+        mWallCaps = new byte[walls];
+        mHoleX = new int[holes];
+        mHoleY = new int[holes];
+        mHoleR = new int[holes];
+        mGoalX = new int[goals];
+        mGoalY = new int[goals];
+        mGoalR = new int[goals];
+        for (int id = 0; id < n; id++) {
+            WorldObject wo = worldObjects.get(id);
+            mLeft[id] = wo.getLeft();
+            mTop[id] = wo.getTop();
+            mRight[id] = wo.getRight();
+            mBottom[id] = wo.getBottom();
+            wo.addTo(this, id);
+        }
+        mGrid = new SpatialGrid(this, width, height, cellSize);
+    }
+
+    /**
+     * Moves the obstacles on by a tick.
+     *
+     * @param dT Difference in time.
+     */
+    public void advance(double dT) {
+        if (mObstacles.getCount() > 0) {
+            mObstacles.advance(dT);
+        }
+    }
+
+    /**
+     * Returns the moving obstacles.
+     *
+     * @return The obstacles.
+     */
+    public Obstacles getObstacles() {
+        return mObstacles;
+    }
+
+    /**
+     * Collides marbles with walls through a signed distance field, building it now, or with each wall in turn.
+     * Holes and goals are always tested one by one.
+     *
+     * The field stores distances up to a broadphase cell size, so each lookup can step the marble up to that far.
+     *
+     * @param spacing Distance between samples in pixels, or 0 to test each wall in turn.
+     * @param quantised True to store samples as shorts, at half the memory of floats.
+     */
+    public void useDistanceField(int spacing, boolean quantised) {
+        mField = spacing > 0 ? new DistanceField(this, mWidth, mHeight, spacing, mCellSize, quantised) : null;
+    }
+
+    /**
+     * Returns the memory used by the distance field.
+     *
+     * @return Size in bytes, 0 if walls are tested one by one.
+     */
+    public int getDistanceFieldBytes() {
+        return mField != null ? mField.getBytes() : 0;
+    }
+
+    /**
+     * Returns the distance field.
+     *
+     * @return The field, or null if walls are tested one by one.
+     */
+    DistanceField getDistanceField() {
+        return mField;
+    }
+
+    /**
+     * Adds a wall. Only called by wall objects while the world is built.
+     *
+     * @param id Object id.
+     * @param x1 Point 1 x coordinate.
+     * @param y1 Point 1 y coordinate.
+     * @param x2 Point 2 x coordinate.
+     * @param y2 Point 2 y coordinate.
+     * @param w Wall width.
+     * @param uX Unit direction x component.
+     * @param uY Unit direction y component.
+     * @param length Wall length.
+     * @param caps End caps the marble can hit.
+     */
+    void addWall(int id, int x1, int y1, int x2, int y2, int w, double uX, double uY, double length, byte caps) {
+        int i = mWallCount++;
+        mKind[id] = WALL;
+        mSlot[id] = i;
+        mWallX1[i] = x1;
+        mWallY1[i] = y1;
+        mWallX2[i] = x2;
+        mWallY2[i] = y2;
+        mWallW[i] = w;
+        mWallUX[i] = uX;
+        mWallUY[i] = uY;
+        mWallLength[i] = length;
+        mWallCaps[i] = caps;
+    }
+
+    /**
+     * Adds a hole. Only called by hole objects while the world is built.
+     *
+     * @param id Object id.
+     * @param x Centre x coordinate.
+     * @param y Centre y coordinate.
+     * @param r Radius.
+     */
+    void addHole(int id, int x, int y, int r) {
+        int i = mHoleCount++;
+        mKind[id] = HOLE;
+        mSlot[id] = i;
+        mHoleX[i] = x;
+        mHoleY[i] = y;
+        mHoleR[i] = r;
+    }
+
+    /**
+     * Adds a goal. Only called by goal objects while the world is built.
+     *
+     * @param id Object id.
+     * @param x Centre x coordinate.
+     * @param y Centre y coordinate.
+     * @param r Radius.
+     */
+    void addGoal(int id, int x, int y, int r) {
+        int i = mGoalCount++;
+        mKind[id] = GOAL;
+        mSlot[id] = i;
+        mGoalX[i] = x;
+        mGoalY[i] = y;
+        mGoalR[i] = r;
+    }
+
+    /**
+     * Returns the number of objects in the world.
+     *
+     * @return Object count.
+     */
+    public int size() {
+        return mKind.length;
+    }
+
+    /**
+     * Returns the left edge of an object's bounding box.
+     *
+     * @param id Object id.
+     * @return Left edge.
+     */
+    int getLeft(int id) {
+        return mLeft[id];
+    }
+
+    /**
+     * Returns the top edge of an object's bounding box.
+     *
+     * @param id Object id.
+     * @return Top edge.
+     */
+    int getTop(int id) {
+        return mTop[id];
+    }
+
+    /**
+     * Returns the right edge of an object's bounding box.
+     *
+     * @param id Object id.
+     * @return Right edge.
+     */
+    int getRight(int id) {
+        return mRight[id];
+    }
+
+    /**
+     * Returns the bottom edge of an object's bounding box.
+     *
+     * @param id Object id.
+     * @return Bottom edge.
+     */
+    int getBottom(int id) {
+        return mBottom[id];
+    }
+
+    /**
+     * Collects the ids of objects near a box, in id order.
+     *
+     * @param left Left edge of the box.
+     * @param top Top edge of the box.
+     * @param right Right edge of the box.
+     * @param bottom Bottom edge of the box.
+     * @return Number of objects found.
+     */
+    int query(double left, double top, double right, double bottom) {
+        return mGrid.query(left, top, right, bottom);
+    }
+
+    /**
+     * Returns a key for the broadphase cells a box touches, so a caller can tell when a query would give the same
+     * results as the last one it made.
+     *
+     * @param left Left edge of the box.
+     * @param top Top edge of the box.
+     * @param right Right edge of the box.
+     * @param bottom Bottom edge of the box.
+     * @return The key, or -1 if there is none.
+     */
+    long cellRange(double left, double top, double right, double bottom) {
+        return mGrid.cellRange(left, top, right, bottom);
+    }
+
+    /**
+     * Returns an object id from the last query.
+     *
+     * @param i Position in the query results.
+     * @return Object id.
+     */
+    int result(int i) {
+        return mGrid.result(i);
+    }
+
+    /**
+     * Returns the kind of an object.
+     *
+     * @param id Object id.
+     * @return WALL, HOLE or GOAL.
+     */
+    public byte getKind(int id) {
+        return mKind[id];
+    }
+
+    /**
+     * Finds every object a marble overlaps, writing each contact's id, normal and depth into a buffer.
+     * The buffer is cleared first, and contacts are added in id order.
+     *
+     * @param x Marble's centre x coordinate.
+     * @param y Marble's centre y coordinate.
+     * @param r Marble's radius.
+     * @param contacts The buffer to fill.
+     * @return Number of contacts found.
+     */
+    public int contacts(double x, double y, double r, Contacts contacts) {
+        contacts.clear();
+        int count = query(x - r, y - r, x + r, y + r);
+        for (int n = 0; n < count; n++) {
+            int id = result(n);
+            int i = mSlot[id];
+            switch (mKind[id]) {
+                case WALL:
+                    WallObject.contact(mWallX1[i], mWallY1[i], mWallUX[i], mWallUY[i], mWallLength[i], mWallW[i],
+                            x, y, r, id, contacts);
+                    break;
+                case HOLE:
+                    CircleObject.contact(mHoleX[i], mHoleY[i], mHoleR[i], x, y, r, id, contacts);
+                    break;
+                default:
+                    CircleObject.contact(mGoalX[i], mGoalY[i], mGoalR[i], x, y, r, id, contacts);
+                    break;
+            }
+        }
+        return contacts.getCount();
+    }
+
+    /**
+     * Finds when a moving marble first touches an object.
+     * Walls are swept as capsules of half their width, less any end caps covered by other walls, and holes and goals
+     * as circles.
+     *
+     * @param id Object id.
+     * @param sweep Swept test, which keeps the contact normal.
+     * @param x Marble's start centre x coordinate.
+     * @param y Marble's start centre y coordinate.
+     * @param r Marble's radius.
+     * @param dX Marble's movement in x plane.
+     * @param dY Marble's movement in y plane.
+     * @return Fraction of the movement before the hit, from 0 to 1, or SweptCircle.NO_HIT.
+     */
+    double sweep(int id, SweptCircle sweep, double x, double y, double r, double dX, double dY) {
+        int i = mSlot[id];
+        switch (mKind[id]) {
+            case WALL:
+                return sweep.againstCapsule(mWallX1[i], mWallY1[i], mWallUX[i], mWallUY[i], mWallLength[i],
+                        mWallCaps[i], mWallW[i] / 2.0 + r, x, y, dX, dY);
+            case HOLE:
+                return sweep.againstCircle(mHoleX[i], mHoleY[i], mHoleR[i] + r, x, y, dX, dY);
+            default:
+                return sweep.againstCircle(mGoalX[i], mGoalY[i], mGoalR[i] + r, x, y, dX, dY);
+        }
+    }
+
+    /**
+     * Returns the number of walls.
+     *
+     * @return Wall count.
+     */
+    public int getWallCount() {
+        return mWallCount;
+    }
+
+    /**
+     * Returns the x coordinate of a wall's first point.
+     *
+     * @param i Wall index.
+     * @return Point 1 x coordinate.
+     */
+    int getWallX1(int i) {
+        return mWallX1[i];
+    }
+
+    /**
+     * Returns the y coordinate of a wall's first point.
+     *
+     * @param i Wall index.
+     * @return Point 1 y coordinate.
+     */
+    int getWallY1(int i) {
+        return mWallY1[i];
+    }
+
+    /**
+     * Returns the x coordinate of a wall's second point.
+     *
+     * @param i Wall index.
+     * @return Point 2 x coordinate.
+     */
+    int getWallX2(int i) {
+        return mWallX2[i];
+    }
+
+    /**
+     * Returns the y coordinate of a wall's second point.
+     *
+     * @param i Wall index.
+     * @return Point 2 y coordinate.
+     */
+    int getWallY2(int i) {
+        return mWallY2[i];
+    }
+
+    /**
+     * Returns the width of a wall.
+     *
+     * @param i Wall index.
+     * @return Wall width.
+     */
+    int getWallW(int i) {
+        return mWallW[i];
+    }
+
+    /**
+     * Writes every wall's drawn line into a line buffer.
+     *
+     * @param lines The line buffer, four floats per wall.
+     */
+    public void packWallLines(float[] lines) {
+        int offset = 0;
+        for (int i = 0; i < mWallCount; i++) {
+            offset = WallObject.packLine(mWallX1[i], mWallY1[i], mWallX2[i], mWallY2[i], mWallUX[i], mWallUY[i],
+                    mWallW[i], lines, offset);
+        }
+    }
+
+    /**
+     * Returns the number of holes.
+     *
+     * @return Hole count.
+     */
+    public int getHoleCount() {
+        return mHoleCount;
+    }
+
+    /**
+     * Returns the x coordinate of a hole's centre.
+     *
+     * @param i Hole index.
+     * @return Centre x coordinate.
+     */
+    public int getHoleX(int i) {
+        return mHoleX[i];
+    }
+
+    /**
+     * Returns the y coordinate of a hole's centre.
+     *
+     * @param i Hole index.
+     * @return Centre y coordinate.
+     */
+    public int getHoleY(int i) {
+        return mHoleY[i];
+    }
+
+    /**
+     * Returns the radius of a hole.
+     *
+     * @param i Hole index.
+     * @return Radius.
+     */
+    public int getHoleR(int i) {
+        return mHoleR[i];
+    }
+
+    /**
+     * Returns the number of goals.
+     *
+     * @return Goal count.
+     */
+    public int getGoalCount() {
+        return mGoalCount;
+    }
+
+    /**
+     * Returns the x coordinate of a goal's centre.
+     *
+     * @param i Goal index.
+     * @return Centre x coordinate.
+     */
+    public int getGoalX(int i) {
+        return mGoalX[i];
+    }
+
+    /**
+     * Returns the y coordinate of a goal's centre.
+     *
+     * @param i Goal index.
+     * @return Centre y coordinate.
+     */
+    public int getGoalY(int i) {
+        return mGoalY[i];
+    }
+
+    /**
+     * Returns the radius of a goal.
+     *
+     * @param i Goal index.
+     * @return Radius.
+     */
+    public int getGoalR(int i) {
+        return mGoalR[i];
+    }
+}
@@ -0,0 +1,90 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+/**
+ * World Object class
+ *
+ * Extended from to create world objects.
+ */
+public interface WorldObject {
+
+    /**
+     * Tests if the marble collides with this object.
+     *
+     * @param x Marble's centre's x coordinate.
+     * @param y Marble's centre's y coordinate.
+     * @param r Marble's radius.
+     * @param vX Marble's velocity in x plane.
+     * @param vY Marble's velocity in y plane.
+     * @return True if collision occurred.
+     */
+    boolean collision(double x, double y, double r, double vX, double vY);
+
+    /**
+     * Tests if the marble overlaps this object, and if so adds the contact to a buffer.
+     *
+     * @param x Marble's centre's x coordinate.
+     * @param y Marble's centre's y coordinate.
+     * @param r Marble's radius.
+     * @param id This object's id, recorded with the contact.
+     * @param contacts The buffer to add the contact to.
+     * @return True if the marble overlaps this object.
+     */
+    boolean contact(double x, double y, double r, int id, Contacts contacts);
+
+    /**
+     * Returns true if object is goal.
+     *
+     * @return True if object is goal.
+     */
+    boolean isGoal();
+
+    /**
+     * Returns true if object is hole.
+     *
+     * @return True if object is hole.
+     */
+    boolean isHole();
+
+    /**
+     * Returns true if object is object.
+     *
+     * @return True if object is object.
+     */
+    boolean isWall();
+
+    /**
+     * Adds this object to a world's arrays.
+     *
+     * @param world The world being built.
+     * @param id The object's id in the world.
+     */
+    void addTo(World world, int id);
+
+    /**
+     * Returns the left edge of the object's bounding box.
+     *
+     * @return Left edge.
+     */
+    int getLeft();
+
+    /**
+     * Returns the top edge of the object's bounding box.
+     *
+     * @return Top edge.
+     */
+    int getTop();
+
+    /**
+     * Returns the right edge of the object's bounding box.
+     *
+     * @return Right edge.
+     */
+    int getRight();
+
+    /**
+     * Returns the bottom edge of the object's bounding box.
+     *
+     * @return Bottom edge.
+     */
+    int getBottom();
+}
@@ -0,0 +1,145 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Contact Cache tests
+ *
+ * Checks the recent object ring, the tie rule with a recent object, and that the cache never changes a marble's
+ * path.
+ */
+public class ContactCacheTest {
+
+    /**
+     * Marble radius and cell size for the level runs, as on a small phone screen.
+     */
+    private static final int RADIUS = 20, CELL = 4 * RADIUS;
+
+    /**
+     * Seeded runs per level.
+     */
+    private static final int RUNS = 40;
+
+    /**
+     * Longest run, in ticks.
+     */
+    private static final int TICKS = 3600;
+
+    /**
+     * Tick length.
+     */
+    private static final double TICK = 1.0 / 60;
+
+    /**
+     * Moving to another world forgets the recent objects and refills the ring from its start.
+     */
+    @Test
+    public void worldChangeResetsRecent() {
+        ArrayList<WorldObject> objects = new ArrayList<>();
+        World first = new World(objects, 100, 100, 50), second = new World(objects, 100, 100, 50);
+        ContactCache cache = new ContactCache();
+        cache.query(first, 0, 0, 10, 10);
+        cache.touched(1);
+        cache.touched(2);
+        cache.touched(3);
+        assertEquals(3, cache.getRecentCount());
+
+        cache.query(second, 0, 0, 10, 10);
+        assertEquals(0, cache.getRecentCount());
+        cache.touched(9);
+        assertEquals(1, cache.getRecentCount());
+        assertEquals(9, cache.getRecent(0));
+    }
+
+    /**
+     * A marble already in a recently hit goal and in a hole with a lower id falls down the hole, as it would with no
+     * cache, rather than stopping the search at the recent goal.
+     */
+    @Test
+    public void recentTriggerKeepsTieRule() {
+        ArrayList<WorldObject> objects = new ArrayList<>();
+        objects.add(new HoleObject(50, 50, 10));
+        objects.add(new GoalObject(52, 50, 10));
+        World world = new World(objects, 100, 100, 50);
+        assertEquals(World.HOLE, world.getKind(0));
+
+        Marble marble = new Marble(51, 50, 0, 0, 5, 10);
+        ContactCache cache = marble.getContactCache();
+        cache.query(world, 0, 0, 100, 100);
+        cache.touched(1);
+        assertEquals(HitType.HOLE, marble.move(TICK, 0, 0, 100, 100, world));
+
+        Marble uncached = new Marble(51, 50, 0, 0, 5, 10);
+        uncached.getContactCache().setEnabled(false);
+        assertEquals(HitType.HOLE, uncached.move(TICK, 0, 0, 100, 100, world));
+    }
+
+    /**
+     * Creates the world for a level, with its walls optimised as the game does.
+     *
+     * @param level The level.
+     * @return The world.
+     */
+    private static World createWorld(Level level) {
+        int width = level.getColumns() * CELL + 2 * CELL, height = level.getRows() * CELL + 2 * CELL;
+        ArrayList<WorldObject> objects = new WallOptimiser().optimise(
+                level.createWorldObjects(CELL, CELL, CELL, RADIUS, 8));
+        return new World(objects, level.createObstacles(CELL, CELL, CELL, RADIUS, 8), width, height, CELL);
+    }
+
+    /**
+     * Creates a marble at a level's start.
+     *
+     * @param level The level.
+     * @return The marble.
+     */
+    private static Marble createMarble(Level level) {
+        return new Marble(Level.toPixels(level.getMarbleX(), CELL, CELL),
+                Level.toPixels(level.getMarbleY(), CELL, CELL), 0, 0, RADIUS, 2 * RADIUS);
+    }
+
+    /**
+     * Marbles with and without the cache, tilted at random the same way, follow exactly the same path through every
+     * level and a generated maze with holes.
+     *
+     * @throws IOException If the levels cannot be read.
+     */
+    @Test
+    public void cachedPathsMatchUncached() throws IOException {
+        ArrayList<Level> levels = TestLevels.load();
+        levels.add(new MazeGenerator(1).setHoles(5).generate(30, 30));
+        for (int l = 0; l < levels.size(); l++) {
+            Level level = levels.get(l);
+            for (int run = 0; run < RUNS; run++) {
+                World world = createWorld(level), uncachedWorld = createWorld(level);
+                int width = level.getColumns() * CELL + 2 * CELL, height = level.getRows() * CELL + 2 * CELL;
+                Marble marble = createMarble(level), uncached = createMarble(level);
+                uncached.getContactCache().setEnabled(false);
+                Random rnd = new Random(run);
+                double gX = 0, gY = 0;
+                for (int tick = 0; tick < TICKS; tick++) {
+                    if (tick % 30 == 0) {
+                        gX = rnd.nextGaussian() * 40;
+                        gY = rnd.nextGaussian() * 40;
+                    }
+                    world.advance(TICK);
+                    uncachedWorld.advance(TICK);
+                    HitType hit = marble.move(TICK, gX, gY, width, height, world);
+                    String where = "Level " + l + " run " + run + " tick " + tick;
+                    assertEquals(where, uncached.move(TICK, gX, gY, width, height, uncachedWorld), hit);
+                    assertEquals(where, uncached.getX(1), marble.getX(1), 0);
+                    assertEquals(where, uncached.getY(1), marble.getY(1), 0);
+                    if (hit == HitType.GOAL || hit == HitType.HOLE) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Level Pack tests
+ *
+ * Writes levels with LevelPackWriter and reads them back with LevelPack: the game's own levels, and a generated maze
+ * with more walls than an int16 count holds and every kind of moving obstacle.
+ */
+public class LevelPackTest {
+
+    /**
+     * Folder for pack files, deleted after each test.
+     */
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * Writes levels to a pack in memory.
+     *
+     * @param levels The levels.
+     * @return The pack.
+     * @throws IOException If a level does not fit the format.
+     */
+    private static LevelPack pack(List<Level> levels) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LevelPackWriter.write(levels, out);
+        return new LevelPack(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    /**
+     * Asserts a pack holds exactly the given levels, in order.
+     *
+     * @param levels The expected levels.
+     * @param pack The pack.
+     * @throws IOException If a record is malformed.
+     */
+    private static void assertPackHolds(List<Level> levels, LevelPack pack) throws IOException {
+        assertEquals(levels.size(), pack.getCount());
+        for (int i = 0; i < levels.size(); i++) {
+            Level expected = levels.get(i), actual = pack.getLevel(i);
+            String where = "Level " + i;
+            assertEquals(where, expected.getColumns(), actual.getColumns());
+            assertEquals(where, expected.getRows(), actual.getRows());
+            assertEquals(where, expected.getMarbleX(), actual.getMarbleX());
+            assertEquals(where, expected.getMarbleY(), actual.getMarbleY());
+            assertArrayEquals(where, expected.getGoals(), actual.getGoals());
+            assertArrayEquals(where, expected.getHoles(), actual.getHoles());
+            assertArrayEquals(where, expected.getWalls(), actual.getWalls());
+            assertArrayEquals(where, expected.getObstacles(), actual.getObstacles());
+        }
+    }
+
+    /**
+     * Creates a large generated maze with one of each kind of moving obstacle, moving both ways.
+     *
+     * @return The level.
+     */
+    private static Level createLargeMaze() {
+        Level maze = new MazeGenerator(3).setHoles(20).generate(300, 300);
+        int[] obstacles = {
+                Obstacles.SLIDING_BAR, 2, 3, 4, 3, -2, 6, 1500,
+                Obstacles.ROTATING_BAR, 10, 11, 14, 11, 0, 0, -4000,
+                Obstacles.SLIDING_HOLE, 21, 21, 0, 0, 8, -4, 2500,
+        };
+        return new Level(maze.getColumns(), maze.getRows(), maze.getMarbleX(), maze.getMarbleY(), maze.getGoals(),
+                maze.getHoles(), maze.getWalls(), obstacles);
+    }
+
+    /**
+     * Every level in the app's assets reads back as parsed, moving obstacles included.
+     *
+     * @throws IOException If the levels cannot be read.
+     */
+    @Test
+    public void assetLevelsRoundTrip() throws IOException {
+        ArrayList<Level> levels = TestLevels.load();
+        boolean obstacles = false;
+        for (Level level: levels) {
+            obstacles |= level.getObstacles().length > 0;
+        }
+        assertTrue("No level has moving obstacles", obstacles);
+        assertPackHolds(levels, pack(levels));
+    }
+
+    /**
+     * A maze with more walls than an int16 count holds reads back whole, along with obstacles of every kind.
+     *
+     * @throws IOException If the pack cannot be written or read.
+     */
+    @Test
+    public void largeMazeRoundTrips() throws IOException {
+        Level maze = createLargeMaze();
+        assertTrue(maze.getWalls().length / 4 > Short.MAX_VALUE);
+        List<Level> levels = Arrays.asList(TestLevels.load().get(0), maze);
+        assertPackHolds(levels, pack(levels));
+    }
+
+    /**
+     * Packing the asset directory from the command line gives the parsed levels, from a memory-mapped file.
+     *
+     * @throws IOException If the pack cannot be written or read.
+     */
+    @Test
+    public void packDirectoryRoundTrips() throws IOException {
+        File output = new File(mFolder.getRoot(), "levels.pack");
+        File directory = TestLevels.listFiles()[0].getParentFile();
+        LevelPackWriter.main(new String[] {directory.getPath(), output.getPath()});
+        assertPackHolds(TestLevels.load(), LevelPack.open(output));
+    }
+
+    /**
+     * A pack of another version is rejected rather than misread.
+     *
+     * @throws IOException If the pack cannot be written.
+     */
+    @Test
+    public void otherVersionRejected() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LevelPackWriter.write(TestLevels.load(), out);
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        buffer.putShort(4, (short) (LevelPack.VERSION - 1));
+        try {
+            new LevelPack(buffer);
+            fail("Version " + (LevelPack.VERSION - 1) + " pack accepted");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("version"));
+        }
+    }
+}
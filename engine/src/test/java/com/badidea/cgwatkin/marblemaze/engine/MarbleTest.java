@@ -0,0 +1,92 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Marble tests
+ *
+ * Moves a marble at a single thin wall standing across the middle of an otherwise empty world.
+ */
+public class MarbleTest {
+
+    /**
+     * World size.
+     */
+    private static final int WIDTH = 2000, HEIGHT = 800;
+
+    /**
+     * Wall x coordinate and width.
+     */
+    private static final int WALL_X = 1400, WALL_W = 2;
+
+    /**
+     * Marble radius.
+     */
+    private static final int RADIUS = 10;
+
+    /**
+     * Creates a world with one vertical wall from top to bottom.
+     *
+     * @param fieldSpacing Distance field sample spacing, or 0 to test the wall directly.
+     * @return The world.
+     */
+    private static World createWorld(int fieldSpacing) {
+        ArrayList<WorldObject> objects = new ArrayList<>();
+        objects.add(new WallObject(WALL_X, 0, WALL_X, HEIGHT, WALL_W));
+        World world = new World(objects, WIDTH, HEIGHT, 4 * RADIUS);
+        world.useDistanceField(fieldSpacing, false);
+        return world;
+    }
+
+    /**
+     * Fires a marble at the wall, fast enough to move several times its own width past it in one long tick.
+     *
+     * @param world The world.
+     */
+    private static void assertStopsAtWall(World world) {
+        Marble marble = new Marble(WALL_X - 300, HEIGHT / 2, 50, 0, RADIUS, 1000);
+        HitType hit = marble.move(0.5, 0, 0, WIDTH, HEIGHT, world);
+        assertEquals(HitType.WALL, hit);
+        assertTrue("Marble passed the wall at x " + marble.getX(1), marble.getX(1) < WALL_X);
+        assertTrue("Marble is inside the wall at x " + marble.getX(1),
+                marble.getX(1) <= WALL_X - WALL_W / 2.0 - RADIUS + 1e-6);
+
+        // It bounced, so carries on away from the wall
+        double x = marble.getX(1);
+        marble.move(1.0 / 60, 0, 0, WIDTH, HEIGHT, world);
+        assertTrue(marble.getX(1) < x);
+    }
+
+    /**
+     * A fast marble in a long tick stops at a thin wall rather than stepping over it.
+     */
+    @Test
+    public void fastMarbleStopsAtThinWall() {
+        assertStopsAtWall(createWorld(0));
+    }
+
+    /**
+     * A fast marble in a long tick stops at a thin wall swept through the distance field.
+     */
+    @Test
+    public void fastMarbleStopsAtThinWallInField() {
+        assertStopsAtWall(createWorld(4));
+    }
+
+    /**
+     * A marble that starts on a wall's centre line is pushed back out the side it is moving away from, not through.
+     */
+    @Test
+    public void marbleOnWallLineIsPushedOut() {
+        World world = createWorld(0);
+        Marble marble = new Marble(WALL_X, HEIGHT / 2, 20, 0, RADIUS, 1000);
+        marble.move(1.0 / 60, 0, 0, WIDTH, HEIGHT, world);
+        assertTrue("Marble went through the wall to x " + marble.getX(1),
+                marble.getX(1) <= WALL_X - WALL_W / 2.0 - RADIUS + 1e-6);
+    }
+}
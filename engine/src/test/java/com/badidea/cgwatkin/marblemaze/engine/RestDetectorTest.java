@@ -0,0 +1,191 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Rest Detector tests
+ *
+ * Ticks marbles in an empty world, where a marble given no velocity and no gravity stays exactly where it is.
+ */
+public class RestDetectorTest {
+
+    /**
+     * World size.
+     */
+    private static final int SIZE = 400;
+
+    /**
+     * Drift and tilt thresholds, as the game uses.
+     */
+    private static final double MAX_DRIFT = 0.5, MAX_TILT = 0.3;
+
+    /**
+     * Still ticks needed to sleep.
+     */
+    private static final int TICKS = 10;
+
+    /**
+     * Tick length.
+     */
+    private static final double TICK = 1.0 / 60;
+
+    /**
+     * The empty world.
+     */
+    private final World mWorld = new World(new ArrayList<WorldObject>(), SIZE, SIZE, 100);
+
+    /**
+     * Creates marbles spaced along a row, all moving right at one velocity.
+     *
+     * @param count Number of marbles.
+     * @param vX Velocity in x plane.
+     * @return The marbles.
+     */
+    private static MarbleSet createMarbles(int count, double vX) {
+        Marble[] marbles = new Marble[count];
+        for (int i = 0; i < count; i++) {
+            marbles[i] = new Marble(50 + i * 40, 200, vX, 0, 10, 20);
+        }
+        return new MarbleSet(marbles, 0);
+    }
+
+    /**
+     * Ticks the marbles and the detector a number of times.
+     *
+     * @param rest The detector.
+     * @param marbles The marbles.
+     * @param world The world.
+     * @param ticks Number of ticks.
+     * @return True if the detector fell asleep on the last tick and not before.
+     */
+    private static boolean tick(RestDetector rest, MarbleSet marbles, World world, int ticks) {
+        boolean asleep = false;
+        for (int i = 0; i < ticks; i++) {
+            world.advance(TICK);
+            marbles.move(TICK, 0, 0, SIZE, SIZE, world);
+            asleep = rest.update(marbles, world, 0, 0);
+            if (asleep && i < ticks - 1) {
+                return false;
+            }
+        }
+        return asleep;
+    }
+
+    /**
+     * Still marbles under steady gravity fall asleep on exactly the set number of ticks.
+     */
+    @Test
+    public void sleepsAfterStillTicks() {
+        RestDetector rest = new RestDetector(MAX_DRIFT, MAX_TILT, TICKS);
+        MarbleSet marbles = createMarbles(2, 0);
+        assertTrue(tick(rest, marbles, mWorld, TICKS));
+        assertTrue(rest.isAsleep());
+    }
+
+    /**
+     * Gravity wobbling within the tilt threshold still counts as still, and a tilt beyond it starts the count again.
+     */
+    @Test
+    public void tiltRestartsCount() {
+        RestDetector rest = new RestDetector(MAX_DRIFT, MAX_TILT, TICKS);
+        MarbleSet marbles = createMarbles(0, 0);
+        for (int i = 0; i < TICKS - 1; i++) {
+            assertFalse(rest.update(marbles, mWorld, i % 2 == 0 ? 0.2 : -0.2, 0));
+        }
+        assertFalse(rest.update(marbles, mWorld, 1, 0));
+        for (int i = 0; i < TICKS - 2; i++) {
+            assertFalse(rest.update(marbles, mWorld, 1, 0));
+        }
+        assertTrue(rest.update(marbles, mWorld, 1, 0));
+    }
+
+    /**
+     * A marble creeping slower than the drift threshold per tick, but past it in total, never sleeps.
+     */
+    @Test
+    public void creepingMarbleNeverSleeps() {
+        RestDetector rest = new RestDetector(MAX_DRIFT, MAX_TILT, TICKS);
+        // A quarter of the threshold per tick, so past it well within the ticks needed to sleep
+        MarbleSet marbles = createMarbles(1, MAX_DRIFT / 4 / (TICK * 100));
+        assertFalse(tick(rest, marbles, mWorld, 100 * TICKS));
+        assertFalse(rest.isAsleep());
+    }
+
+    /**
+     * A world with moving obstacles never sleeps, however still the marbles are.
+     */
+    @Test
+    public void obstaclesNeverSleep() {
+        Obstacles obstacles = new Obstacles(10);
+        obstacles.addRotatingBar(300, 300, 350, 300, 8, 5);
+        World world = new World(new ArrayList<WorldObject>(), obstacles, SIZE, SIZE, 100);
+        RestDetector rest = new RestDetector(MAX_DRIFT, MAX_TILT, TICKS);
+        assertFalse(tick(rest, createMarbles(1, 0), world, 100 * TICKS));
+        assertFalse(rest.isAsleep());
+    }
+
+    /**
+     * A tilt wakes a sleeping simulation only beyond the threshold, and only once.
+     */
+    @Test
+    public void wakesOnlyWhenTilted() {
+        RestDetector rest = new RestDetector(MAX_DRIFT, MAX_TILT, TICKS);
+        assertFalse(rest.wakeIfTilted(1, 1));
+        assertTrue(tick(rest, createMarbles(1, 0), mWorld, TICKS));
+
+        assertFalse(rest.wakeIfTilted(MAX_TILT / 2, -MAX_TILT / 2));
+        assertTrue(rest.isAsleep());
+        assertTrue(rest.wakeIfTilted(0, -2 * MAX_TILT));
+        assertFalse(rest.isAsleep());
+        assertFalse(rest.wakeIfTilted(0, -2 * MAX_TILT));
+    }
+
+    /**
+     * After waking, the simulation needs the full number of still ticks to sleep again.
+     */
+    @Test
+    public void countsAfreshAfterWake() {
+        RestDetector rest = new RestDetector(MAX_DRIFT, MAX_TILT, TICKS);
+        MarbleSet marbles = createMarbles(1, 0);
+        assertTrue(tick(rest, marbles, mWorld, TICKS));
+        assertTrue(rest.wake());
+        assertFalse(rest.wake());
+        assertTrue(tick(rest, marbles, mWorld, TICKS));
+    }
+
+    /**
+     * A new world, with the same or more marbles than the last, starts a fresh count rather than carrying on from
+     * where the last world's marbles came to rest.
+     */
+    @Test
+    public void countsAfreshAfterWorldChange() {
+        RestDetector rest = new RestDetector(MAX_DRIFT, MAX_TILT, TICKS);
+        assertFalse(tick(rest, createMarbles(1, 0), mWorld, TICKS - 1));
+        assertFalse(rest.reset());
+        assertTrue(tick(rest, createMarbles(1, 0), mWorld, TICKS));
+
+        assertTrue(rest.reset());
+        assertFalse(tick(rest, createMarbles(1, 0), mWorld, TICKS - 1));
+        assertFalse(rest.reset());
+        assertTrue(tick(rest, createMarbles(3, 0), mWorld, TICKS));
+
+        assertTrue(rest.reset());
+        assertFalse(rest.isAsleep());
+        assertTrue(tick(rest, createMarbles(2, 0), mWorld, TICKS));
+    }
+
+    /**
+     * Marbles changing in number without a reset count as movement, not as an error.
+     */
+    @Test
+    public void marbleCountChangeRestartsCount() {
+        RestDetector rest = new RestDetector(MAX_DRIFT, MAX_TILT, TICKS);
+        assertFalse(tick(rest, createMarbles(1, 0), mWorld, TICKS - 1));
+        assertTrue(tick(rest, createMarbles(4, 0), mWorld, TICKS));
+    }
+}
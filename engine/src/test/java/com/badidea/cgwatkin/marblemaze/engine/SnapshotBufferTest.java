@@ -0,0 +1,161 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Snapshot Buffer tests
+ *
+ * Publishes a world of identical rotating bars, so every bar in a whole snapshot has the same position, and the tick
+ * number as the snapshot's time, so each tick's positions can be checked against a run worked out beforehand.
+ */
+public class SnapshotBufferTest {
+
+    /**
+     * Number of bars; a torn snapshot would have them in different places.
+     */
+    private static final int BARS = 16;
+
+    /**
+     * Ticks the writer publishes.
+     */
+    private static final int TICKS = 50000;
+
+    /**
+     * Tick length.
+     */
+    private static final double TICK = 1.0 / 600;
+
+    /**
+     * Creates the world of bars, all turning about the same centre.
+     *
+     * @return The world.
+     */
+    private static World createWorld() {
+        Obstacles obstacles = new Obstacles(10);
+        for (int i = 0; i < BARS; i++) {
+            obstacles.addRotatingBar(100, 200, 300, 200, 8, 7.3);
+        }
+        return new World(new ArrayList<WorldObject>(), obstacles, 400, 400, 100);
+    }
+
+    /**
+     * Creates a few resting marbles.
+     *
+     * @return The marbles.
+     */
+    private static MarbleSet createMarbles() {
+        return new MarbleSet(new Marble[] {new Marble(20, 20, 0, 0, 5, 10), new Marble(380, 380, 0, 0, 5, 10)}, 0);
+    }
+
+    /**
+     * Works out the bars' x coordinates at every tick, as float snapshots hold them.
+     *
+     * @return Point 1 x coordinate by tick, from tick 0 before any movement.
+     */
+    private static float[] expectedX1() {
+        World world = createWorld();
+        float[] x1 = new float[TICKS + 1];
+        x1[0] = (float) world.getObstacles().getX1(0, 1);
+        for (int tick = 1; tick <= TICKS; tick++) {
+            world.advance(TICK);
+            x1[tick] = (float) world.getObstacles().getX1(0, 1);
+        }
+        return x1;
+    }
+
+    /**
+     * Asserts a snapshot is the one published at a tick, whole.
+     *
+     * @param snapshot The snapshot.
+     * @param expected Bar x coordinates by tick.
+     * @param tick The tick.
+     */
+    private static void assertWhole(Snapshot snapshot, float[] expected, int tick) {
+        assertEquals(2, snapshot.getMarbleCount());
+        assertEquals(BARS, snapshot.getObstacleCount());
+        for (int i = 0; i < BARS; i++) {
+            String where = "Tick " + tick + " bar " + i;
+            assertEquals(where, expected[tick], snapshot.getX1(i, 1), 0);
+            assertEquals(where, expected[tick - 1], snapshot.getX1(i, 0), 0);
+        }
+    }
+
+    /**
+     * The reader gets an empty snapshot before anything is published, then the newest one published, and keeps it
+     * until another is published.
+     */
+    @Test
+    public void acquireReturnsNewest() {
+        float[] expected = expectedX1();
+        SnapshotBuffer buffer = new SnapshotBuffer();
+        World world = createWorld();
+        MarbleSet marbles = createMarbles();
+        assertEquals(0, buffer.acquire().getTime());
+
+        world.advance(TICK);
+        buffer.publish(marbles, world, 1);
+        assertWhole(buffer.acquire(), expected, 1);
+
+        world.advance(TICK);
+        buffer.publish(marbles, world, 2);
+        world.advance(TICK);
+        buffer.publish(marbles, world, 3);
+        Snapshot snapshot = buffer.acquire();
+        assertEquals(3, snapshot.getTime());
+        assertWhole(snapshot, expected, 3);
+        assertSame(snapshot, buffer.acquire());
+        assertEquals(3, buffer.getPublished());
+        assertEquals(2, buffer.getAcquired());
+    }
+
+    /**
+     * A reader racing a writer on another thread only ever sees whole snapshots, never an older one after a newer
+     * one, and the last one published once the writer stops.
+     *
+     * @throws InterruptedException If interrupted waiting for the writer.
+     */
+    @Test
+    public void readerNeverSeesTornOrOldSnapshots() throws InterruptedException {
+        final float[] expected = expectedX1();
+        final SnapshotBuffer buffer = new SnapshotBuffer();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                World world = createWorld();
+                MarbleSet marbles = createMarbles();
+                for (int tick = 1; tick <= TICKS; tick++) {
+                    world.advance(TICK);
+                    buffer.publish(marbles, world, tick);
+                }
+            }
+        });
+        writer.start();
+
+        long last = 0;
+        int seen = 0;
+        while (writer.isAlive()) {
+            Snapshot snapshot = buffer.acquire();
+            long time = snapshot.getTime();
+            if (time == 0) {
+                continue;
+            }
+            assertTrue("Tick " + time + " after tick " + last, time >= last);
+            assertWhole(snapshot, expected, (int) time);
+            if (time > last) {
+                seen++;
+            }
+            last = time;
+        }
+        writer.join();
+
+        assertWhole(buffer.acquire(), expected, TICKS);
+        assertEquals(TICKS, buffer.getPublished());
+        assertTrue(seen > 1);
+    }
+}
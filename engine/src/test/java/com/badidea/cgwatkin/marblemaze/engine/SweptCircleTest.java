@@ -0,0 +1,159 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Swept Circle tests
+ *
+ * Sweeps a point against a horizontal segment from (0, 0) to (100, 0), grown by a radius of 10, and against a
+ * circle of the same radius.
+ */
+public class SweptCircleTest {
+
+    /**
+     * Tolerance for times and normals.
+     */
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Distance from the segment or centre that counts as touching.
+     */
+    private static final double RADIUS = 10;
+
+    /**
+     * Length of the segment.
+     */
+    private static final double LENGTH = 100;
+
+    /**
+     * The sweep under test.
+     */
+    private SweptCircle mSweep;
+
+    /**
+     * Creates a fresh sweep for each test.
+     */
+    @Before
+    public void setUp() {
+        mSweep = new SweptCircle();
+    }
+
+    /**
+     * Sweeps a point against the segment.
+     *
+     * @param caps End caps to test.
+     * @param x Start x coordinate.
+     * @param y Start y coordinate.
+     * @param dX Movement in x plane.
+     * @param dY Movement in y plane.
+     * @return Fraction of the movement before the hit, or NO_HIT.
+     */
+    private double capsule(byte caps, double x, double y, double dX, double dY) {
+        return mSweep.againstCapsule(0, 0, 1, 0, LENGTH, caps, RADIUS, x, y, dX, dY);
+    }
+
+    /**
+     * Asserts the last hit's normal.
+     *
+     * @param nX Expected x component.
+     * @param nY Expected y component.
+     */
+    private void assertNormal(double nX, double nY) {
+        assertEquals(nX, mSweep.getNormalX(), EPSILON);
+        assertEquals(nY, mSweep.getNormalY(), EPSILON);
+    }
+
+    /**
+     * A point moving straight at a long side stops the radius short of it.
+     */
+    @Test
+    public void sideHit() {
+        assertEquals(0.5, capsule(WallObject.BOTH_CAPS, 50, 50, 0, -80), EPSILON);
+        assertNormal(0, 1);
+        assertEquals(0.25, capsule(WallObject.BOTH_CAPS, 50, -50, 0, 160), EPSILON);
+        assertNormal(0, -1);
+    }
+
+    /**
+     * A point that stops short of or runs alongside the segment misses it.
+     */
+    @Test
+    public void sideMiss() {
+        assertEquals(SweptCircle.NO_HIT, capsule(WallObject.BOTH_CAPS, 50, 50, 0, -39), 0);
+        assertEquals(SweptCircle.NO_HIT, capsule(WallObject.BOTH_CAPS, -50, 20, 200, 0), 0);
+    }
+
+    /**
+     * A point moving in line with the segment hits the round end, and is let through an end another wall covers.
+     */
+    @Test
+    public void capHit() {
+        assertEquals(0.5, capsule(WallObject.BOTH_CAPS, 150, 0, -80, 0), EPSILON);
+        assertNormal(1, 0);
+        assertEquals(0.5, capsule(WallObject.BOTH_CAPS, -50, 0, 80, 0), EPSILON);
+        assertNormal(-1, 0);
+        assertEquals(SweptCircle.NO_HIT, capsule(WallObject.CAP_1, 150, 0, -80, 0), 0);
+    }
+
+    /**
+     * A point moving diagonally past the end meets the cap on its rounded edge, not the extended side.
+     */
+    @Test
+    public void capHitDiagonal() {
+        // Meets the cap at (100 + 6, 8), 10 from the end
+        double t = capsule(WallObject.BOTH_CAPS, 106, 50, 0, -84);
+        assertEquals(0.5, t, EPSILON);
+        assertNormal(0.6, 0.8);
+    }
+
+    /**
+     * A point already touching hits at once if it is moving closer and is let go if it is moving away.
+     */
+    @Test
+    public void alreadyTouching() {
+        assertEquals(0, capsule(WallObject.BOTH_CAPS, 50, 5, 0, -10), 0);
+        assertNormal(0, 1);
+        assertEquals(SweptCircle.NO_HIT, capsule(WallObject.BOTH_CAPS, 50, 5, 0, 10), 0);
+        assertEquals(0, capsule(WallObject.BOTH_CAPS, 105, 0, -10, 0), 0);
+        assertNormal(1, 0);
+        assertEquals(SweptCircle.NO_HIT, capsule(WallObject.BOTH_CAPS, 105, 0, 10, 0), 0);
+    }
+
+    /**
+     * A point starting exactly on the segment hits at once, pushed back across it against its movement.
+     */
+    @Test
+    public void startOnSegment() {
+        assertEquals(0, capsule(WallObject.BOTH_CAPS, 50, 0, 0, 5), 0);
+        assertNormal(0, -1);
+        assertEquals(0, capsule(WallObject.BOTH_CAPS, 50, 0, 0, -5), 0);
+        assertNormal(0, 1);
+        assertEquals(0, capsule(WallObject.BOTH_CAPS, 50, 0, 5, 0), 0);
+        assertNormal(0, 1);
+        assertEquals(0, capsule(WallObject.BOTH_CAPS, 0, 0, 0, 0), 0);
+        assertNormal(0, 1);
+    }
+
+    /**
+     * A point moving at a circle stops the radius short of its centre, and misses if it passes wide.
+     */
+    @Test
+    public void circleHit() {
+        assertEquals(0.25, mSweep.againstCircle(0, 0, RADIUS, -50, 0, 160, 0), EPSILON);
+        assertNormal(-1, 0);
+        assertEquals(SweptCircle.NO_HIT, mSweep.againstCircle(0, 0, RADIUS, -50, 11, 160, 0), 0);
+        assertEquals(SweptCircle.NO_HIT, mSweep.againstCircle(0, 0, RADIUS, -50, 0, -160, 0), 0);
+    }
+
+    /**
+     * A point already inside a circle hits at once, whichever way it is moving.
+     */
+    @Test
+    public void circleAlreadyTouching() {
+        assertEquals(0, mSweep.againstCircle(0, 0, RADIUS, 0, 5, 0, 10), 0);
+        assertNormal(0, 1);
+    }
+}
@@ -0,0 +1,79 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Test Levels class
+ *
+ * Loads the game's own levels from the app's assets, for tests that run the engine on real layouts.
+ * The build passes the assets directory in the "levels" system property; without it, the path from the engine
+ * module is used.
+ */
+class TestLevels {
+
+    /**
+     * Directory the level files are read from.
+     */
+    private static final File DIRECTORY = new File(System.getProperty("levels", "../app/src/main/assets/levels"));
+
+    /**
+     * Lists the level files, in name order.
+     *
+     * @return The level files.
+     * @throws FileNotFoundException If there are no level files.
+     */
+    static File[] listFiles() throws FileNotFoundException {
+        File[] files = DIRECTORY.listFiles();
+        ArrayList<File> levels = new ArrayList<>();
+        if (files != null) {
+            for (File file: files) {
+                if (file.getName().endsWith(".txt")) {
+                    levels.add(file);
+                }
+            }
+        }
+        if (levels.isEmpty()) {
+            throw new FileNotFoundException("No levels in " + DIRECTORY.getAbsolutePath());
+        }
+        File[] sorted = levels.toArray(new File[levels.size()]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Parses a level file.
+     *
+     * @param file The level file.
+     * @return The level.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    static Level parse(File file) throws IOException {
+        Reader reader = new FileReader(file);
+        try {
+            return LevelParser.parse(reader);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Parses every level file.
+     *
+     * @return The levels, in file name order.
+     * @throws IOException If a file cannot be read or is malformed.
+     */
+    static ArrayList<Level> load() throws IOException {
+        ArrayList<Level> levels = new ArrayList<>();
+        for (File file: listFiles()) {
+            levels.add(parse(file));
+        }
+        return levels;
+    }
+}
@@ -0,0 +1,235 @@
+package com.badidea.cgwatkin.marblemaze.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Wall Optimiser tests
+ *
+ * Checks the end cap rules on small hand-made layouts, and that optimising random wall sets never changes where a
+ * swept marble first touches a wall.
+ */
+public class WallOptimiserTest {
+
+    /**
+     * Size of the random worlds.
+     */
+    private static final int SIZE = 600;
+
+    /**
+     * Marble radius.
+     */
+    private static final int RADIUS = 10;
+
+    /**
+     * Tolerance for hit times and normals, which merged walls work out with different rounding.
+     */
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Optimises a list of walls.
+     *
+     * @param walls The walls.
+     * @return The optimised walls.
+     */
+    private static ArrayList<WorldObject> optimise(WallObject... walls) {
+        ArrayList<WorldObject> objects = new ArrayList<>();
+        for (WallObject wall: walls) {
+            objects.add(wall);
+        }
+        return new WallOptimiser().optimise(objects);
+    }
+
+    /**
+     * Tests if a wall keeps its end cap at a point.
+     *
+     * @param wo The wall.
+     * @param x End point x coordinate.
+     * @param y End point y coordinate.
+     * @return True if the cap at that end is tested.
+     */
+    private static boolean hasCap(WorldObject wo, int x, int y) {
+        WallObject wall = (WallObject) wo;
+        if (wall.getX1() == x && wall.getY1() == y) {
+            return (wall.getCaps() & WallObject.CAP_1) != 0;
+        }
+        if (wall.getX2() == x && wall.getY2() == y) {
+            return (wall.getCaps() & WallObject.CAP_2) != 0;
+        }
+        throw new AssertionError("(" + x + ", " + y + ") is not an end of the wall");
+    }
+
+    /**
+     * Where walls of the same width meet at a corner, only the first keeps its cap there, and the open ends keep
+     * theirs.
+     */
+    @Test
+    public void sharedEndPoint() {
+        ArrayList<WorldObject> walls = optimise(new WallObject(0, 0, 100, 0, 8), new WallObject(100, 100, 100, 0, 8));
+        assertEquals(2, walls.size());
+        assertTrue(hasCap(walls.get(0), 0, 0));
+        assertTrue(hasCap(walls.get(0), 100, 0));
+        assertTrue(!hasCap(walls.get(1), 100, 0));
+        assertTrue(hasCap(walls.get(1), 100, 100));
+    }
+
+    /**
+     * Where a narrower wall meets a wider one at a corner, the wider one keeps the cap whichever comes first.
+     */
+    @Test
+    public void sharedEndPointWider() {
+        ArrayList<WorldObject> walls = optimise(new WallObject(0, 0, 100, 0, 8), new WallObject(100, 0, 100, 100, 12));
+        assertTrue(!hasCap(walls.get(0), 100, 0));
+        assertTrue(hasCap(walls.get(1), 100, 0));
+    }
+
+    /**
+     * A wall ending on the middle of another at least as wide loses that cap, and the other keeps both of its own.
+     */
+    @Test
+    public void tJunction() {
+        ArrayList<WorldObject> walls = optimise(new WallObject(100, 0, 100, 100, 8), new WallObject(0, 0, 200, 0, 8));
+        assertEquals(2, walls.size());
+        assertTrue(!hasCap(walls.get(0), 100, 0));
+        assertTrue(hasCap(walls.get(0), 100, 100));
+        assertTrue(hasCap(walls.get(1), 0, 0));
+        assertTrue(hasCap(walls.get(1), 200, 0));
+    }
+
+    /**
+     * A wall ending on the middle of a narrower one keeps its cap, as it reaches out past the narrower wall.
+     */
+    @Test
+    public void tJunctionOnNarrower() {
+        ArrayList<WorldObject> walls = optimise(new WallObject(100, 0, 100, 100, 12), new WallObject(0, 0, 200, 0, 8));
+        assertTrue(hasCap(walls.get(0), 100, 0));
+    }
+
+    /**
+     * Walls of the same width along one line that touch or overlap become one wall in the first one's place, and
+     * other objects keep their order.
+     */
+    @Test
+    public void collinearWallsMerge() {
+        ArrayList<WorldObject> objects = new ArrayList<>();
+        objects.add(new WallObject(50, 0, 100, 0, 8));
+        objects.add(new GoalObject(300, 300, 10));
+        objects.add(new WallObject(0, 0, 60, 0, 8));
+        objects.add(new WallObject(100, 0, 150, 0, 8));
+        objects.add(new WallObject(150, 0, 200, 0, 4));
+        WallOptimiser optimiser = new WallOptimiser();
+        ArrayList<WorldObject> result = optimiser.optimise(objects);
+        assertEquals(3, result.size());
+        WallObject merged = (WallObject) result.get(0);
+        assertEquals(0, merged.getX1());
+        assertEquals(150, merged.getX2());
+        assertTrue(result.get(1).isGoal());
+        // The narrower wall's cap lies on the end of the wider, merged one
+        assertTrue(!hasCap(result.get(2), 150, 0));
+        assertTrue(hasCap(merged, 150, 0));
+        assertEquals(5, optimiser.getObjectsBefore());
+        assertEquals(3, optimiser.getObjectsAfter());
+    }
+
+    /**
+     * Adds random horizontal, vertical and diagonal walls on a coarse grid, so many touch, overlap and cross.
+     *
+     * @param rnd Random numbers.
+     * @return The walls.
+     */
+    private static ArrayList<WorldObject> randomWalls(Random rnd) {
+        ArrayList<WorldObject> objects = new ArrayList<>();
+        int count = 5 + rnd.nextInt(30);
+        for (int i = 0; i < count; i++) {
+            int x = 60 + rnd.nextInt(8) * 40, y = 60 + rnd.nextInt(8) * 40;
+            int length = 40 * (1 + rnd.nextInt(4));
+            int w = rnd.nextInt(4) == 0 ? 4 : 8;
+            switch (rnd.nextInt(3)) {
+                case 0:
+                    objects.add(new WallObject(x, y, x + length, y, w));
+                    break;
+                case 1:
+                    objects.add(new WallObject(x, y + length, x, y, w));
+                    break;
+                default:
+                    objects.add(new WallObject(x + length, y + length, x, y, w));
+                    break;
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * Sweeps a marble against every object in a world, without the broadphase.
+     *
+     * @param world The world.
+     * @param sweep Sweep to run, left with the first hit's normal.
+     * @param x Start x coordinate.
+     * @param y Start y coordinate.
+     * @param dX Movement in x plane.
+     * @param dY Movement in y plane.
+     * @param normal Set to the first hit's normal.
+     * @return Fraction of the movement before the first hit, or SweptCircle.NO_HIT.
+     */
+    private static double firstHit(World world, SweptCircle sweep, double x, double y, double dX, double dY,
+                                   double[] normal) {
+        double first = SweptCircle.NO_HIT;
+        for (int id = 0; id < world.size(); id++) {
+            double t = world.sweep(id, sweep, x, y, RADIUS, dX, dY);
+            if (t < first) {
+                first = t;
+                normal[0] = sweep.getNormalX();
+                normal[1] = sweep.getNormalY();
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Optimised and original wall sets give the same first hit time and normal for random sweeps from points clear
+     * of every wall.
+     */
+    @Test
+    public void optimisedWallsHitTheSame() {
+        Random rnd = new Random(7);
+        SweptCircle sweep = new SweptCircle();
+        Contacts contacts = new Contacts(16);
+        double[] normal = new double[2], optimisedNormal = new double[2];
+        int hits = 0, removed = 0;
+        for (int set = 0; set < 300; set++) {
+            ArrayList<WorldObject> objects = randomWalls(rnd);
+            WallOptimiser optimiser = new WallOptimiser();
+            ArrayList<WorldObject> optimised = optimiser.optimise(objects);
+            removed += optimiser.getCapsBefore() - optimiser.getCapsAfter();
+            World world = new World(objects, SIZE, SIZE, 80);
+            World optimisedWorld = new World(optimised, SIZE, SIZE, 80);
+            for (int n = 0; n < 50; n++) {
+                double x = rnd.nextDouble() * SIZE, y = rnd.nextDouble() * SIZE;
+                if (world.contacts(x, y, RADIUS, contacts) > 0) {
+                    continue;
+                }
+                double angle = rnd.nextDouble() * 2 * Math.PI, length = rnd.nextDouble() * 300;
+                double dX = Math.cos(angle) * length, dY = Math.sin(angle) * length;
+                double t = firstHit(world, sweep, x, y, dX, dY, normal);
+                double optimisedT = firstHit(optimisedWorld, sweep, x, y, dX, dY, optimisedNormal);
+                String where = "Set " + set + " from (" + x + ", " + y + ") by (" + dX + ", " + dY + ")";
+                if (t == SweptCircle.NO_HIT) {
+                    assertEquals(where, SweptCircle.NO_HIT, optimisedT, 0);
+                    continue;
+                }
+                hits++;
+                assertEquals(where, t, optimisedT, EPSILON);
+                assertEquals(where, normal[0], optimisedNormal[0], EPSILON);
+                assertEquals(where, normal[1], optimisedNormal[1], EPSILON);
+            }
+        }
+        // Make sure the sets exercised the optimiser
+        assertTrue(hits > 1000);
+        assertTrue(removed > 1000);
+    }
+}